@@ -0,0 +1,64 @@
+package loxlang;
+
+import java.util.List;
+
+// Compares the heap used by the tree, the tree with shared subtrees and the flat
+// encoding of the same program.
+class AstHeap {
+    // Scans and parses the source straight into its flat encoding.
+    static FlatAst parseFlat(String source) {
+        Scanner scanner = new Scanner(source);
+        Parser parser = new Parser(scanner.scanTokens());
+
+        FlatAst ast = new FlatAst(source);
+        for (Stmt statement : parser.parse()) {
+            ast.add(statement);
+        }
+        ast.trim();
+        return ast;
+    }
+
+    static void report(String source) {
+        long base = usedHeap();
+        List<Stmt> tree = new Parser(new Scanner(source).scanTokens()).parse();
+        long treeBytes = usedHeap() - base;
+        int statements = tree.size();
+        tree = null;
+
+        base = usedHeap();
+        ExprInterner interner = new ExprInterner();
+        List<Stmt> shared = new Parser(new Scanner(source).scanTokens(), false, interner).parse();
+        String sharing = interner.reused() + " of " + interner.built() + " expressions shared, "
+                + interner.constants() + " constants";
+        // The interner's tables are only needed while parsing.
+        interner = null;
+        long sharedBytes = usedHeap() - base;
+        // Keeps the tree alive until it has been measured.
+        shared.size();
+        shared = null;
+
+        base = usedHeap();
+        FlatAst flat = parseFlat(source);
+        long flatBytes = usedHeap() - base;
+
+        System.out.println("source:   " + source.length() + " bytes, " + statements + " statements");
+        System.out.println("tree AST: " + treeBytes + " bytes, " + perByte(treeBytes, source) + " per source byte");
+        System.out.println("shared:   " + sharedBytes + " bytes, " + perByte(sharedBytes, source) + " per source byte"
+                + String.format(" (%.1f%% of tree, ", 100.0 * sharedBytes / Math.max(1, treeBytes)) + sharing + ")");
+        System.out.println("flat AST: " + flatBytes + " bytes, " + perByte(flatBytes, source) + " per source byte"
+                + " (arrays alone " + flat.byteSize() + " bytes)");
+    }
+
+    private static String perByte(long bytes, String source) {
+        return String.format("%.2f", (double) bytes / Math.max(1, source.length()));
+    }
+
+    // Heap in use after a few rounds of garbage collection, so only live objects count.
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -1,5 +1,7 @@
 package loxlang;
 
+import java.util.List;
+
 // TODO: Add visit methods as we add new syntax tree types
 
 class AstPrinter implements Expr.Visitor<String> {
@@ -7,16 +9,41 @@ class AstPrinter implements Expr.Visitor<String> {
         return expr.accept(this);
     }
 
+    // Prints an expression node of a flat encoded program.
+    String print(FlatAst ast, int node) {
+        return print(ast.expr(node));
+    }
+
     @Override
     public String visitBinaryExpr(Expr.Binary expr) {
         return parenthesize(expr.operator.lexeme, expr.left, expr.right);
     }
 
+    @Override
+    public String visitCallExpr(Expr.Call expr) {
+        return parenthesize("call", concat(expr.callee, expr.arguments));
+    }
+
+    @Override
+    public String visitErrorExpr(Expr.Error expr) {
+        return "(error)";
+    }
+
+    @Override
+    public String visitGetExpr(Expr.Get expr) {
+        return parenthesize("." + expr.name.lexeme, expr.object);
+    }
+
     @Override
     public String visitGroupingExpr(Expr.Grouping expr) {
         return parenthesize("group", expr.expression);
     }
 
+    @Override
+    public String visitIndexExpr(Expr.Index expr) {
+        return parenthesize("[]", expr.object, expr.index);
+    }
+
     @Override
     public String visitLiteralExpr(Expr.Literal expr) {
         if (expr.value == null) {
@@ -25,6 +52,41 @@ class AstPrinter implements Expr.Visitor<String> {
         return expr.value.toString();
     }
 
+    @Override
+    public String visitLogicalExpr(Expr.Logical expr) {
+        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+    }
+
+    @Override
+    public String visitMapLiteralExpr(Expr.MapLiteral expr) {
+        Expr[] entries = new Expr[expr.keys.size() * 2];
+        for (int i = 0; i < expr.keys.size(); i++) {
+            entries[2 * i] = expr.keys.get(i);
+            entries[2 * i + 1] = expr.values.get(i);
+        }
+        return parenthesize("map", entries);
+    }
+
+    @Override
+    public String visitSetExpr(Expr.Set expr) {
+        return parenthesize("=." + expr.name.lexeme, expr.object, expr.value);
+    }
+
+    @Override
+    public String visitSetIndexExpr(Expr.SetIndex expr) {
+        return parenthesize("=[]", expr.object, expr.index, expr.value);
+    }
+
+    @Override
+    public String visitSuperExpr(Expr.Super expr) {
+        return "super." + expr.method.lexeme;
+    }
+
+    @Override
+    public String visitThisExpr(Expr.This expr) {
+        return "this";
+    }
+
     @Override
     public String visitUnaryExpr(Expr.Unary expr) {
         return parenthesize(expr.operator.lexeme, expr.right);
@@ -39,6 +101,16 @@ class AstPrinter implements Expr.Visitor<String> {
     public String visitAssignExpr(Expr.Assign expr) {
         return parenthesize("=", expr.value);
     }
+
+    private static Expr[] concat(Expr first, List<Expr> rest) {
+        Expr[] exprs = new Expr[rest.size() + 1];
+        exprs[0] = first;
+        for (int i = 0; i < rest.size(); i++) {
+            exprs[i + 1] = rest.get(i);
+        }
+        return exprs;
+    }
+
     private String parenthesize(String name, Expr... exprs) {
         StringBuilder builder = new StringBuilder();
 
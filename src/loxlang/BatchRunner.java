@@ -0,0 +1,257 @@
+package loxlang;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Runs many scripts in one JVM on a pool of worker threads.
+// Every script gets its own interpreter, error state and captured output.
+// Scripts with identical source share a single parsed program.
+class BatchRunner {
+    // Scanned, parsed and resolved program, shared by every script with the same source.
+    private static final class Parsed {
+        final List<Stmt> statements;
+        // Syntax errors reported while parsing, replayed for every script using it
+        final String errors;
+        final boolean hadError;
+
+        Parsed(List<Stmt> statements, String errors, boolean hadError) {
+            this.statements = statements;
+            this.errors = errors;
+            this.hadError = hadError;
+        }
+    }
+
+    private static final class Result {
+        final Path path;
+        final int exitCode;
+        final String out;
+        final String err;
+        final long nanos;
+
+        Result(Path path, int exitCode, String out, String err, long nanos) {
+            this.path = path;
+            this.exitCode = exitCode;
+            this.out = out;
+            this.err = err;
+            this.nanos = nanos;
+        }
+    }
+
+    private final ConcurrentHashMap<String, FutureTask<Parsed>> cache = new ConcurrentHashMap<>();
+    private final AtomicInteger cacheHits = new AtomicInteger();
+
+    static void main(String[] args) throws IOException {
+        int jobs = Runtime.getRuntime().availableProcessors();
+        String target = null;
+
+        // args[0] is "--batch"
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--jobs") && i + 1 < args.length) {
+                jobs = Integer.parseInt(args[++i]);
+            } else if (target == null) {
+                target = args[i];
+            } else {
+                target = null;
+                break;
+            }
+        }
+        if (target == null || jobs < 1) {
+            System.out.println("Usage: jlox --batch [--jobs n] <directory | manifest>");
+            System.exit(64);
+        }
+
+        List<Path> scripts = collect(Paths.get(target));
+        System.exit(new BatchRunner().run(scripts, jobs));
+    }
+
+    // A directory means every .lox file below it, anything else is a manifest
+    // listing one script path per line, relative to the manifest.
+    private static List<Path> collect(Path target) throws IOException {
+        if (Files.isDirectory(target)) {
+            try (Stream<Path> files = Files.walk(target)) {
+                return files.filter(file -> file.toString().endsWith(".lox"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+
+        Path base = target.toAbsolutePath().getParent();
+        List<Path> scripts = new ArrayList<>();
+        for (String line : Files.readAllLines(target)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            scripts.add(base.resolve(line));
+        }
+        return scripts;
+    }
+
+    // Runs all scripts, prints their output in order followed by a summary and
+    // returns the exit code for the whole batch.
+    int run(List<Path> scripts, int jobs) {
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        long start = System.nanoTime();
+
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Path script : scripts) {
+            futures.add(pool.submit(() -> runScript(script)));
+        }
+
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+        long wall = System.nanoTime() - start;
+
+        int exitCode = 0;
+        for (Result result : results) {
+            System.out.println("== " + result.path + " (exit " + result.exitCode + ", "
+                    + millis(result.nanos) + " ms)");
+            System.out.print(result.out);
+            System.out.print(result.err);
+            // Syntax errors win over runtime errors, same as a single script.
+            if (result.exitCode == 65 || (result.exitCode == 70 && exitCode == 0)) {
+                exitCode = result.exitCode;
+            }
+        }
+
+        report(results, wall);
+        return exitCode;
+    }
+
+    private Result runScript(Path path) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream errStream = new PrintStream(err, true);
+        ErrorReporter errors = new ErrorReporter(errStream);
+        long start = System.nanoTime();
+
+        Probe probe = Probe.start(new Events.Script());
+        int bytes = 0;
+
+        Lox.setReporter(errors);
+        try {
+            String source = new String(Files.readAllBytes(path), Charset.defaultCharset());
+            bytes = source.length();
+            Parsed parsed = parse(source);
+            errors.replay(parsed.errors, parsed.hadError);
+
+            if (!errors.hadError) {
+                Interpreter interpreter = new Interpreter(new PrintStream(out, true));
+                interpreter.setScript(path);
+                interpreter.interpret(parsed.statements);
+                interpreter.awaitTasks();
+            }
+        } catch (IOException e) {
+            errStream.println("Could not read script: " + e.getMessage());
+            errors.hadError = true;
+        } finally {
+            probe.finished(path.toString(), bytes, errors);
+            Lox.clearReporter();
+        }
+        long nanos = System.nanoTime() - start;
+
+        int exitCode = errors.hadError ? 65 : errors.hadRuntimeError ? 70 : 0;
+        return new Result(path, exitCode, out.toString(), err.toString(), nanos);
+    }
+
+    // Returns the parsed program for the source, parsing it only the first time
+    // it is seen. Other workers asking for the same source wait for that parse.
+    private Parsed parse(String source) {
+        FutureTask<Parsed> task = new FutureTask<>(() -> parseUncached(source));
+        FutureTask<Parsed> existing = cache.putIfAbsent(source, task);
+        if (existing == null) {
+            task.run();
+        } else {
+            cacheHits.incrementAndGet();
+            task = existing;
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Parsed parseUncached(String source) {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        ErrorReporter errors = new ErrorReporter(new PrintStream(err, true));
+        ErrorReporter previous = Lox.reporter();
+
+        Lox.setReporter(errors);
+        try {
+            Scanner scanner = new Scanner(source);
+            List<Token> tokens = scanner.scanTokens();
+            Parser parser = new Parser(tokens);
+            List<Stmt> statements = parser.parse();
+
+            if (!errors.hadError) {
+                Resolver resolver = new Resolver();
+                resolver.resolve(statements);
+                new TypeInference().infer(statements);
+            }
+            return new Parsed(statements, err.toString(), errors.hadError);
+        } finally {
+            Lox.setReporter(previous);
+        }
+    }
+
+    private void report(List<Result> results, long wall) {
+        long[] latencies = new long[results.size()];
+        int failed = 0;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = results.get(i).nanos;
+            if (results.get(i).exitCode != 0) {
+                failed++;
+            }
+        }
+        Arrays.sort(latencies);
+
+        double seconds = wall / 1e9;
+        System.out.println("== summary");
+        System.out.println("scripts: " + results.size() + ", failed: " + failed
+                + ", parse cache hits: " + cacheHits.get());
+        System.out.println("wall: " + millis(wall) + " ms, throughput: "
+                + String.format("%.1f", results.size() / seconds) + " scripts/s");
+        if (latencies.length > 0) {
+            System.out.println("latency ms: p50 " + millis(percentile(latencies, 50))
+                    + ", p90 " + millis(percentile(latencies, 90))
+                    + ", p99 " + millis(percentile(latencies, 99))
+                    + ", max " + millis(latencies[latencies.length - 1]));
+        }
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+}
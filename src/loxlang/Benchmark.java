@@ -0,0 +1,645 @@
+package loxlang;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Small benchmark harness for comparing interpreter variants on the same programs.
+// Run with: java loxlang.Benchmark [suite]
+class Benchmark {
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 50;
+
+    // Discards program output so printing doesn't dominate the numbers.
+    static final PrintStream nullOut = new PrintStream(OutputStream.nullOutputStream());
+
+    public static void main(String[] args) {
+        String suite = args.length > 0 ? args[0] : "all";
+
+        if (suite.equals("all") || suite.equals("dispatch")) {
+            dispatch();
+        }
+        if (suite.equals("all") || suite.equals("types")) {
+            types();
+        }
+        if (suite.equals("all") || suite.equals("scan")) {
+            scan();
+        }
+        if (suite.equals("all") || suite.equals("parallel-scan")) {
+            parallelScan();
+        }
+        if (suite.equals("all") || suite.equals("share")) {
+            share();
+        }
+        if (suite.equals("all") || suite.equals("hooks")) {
+            hooks();
+        }
+        if (suite.equals("all") || suite.equals("tier")) {
+            tier();
+        }
+        if (suite.equals("all") || suite.equals("calls")) {
+            calls();
+        }
+        if (suite.equals("all") || suite.equals("loops")) {
+            loops();
+        }
+        if (suite.equals("all") || suite.equals("properties")) {
+            properties();
+        }
+        if (suite.equals("all") || suite.equals("tasks")) {
+            tasks();
+        }
+        if (suite.equals("all") || suite.equals("arrays")) {
+            arrays();
+        }
+        if (suite.equals("all") || suite.equals("maps")) {
+            maps();
+        }
+        if (suite.equals("all") || suite.equals("modules")) {
+            modules();
+        }
+        if (suite.equals("all") || suite.equals("recovery")) {
+            recovery();
+        }
+        if (suite.equals("all") || suite.equals("streaming")) {
+            streaming();
+        }
+        if (suite.equals("all") || suite.equals("pipeline")) {
+            pipeline();
+        }
+    }
+
+    // Runs body WARMUP times, then reports the average time of ITERATIONS runs.
+    static void measure(String name, Runnable body) {
+        for (int i = 0; i < WARMUP; i++) {
+            body.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            body.run();
+        }
+        long nanos = (System.nanoTime() - start) / ITERATIONS;
+        System.out.println(String.format("%-40s %12.3f us/op", name, nanos / 1e3));
+    }
+
+    static List<Stmt> parse(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver().resolve(statements);
+        return statements;
+    }
+
+    // Visitor dispatch against pattern matching switch dispatch. RecordAst
+    // refuses spawn and import statements, so the programs here can't use them.
+    private static void dispatch() {
+        String arithmetic = block(2000,
+                "s = s + a * b - (a / b) + -c;");
+        String strings = block(2000,
+                "t = \"ab\" + a; u = t == \"ab1\";");
+        String scopes = block(500,
+                "{ var x = a; { var y = x + b; s = s + y; } }");
+
+        for (String[] program : new String[][] {
+                {"arithmetic", arithmetic}, {"strings", strings}, {"scopes", scopes}}) {
+            List<Stmt> statements = parse(program[1]);
+            List<StmtRecord> records = RecordAst.of(statements);
+
+            Interpreter visitor = new Interpreter(nullOut);
+            SwitchInterpreter switcher = new SwitchInterpreter(nullOut);
+            switcher.resolve(records);
+
+            measure("dispatch " + program[0] + " visitor", () -> visitor.interpret(statements));
+            measure("dispatch " + program[0] + " switch", () -> switcher.interpret(records));
+        }
+    }
+
+    // Checked operators against the check free paths proven by TypeInference.
+    private static void types() {
+        String arithmetic = block(2000,
+                "s = s + a * b - (a / b) + -c; t = s < a;");
+        String strings = block(2000,
+                "t = \"ab\" + \"cd\"; u = t + t;");
+
+        for (String[] program : new String[][] {{"arithmetic", arithmetic}, {"strings", strings}}) {
+            List<Stmt> checked = parse(program[1]);
+            List<Stmt> inferred = parse(program[1]);
+            new TypeInference().infer(inferred);
+
+            Interpreter interpreter = new Interpreter(nullOut);
+            measure("types " + program[0] + " checked", () -> interpreter.interpret(checked));
+            measure("types " + program[0] + " inferred", () -> interpreter.interpret(inferred));
+        }
+    }
+
+    // Scalar scanning against the Vector API fast paths.
+    // Needs --add-modules jdk.incubator.vector for the vector side.
+    private static void scan() {
+        StringBuilder comments = new StringBuilder();
+        StringBuilder strings = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            comments.append("var a").append(i).append(" = 1;      ")
+                    .append("// a long trailing comment explaining nothing in particular at all\n")
+                    .append("        \t\t      \n");
+            strings.append("print \"a fairly long string literal that goes on and on, ")
+                    .append("spanning\nmore than one line of the source file\";\n");
+        }
+
+        ScanSkipper skipper = ScanSkipper.vectorized();
+        if (skipper == null) {
+            System.out.println("scan: Vector API not available, run with --add-modules jdk.incubator.vector");
+        }
+        for (String[] corpus : new String[][] {
+                {"comments", comments.toString()}, {"strings", strings.toString()}}) {
+            String source = corpus[1];
+            double megabytes = source.length() / 1e6;
+            System.out.println(String.format("scan %s: %.1f MB", corpus[0], megabytes));
+
+            measure("scan " + corpus[0] + " scalar", () -> new Scanner(source, null).scanTokens());
+            if (skipper != null) {
+                measure("scan " + corpus[0] + " vector", () -> new Scanner(source, skipper).scanTokens());
+            }
+        }
+    }
+
+    // Sequential Scanner against ParallelScanner on a large source.
+    private static void parallelScan() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; source.length() < 8_000_000; i++) {
+            source.append("var a").append(i).append(" = ").append(i).append(" * 2.5; // note\n")
+                    .append("print \"value of a").append(i).append("\" + a").append(i).append(";\n");
+            if (i % 100 == 0) {
+                source.append("/* a block comment */ print \"multi\nline\";\n");
+            }
+        }
+        String text = source.toString();
+        System.out.println(String.format("parallel-scan: %.1f MB, %d threads",
+                text.length() / 1e6, Runtime.getRuntime().availableProcessors()));
+
+        measure("parallel-scan sequential", () -> new Scanner(text).scanTokens());
+        measure("parallel-scan parallel", () -> new ParallelScanner(text).scanTokens());
+    }
+
+    // Plain parsing against hash-consed parsing on a generated looking script
+    // that repeats the same literals and constant expressions over and over.
+    private static void share() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            source.append("var v").append(i % 50).append(" = (1.5 * 2) + -3;\n")
+                    .append("print \"total: \" + \"value\";\n")
+                    .append("v").append(i % 50).append(" = v").append(i % 50).append(" * 2 + 0.5;\n");
+        }
+        String text = source.toString();
+        List<Token> tokens = new Scanner(text).scanTokens();
+
+        AstHeap.report(text);
+        measure("share parse plain", () -> new Parser(tokens).parse());
+        measure("share parse shared", () -> new Parser(tokens, false, new ExprInterner()).parse());
+    }
+
+    // Interpreter with no trace hooks, with hooks that do nothing, and after
+    // removing them again, which should be back to the first.
+    private static void hooks() {
+        List<Stmt> statements = parse(block(2000, "s = s + a * b - (a / b) + -c;"));
+        Interpreter interpreter = new Interpreter(nullOut);
+
+        measure("hooks off", () -> interpreter.interpret(statements));
+        Trace.install(new Trace.Hooks() {});
+        measure("hooks on", () -> interpreter.interpret(statements));
+        Trace.remove();
+        measure("hooks removed", () -> interpreter.interpret(statements));
+    }
+
+    // Blocks run by the visitor only against blocks promoted to compiled closures.
+    private static void tier() {
+        String source = block(2000, "s = s + a * b - (a / b) + -c; t = s < a;")
+                + block(2000, "{ var x = a; s = s + x; }")
+                + block(2000, "g = g + 1;");
+        List<Stmt> visited = parse("var g = 0;\n" + source);
+        List<Stmt> compiled = parse("var g = 0;\n" + source);
+        new TypeInference().infer(visited);
+        new TypeInference().infer(compiled);
+        Interpreter interpreter = new Interpreter(nullOut);
+
+        int threshold = Tier.threshold;
+        Tier.threshold = 0;
+        measure("tier visitor", () -> interpreter.interpret(visited));
+        Tier.threshold = 1;
+        measure("tier compiled", () -> interpreter.interpret(compiled));
+        Tier.threshold = threshold;
+    }
+
+    // Call overhead, fib(30) makes about 1.6 million calls.
+    private static void calls() {
+        List<Stmt> statements = parse(
+                "fun fib(n) { if (n < 2) return n; return fib(n - 2) + fib(n - 1); }\n"
+                + "print fib(30);\n");
+        new TypeInference().infer(statements);
+        Interpreter interpreter = new Interpreter(nullOut);
+
+        measure("calls fib(30)", () -> interpreter.interpret(statements));
+    }
+
+    // Tight loops whose body declares a variable, at the top level where the
+    // body's Environment is reused, and in a function where it is in the frame.
+    private static void loops() {
+        String loop = "for (var i = 0; i < 100000; i = i + 1) { var x = i; s = s + x; }\n";
+        List<Stmt> global = parse("var s = 0;\n" + loop);
+        List<Stmt> function = parse("fun run() { var s = 0;\n" + loop + "return s; }\nrun();\n");
+        new TypeInference().infer(global);
+        new TypeInference().infer(function);
+        Interpreter interpreter = new Interpreter(nullOut);
+
+        int threshold = Tier.threshold;
+        Tier.threshold = 0;
+        measure("loops top-level visitor", () -> interpreter.interpret(global));
+        measure("loops function visitor", () -> interpreter.interpret(function));
+        Tier.threshold = threshold;
+        measure("loops top-level tier", () -> interpreter.interpret(global));
+        measure("loops function tier", () -> interpreter.interpret(function));
+    }
+
+    // One get site in get(o) reading o.x from six instances, all of one class
+    // (monomorphic), of three classes (polymorphic, within the cache limit) and
+    // of six classes (megamorphic, past it).
+    private static void properties() {
+        StringBuilder classes = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            // Fields in different orders, so x isn't in the same slot everywhere.
+            classes.append("class C").append(i).append(" { init() { ");
+            for (int j = 0; j < i; j++) {
+                classes.append("this.f").append(j).append(" = 0; ");
+            }
+            classes.append("this.x = 1; } }\n");
+        }
+        String run = "var s = 0;\n"
+                + "for (var i = 0; i < 20000; i = i + 1) {\n"
+                + "  s = s + get(a) + get(b) + get(c) + get(d) + get(e) + get(f);\n"
+                + "}\n";
+
+        String[][] sites = {
+            {"monomorphic", "C0", "C0", "C0", "C0", "C0", "C0"},
+            {"polymorphic", "C0", "C1", "C2", "C0", "C1", "C2"},
+            {"megamorphic", "C0", "C1", "C2", "C3", "C4", "C5"},
+        };
+        for (String[] site : sites) {
+            // Classes and instances once, new classes every run would mean new shapes.
+            StringBuilder setup = new StringBuilder(classes).append("fun get(o) { return o.x; }\n");
+            for (int i = 1; i < site.length; i++) {
+                setup.append("var ").append((char)('a' + i - 1)).append(" = ").append(site[i]).append("();\n");
+            }
+            Interpreter interpreter = new Interpreter(nullOut);
+            interpreter.interpret(parse(setup.toString()));
+
+            List<Stmt> statements = parse(run);
+            new TypeInference().infer(statements);
+            measure("properties " + site[0], () -> interpreter.interpret(statements));
+        }
+    }
+
+    // 100k spawned tasks. In the first run every task sends its result as soon
+    // as it can, in the second all of them are alive at once, parked on a
+    // channel until the main program lets them go.
+    private static void tasks() {
+        List<Stmt> collect = parse(
+                "var done = channel(1000);\n"
+                + "for (var i = 0; i < 100000; i = i + 1) { spawn send(done, i); }\n"
+                + "var sum = 0;\n"
+                + "for (var i = 0; i < 100000; i = i + 1) sum = sum + receive(done);\n"
+                + "print sum;\n");
+        List<Stmt> parked = parse(
+                "var start = channel(1);\n"
+                + "var done = channel(1);\n"
+                + "for (var i = 0; i < 100000; i = i + 1) { spawn send(done, receive(start)); }\n"
+                + "var sum = 0;\n"
+                + "for (var i = 0; i < 100000; i = i + 1) { send(start, 1); sum = sum + receive(done); }\n"
+                + "print sum;\n");
+        Interpreter interpreter = new Interpreter(nullOut);
+
+        measure("tasks 100k collect", () -> {
+            interpreter.interpret(collect);
+            interpreter.awaitTasks();
+        });
+        measure("tasks 100k parked", () -> {
+            interpreter.interpret(parked);
+            interpreter.awaitTasks();
+        });
+    }
+
+    // Bytes per element of an array against the boxed Doubles the same numbers
+    // take as Lox values, then loops over the elements against the bulk
+    // operations doing the same work.
+    private static void arrays() {
+        int count = 1_000_000;
+        Interpreter interpreter = new Interpreter(nullOut);
+        interpreter.interpret(parse("var a;"));
+        List<Stmt> create = parse("a = array(" + count + ");");
+        long base = AstHeap.usedHeap();
+        interpreter.interpret(create);
+        long arrayBytes = AstHeap.usedHeap() - base;
+
+        base = AstHeap.usedHeap();
+        Object[] boxed = new Object[count];
+        for (int i = 0; i < count; i++) {
+            boxed[i] = i + 0.5;
+        }
+        long boxedBytes = AstHeap.usedHeap() - base;
+        System.out.println(String.format("%-40s %12.2f bytes/element", "arrays array()", (double)arrayBytes / count));
+        System.out.println(String.format("%-40s %12.2f bytes/element", "arrays boxed values",
+                (double)boxedBytes / boxed.length));
+
+        // Loops run in a function, where the variables live in a frame.
+        interpreter.interpret(parse("a = array(100000); var b;"));
+        String[][] runs = {
+            {"arrays loop fill", "fun run(a) { for (var i = 0; i < 100000; i = i + 1) a[i] = 1.5; } run(a);"},
+            {"arrays fill()", "fill(a, 1.5);"},
+            {"arrays loop sum", "fun run(a) { var s = 0; for (var i = 0; i < 100000; i = i + 1) s = s + a[i];"
+                    + " return s; } print run(a);"},
+            {"arrays sum()", "print sum(a);"},
+            {"arrays loop map", "fun run(a) { var b = array(100000);"
+                    + " for (var i = 0; i < 100000; i = i + 1) b[i] = a[i] * 2; return b; } b = run(a);"},
+            {"arrays map()", "b = map(a, \"*\", 2);"},
+        };
+        for (String[] run : runs) {
+            List<Stmt> statements = parse(run[1]);
+            new TypeInference().infer(statements);
+            measure(run[0], () -> interpreter.interpret(statements));
+        }
+    }
+
+    // 100k number keys and 100k string keys put into and looked up in a LoxMap
+    // against a HashMap, then the heap each holds per entry. Keys come in
+    // boxed, the way Lox values do, and number keys are boxed fresh each time.
+    private static void maps() {
+        int count = 100_000;
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            strings[i] = "key" + i;
+        }
+        int[] inOrder = new int[count];
+        for (int i = 0; i < count; i++) {
+            inOrder[i] = i;
+        }
+        int[] shuffled = inOrder.clone();
+        Random random = new Random(42);
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = swap;
+        }
+        Object[] found = new Object[1];
+
+        for (String kind : new String[] {"numbers", "strings"}) {
+            boolean numbers = kind.equals("numbers");
+            measure("maps LoxMap put " + kind, () -> {
+                LoxMap map = new LoxMap();
+                for (int i = 0; i < count; i++) {
+                    map.put(numbers ? (Object)(double)i : strings[i], Boolean.TRUE);
+                }
+                found[0] = map;
+            });
+            measure("maps HashMap put " + kind, () -> {
+                Map<Object, Object> map = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    map.put(numbers ? (Object)(double)i : strings[i], Boolean.TRUE);
+                }
+                found[0] = map;
+            });
+
+            found[0] = null;
+            long base = AstHeap.usedHeap();
+            LoxMap loxMap = new LoxMap();
+            for (int i = 0; i < count; i++) {
+                loxMap.put(numbers ? (Object)(double)i : strings[i], Boolean.TRUE);
+            }
+            long loxBytes = AstHeap.usedHeap() - base;
+            base = AstHeap.usedHeap();
+            Map<Object, Object> hashMap = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                hashMap.put(numbers ? (Object)(double)i : strings[i], Boolean.TRUE);
+            }
+            long hashBytes = AstHeap.usedHeap() - base;
+            System.out.println(String.format("%-40s %12.2f bytes/entry", "maps LoxMap " + kind,
+                    (double)loxBytes / count));
+            System.out.println(String.format("%-40s %12.2f bytes/entry", "maps HashMap " + kind,
+                    (double)hashBytes / count));
+
+            // Both maps stay reachable until here. Looking keys up in the order
+            // they went in favors HashMap, whose nodes were allocated in that order.
+            for (int[] order : new int[][] {inOrder, shuffled}) {
+                String how = kind + (order == inOrder ? " in order" : " shuffled");
+                measure("maps LoxMap get " + how, () -> {
+                    for (int i : order) {
+                        found[0] = loxMap.get(numbers ? (Object)(double)i : strings[i]);
+                    }
+                });
+                measure("maps HashMap get " + how, () -> {
+                    for (int i : order) {
+                        found[0] = hashMap.get(numbers ? (Object)(double)i : strings[i]);
+                    }
+                });
+            }
+        }
+    }
+
+    // A script importing a library of 200 functions, run by a fresh interpreter
+    // each time like BatchRunner does, against the same library pasted into
+    // the script and parsed with it every time.
+    private static void modules() {
+        StringBuilder library = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            library.append("fun f").append(i).append("(x) {\n")
+                    .append("  var y = x * ").append(i).append(" + 1;\n")
+                    .append("  if (y > 100) { y = y - 100; } else { y = y + 100; }\n")
+                    .append("  return y;\n")
+                    .append("}\n");
+        }
+        String main = "print f0(1) + f199(2);\n";
+
+        Path directory;
+        try {
+            directory = Files.createTempDirectory("lox-modules");
+            Files.writeString(directory.resolve("library.lox"), library);
+            directory.resolve("library.lox").toFile().deleteOnExit();
+            directory.toFile().deleteOnExit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Path script = directory.resolve("main.lox");
+        String importing = "import \"library.lox\";\n" + main;
+        String pasted = library + main;
+
+        int before = Modules.parses();
+        measure("modules import", () -> {
+            Interpreter interpreter = new Interpreter(nullOut);
+            interpreter.setScript(script);
+            interpreter.interpret(parse(importing));
+        });
+        System.out.println(String.format("%-40s %12d", "modules library parses", Modules.parses() - before));
+        measure("modules pasted", () -> new Interpreter(nullOut).interpret(parse(pasted)));
+    }
+
+    // Parsing a file with a syntax error every 10 lines, unwinding with a
+    // ParseError to the enclosing declaration against the recovering parser.
+    private static void recovery() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            if (i % 10 == 9) {
+                // Deep enough that the error is a few calls below declaration().
+                source.append("print (a").append(i).append(" + * 2);\n");
+            } else if (i % 10 == 4) {
+                source.append("fun f").append(i).append("(x) { return x * ").append(i).append("; }\n");
+            } else {
+                source.append("var a").append(i).append(" = a").append(i - 1).append(" + 1;\n");
+            }
+        }
+        List<Token> tokens = new Scanner(source.toString()).scanTokens();
+        ErrorReporter errors = new ErrorReporter(nullOut);
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        int[] kept = new int[1];
+
+        Lox.setReporter(errors);
+        try {
+            measure("recovery throwing", () -> {
+                kept[0] = 0;
+                for (Stmt stmt : new Parser(tokens).parse()) {
+                    kept[0] += stmt != null ? 1 : 0;
+                }
+            });
+        } finally {
+            Lox.clearReporter();
+        }
+        System.out.println(String.format("%-40s %12d", "recovery throwing statements", kept[0]));
+        measure("recovery diagnostics", () -> {
+            diagnostics.clear();
+            kept[0] = new Parser(tokens, diagnostics).parse().size();
+        });
+        System.out.println(String.format("%-40s %12d", "recovery diagnostics statements", kept[0]));
+        System.out.println(String.format("%-40s %12d", "recovery diagnostics errors", diagnostics.size()));
+    }
+
+    // Scanning and parsing a whole 200k line script before running it against
+    // streaming it a declaration at a time: time per run, time until the
+    // first output, and the most heap live during the run.
+    private static void streaming() {
+        // Only the tree grows with the script, not the globals.
+        StringBuilder builder = new StringBuilder("var sum = 0;\n");
+        for (int i = 0; i < 200_000; i++) {
+            builder.append("sum = sum + ").append(i).append(" * 2 + 1;\n");
+            if (i % 1000 == 0) {
+                builder.append("print sum;\n");
+            }
+        }
+        String source = builder.toString();
+        System.out.println(String.format("streaming: %.1f MB", source.length() / 1e6));
+
+        measure("streaming whole", () -> {
+            List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+            new Resolver().resolve(statements);
+            new TypeInference().infer(statements);
+            new Interpreter(nullOut).interpret(statements);
+        });
+        measure("streaming stream", () -> Lox.runStream(new StringReader(source), new Interpreter(nullOut)));
+
+        // Once more each, timing the first print and sampling the live heap.
+        long[] first = new long[1];
+        PrintStream out = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                if (first[0] == 0) {
+                    first[0] = System.nanoTime();
+                }
+            }
+        });
+        long[] peak = new long[1];
+        long base = AstHeap.usedHeap();
+
+        long start = System.nanoTime();
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver().resolve(statements);
+        new TypeInference().infer(statements);
+        new Interpreter(out).interpret(statements);
+        // The tokens are garbage by now, the tree was live all along.
+        peak[0] = AstHeap.usedHeap() - base;
+        Reference.reachabilityFence(statements);
+        report("whole", first[0] - start, peak[0]);
+
+        first[0] = 0;
+        peak[0] = 0;
+        long streamBase = AstHeap.usedHeap();
+        Reader sampled = new FilterReader(new StringReader(source)) {
+            private int reads = 0;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                // The scanner reads a chunk at a time, sample every few chunks.
+                if (++reads % 8 == 0) {
+                    peak[0] = Math.max(peak[0], AstHeap.usedHeap() - streamBase);
+                }
+                return super.read(buffer, offset, length);
+            }
+        };
+        start = System.nanoTime();
+        Lox.runStream(sampled, new Interpreter(out));
+        report("stream", first[0] - start, peak[0]);
+    }
+
+    // The sequential front end against --stream and the pipelined one, end
+    // to end, on a script that is mostly parsing and on one where every
+    // statement runs a short loop, so running takes about as long as parsing.
+    private static void pipeline() {
+        StringBuilder parsing = new StringBuilder("var sum = 0;\n");
+        StringBuilder balanced = new StringBuilder("var sum = 0;\n");
+        for (int i = 0; i < 50_000; i++) {
+            parsing.append("sum = sum + ").append(i).append(" * 2 + 1;\n");
+            balanced.append("for (var j = 0; j < 10; j = j + 1) sum = sum + j * ").append(i).append(";\n");
+        }
+
+        for (String[] script : new String[][] {
+                {"parsing", parsing.toString()}, {"balanced", balanced.toString()}}) {
+            String source = script[1];
+            String name = "pipeline " + script[0];
+            measure(name + " sequential", () -> {
+                List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+                new Resolver().resolve(statements);
+                new TypeInference().infer(statements);
+                new Interpreter(nullOut).interpret(statements);
+            });
+            measure(name + " stream", () -> Lox.runStream(new StringReader(source), new Interpreter(nullOut)));
+            measure(name + " pipelined", () -> {
+                try {
+                    new Pipeline(new StringReader(source), new Interpreter(nullOut)).run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private static void report(String how, long firstNanos, long bytes) {
+        System.out.println(String.format("%-40s %12.3f ms", "streaming " + how + " first output", firstNanos / 1e6));
+        System.out.println(String.format("%-40s %12.1f MB", "streaming " + how + " live heap", bytes / 1e6));
+    }
+
+    // A block declaring a few locals followed by count copies of the statement.
+    private static String block(int count, String statement) {
+        StringBuilder source = new StringBuilder(
+                "{ var a = 1; var b = 2; var c = 3; var s = 0; var t = nil; var u = nil;\n");
+        for (int i = 0; i < count; i++) {
+            source.append(statement).append('\n');
+        }
+        return source.append("print s; }\n").toString();
+    }
+}
@@ -0,0 +1,388 @@
+package loxlang;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static loxlang.TokenType.*;
+
+// Scanner working directly on the UTF-8 bytes of a source file, normally memory
+// mapped, so the file is never read onto the heap or decoded as a whole. Only
+// identifiers, numbers and string literals are decoded, when their token is
+// made. Punctuation and keyword lexemes are shared constants.
+//
+// Produces the same tokens and errors as Scanner on UTF-8 source, except that
+// token offsets count bytes rather than chars. Tokens can be pulled one at a
+// time with next(), or a batch at a time for a StreamScanner, so a caller
+// that doesn't keep them all needs very little heap even for multi-gigabyte
+// files.
+class ByteScanner {
+    // Files are mapped in windows of 1GB, a ByteBuffer can't go past 2GB.
+    private static final int WINDOW_BITS = 30;
+    private static final long WINDOW_MASK = (1L << WINDOW_BITS) - 1;
+
+    private static final Map<TokenType, String> lexemes = new HashMap<>();
+    // Tokens per batch for nextBatch()
+    private static final int BATCH = 1 << 12;
+
+    private final ByteBuffer[] windows;
+    private final long length;
+    private long start = 0;
+    private long current = 0;
+    private int line = 1;
+    private boolean done = false;
+    // Token made by the last scanToken() call, null for whitespace and comments
+    private Token token;
+    // Where errors go while scanning a batch instead of Lox.error
+    private List<Diagnostic> diagnostics;
+
+    static {
+        // Keywords come from Scanner, so the two always agree on them.
+        for (Map.Entry<String, TokenType> keyword : Scanner.keywords.entrySet()) {
+            lexemes.put(keyword.getValue(), keyword.getKey());
+        }
+        String[][] punctuation = {
+                {"LEFT_PAREN", "("}, {"RIGHT_PAREN", ")"}, {"LEFT_BRACE", "{"}, {"RIGHT_BRACE", "}"},
+                {"LEFT_BRACKET", "["}, {"RIGHT_BRACKET", "]"}, {"COLON", ":"},
+                {"COMMA", ","}, {"DOT", "."}, {"MINUS", "-"}, {"PLUS", "+"}, {"SEMICOLON", ";"},
+                {"SLASH", "/"}, {"STAR", "*"}, {"BANG", "!"}, {"BANG_EQUAL", "!="},
+                {"EQUAL", "="}, {"EQUAL_EQUAL", "=="}, {"GREATER", ">"}, {"GREATER_EQUAL", ">="},
+                {"LESS", "<"}, {"LESS_EQUAL", "<="}};
+        for (String[] entry : punctuation) {
+            lexemes.put(TokenType.valueOf(entry[0]), entry[1]);
+        }
+    }
+
+    ByteScanner(ByteBuffer source) {
+        this(new ByteBuffer[] {source}, source.remaining());
+    }
+
+    private ByteScanner(ByteBuffer[] windows, long length) {
+        this.windows = windows;
+        this.length = length;
+    }
+
+    // Maps the whole file read only, the mapping stays valid after the channel closes.
+    static ByteScanner map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer[] windows = new ByteBuffer[(int) ((size + WINDOW_MASK) >>> WINDOW_BITS)];
+            for (int i = 0; i < windows.length; i++) {
+                long offset = (long) i << WINDOW_BITS;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.min(WINDOW_MASK + 1, size - offset));
+            }
+            return new ByteScanner(windows, size);
+        }
+    }
+
+    List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        for (Token next = next(); next != null; next = next()) {
+            tokens.add(next);
+        }
+        return tokens;
+    }
+
+    // The next tokens for a StreamScanner, with the errors found scanning
+    // them. The last batch ends with EOF.
+    ReaderScanner.Batch nextBatch() {
+        diagnostics = new ArrayList<>();
+        List<Token> tokens = new ArrayList<>();
+        while (tokens.size() < BATCH) {
+            Token next = next();
+            if (next == null) {
+                break;
+            }
+            tokens.add(next);
+        }
+        ReaderScanner.Batch batch = new ReaderScanner.Batch(tokens, diagnostics);
+        diagnostics = null;
+        return batch;
+    }
+
+    // Returns the next token, EOF at the end and null after that.
+    Token next() {
+        while (!isAtEnd()) {
+            // Beginning of the next lexeme
+            start = current;
+            token = null;
+            scanToken();
+            if (token != null) {
+                return token;
+            }
+        }
+        if (done) {
+            return null;
+        }
+        done = true;
+        return new Token(EOF, "", null, line, offset(current));
+    }
+
+    private void scanToken() {
+        byte c = advance();
+        switch (c) {
+            case '(': addToken(LEFT_PAREN); break;
+            case ')': addToken(RIGHT_PAREN); break;
+            case '{': addToken(LEFT_BRACE); break;
+            case '}': addToken(RIGHT_BRACE); break;
+            case '[': addToken(LEFT_BRACKET); break;
+            case ']': addToken(RIGHT_BRACKET); break;
+            case ':': addToken(COLON); break;
+            case ',': addToken(COMMA); break;
+            case '.': addToken(DOT); break;
+            case '-': addToken(MINUS); break;
+            case '+': addToken(PLUS); break;
+            case ';': addToken(SEMICOLON); break;
+            case '*': addToken(STAR); break;
+            case '!': addToken(match('=') ? BANG_EQUAL : BANG); break;
+            case '=': addToken(match('=') ? EQUAL_EQUAL : EQUAL); break;
+            case '<': addToken(match('=') ? LESS_EQUAL : LESS); break;
+            case '>': addToken(match('=') ? GREATER_EQUAL : GREATER); break;
+            case '/':
+                if (match('/')) {
+                    // A comment goes until the end of the line.
+                    while (peek() != '\n' && !isAtEnd()) {
+                        advance();
+                    }
+                }
+                // Matching for C-style comments /* .... */
+                else if (match('*')) {
+                    comment();
+                } else {
+                    addToken(SLASH);
+                }
+                break;
+            case ' ':
+            case '\r':
+            case '\t':
+                // Ignore whitespace
+                break;
+            case '\n':
+                line++;
+                break;
+            case '"': string(); break;
+            default:
+                if (isDigit(c)) {
+                    number();
+                } else if (isAlpha(c)) {
+                    identifier();
+                } else {
+                    unexpected(c);
+                }
+        }
+    }
+
+    // Scanner sees one char per UTF-16 unit, so skip the rest of a multi-byte
+    // sequence and report once per char, twice for a surrogate pair.
+    private void unexpected(byte lead) {
+        int continuation = continuation(lead);
+        for (int i = 0; i < continuation && (peek() & 0xc0) == 0x80; i++) {
+            advance();
+        }
+
+        error("Unexpected character.");
+        if (continuation == 3) {
+            error("Unexpected character.");
+        }
+    }
+
+    // Continuation bytes following a UTF-8 lead byte.
+    private static int continuation(byte lead) {
+        if ((lead & 0xe0) == 0xc0) {
+            return 1;
+        } else if ((lead & 0xf0) == 0xe0) {
+            return 2;
+        } else if ((lead & 0xf8) == 0xf0) {
+            return 3;
+        }
+        return 0;
+    }
+
+    private void identifier() {
+        while (isAlphaNumeric(peek())) {
+            advance();
+        }
+
+        // See if the identifier is a reserved word
+        String text = text(start, current);
+
+        TokenType type = Scanner.keywords.get(text);
+        if (type == null) {
+            token = new Token(IDENTIFIER, text, null, line, offset(start));
+            return;
+        }
+        addToken(type);
+    }
+
+    private void number() {
+        while (isDigit(peek())) {
+            advance();
+        }
+
+        // Look for a fractional part.
+        if (peek() == '.' && isDigit(peekNext())) {
+            // Consume the "."
+            advance();
+            while (isDigit(peek())) {
+                advance();
+            }
+        }
+
+        String text = text(start, current);
+        token = new Token(NUMBER, text, Double.parseDouble(text), line, offset(start));
+    }
+
+    // Searches for the ending '"' value and ads the resulting string to a token
+    private void string() {
+        // Peek until the second " is found
+        while (peek() != '"' && !isAtEnd()) {
+            // increment line if a newline is reached before reaching the end of the string.
+            if (peek() == '\n') {
+                line++;
+            }
+            advance();
+        }
+        // If the end of file is reached before finding a second ", throw an error.
+        if (isAtEnd()) {
+            error("Unterminated String");
+            return;
+        }
+
+        // Closing '"'
+        advance();
+
+        // Trim surrounding quotes and add
+        String value = text(start + 1, current - 1);
+        token = new Token(STRING, "\"" + value + "\"", value, line, offset(start));
+    }
+
+    // Same nesting rules as Scanner.comment()
+    private void comment() {
+        while (!isAtEnd()) {
+            if (peek() == '*' && peekNext() == '/') {
+                break;
+            }
+
+            if (peek() == '\n') {
+                line++;
+            }
+            if (peek() == '/' && peekNext() == '*') {
+                current += 2;
+                comment();
+            }
+            if (peek() == '\n' || peek() == '\0') {
+                break;
+            }
+            advance();
+        }
+        // Scanner skips two chars here, the "*/" or else the newline and the
+        // char after it, which may take more than one byte.
+        current++;
+        skipChar();
+    }
+
+    // Skips one char as Scanner sees it. A four byte sequence is two chars to
+    // Scanner, the second of which it reports, so that is skipped whole and
+    // reported here.
+    private void skipChar() {
+        if (isAtEnd()) {
+            current++;
+            return;
+        }
+        byte lead = advance();
+        int continuation = continuation(lead);
+        for (int i = 0; i < continuation && (peek() & 0xc0) == 0x80; i++) {
+            advance();
+        }
+        if (continuation == 3) {
+            error("Unexpected character.");
+        }
+    }
+
+    private void error(String message) {
+        if (diagnostics != null) {
+            diagnostics.add(new Diagnostic(line, "", message));
+        } else {
+            Lox.error(line, message);
+        }
+    }
+
+    private boolean match(char expected) {
+        if (isAtEnd()) {
+            return false;
+        }
+        if (byteAt(current) != expected) {
+            return false;
+        }
+
+        current++;
+        return true;
+    }
+
+    private byte peek() {
+        if (isAtEnd()) {
+            return '\0';
+        }
+        return byteAt(current);
+    }
+
+    private byte peekNext() {
+        if (current + 1 >= length) {
+            return '\0';
+        }
+        return byteAt(current + 1);
+    }
+
+    private boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private boolean isAlpha(byte c) {
+        return (c >= 'a' && c <= 'z') ||
+                (c >= 'A' && c <= 'Z') ||
+                c == '_';
+    }
+
+    private boolean isAlphaNumeric(byte c) {
+        return isAlpha(c) || isDigit(c);
+    }
+
+    private boolean isAtEnd() {
+        return current >= length;
+    }
+
+    private byte advance() {
+        current++;
+        return byteAt(current - 1);
+    }
+
+    private byte byteAt(long index) {
+        return windows[(int) (index >>> WINDOW_BITS)].get((int) (index & WINDOW_MASK));
+    }
+
+    // Decodes [from, to) as UTF-8.
+    private String text(long from, long to) {
+        byte[] bytes = new byte[(int) (to - from)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = byteAt(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Token offsets are ints, past 2GB there is no usable offset.
+    private static int offset(long position) {
+        return position <= Integer.MAX_VALUE ? (int) position : -1;
+    }
+
+    private void addToken(TokenType type) {
+        token = new Token(type, lexemes.get(type), null, line, offset(start));
+    }
+}
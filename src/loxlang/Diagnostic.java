@@ -0,0 +1,20 @@
+package loxlang;
+
+// An error found while scanning or parsing, kept to be reported later instead
+// of going straight to Lox.error.
+class Diagnostic {
+    final int line;
+    // " at 'x'", "at end" or "", as in ErrorReporter
+    final String where;
+    final String message;
+
+    Diagnostic(int line, String where, String message) {
+        this.line = line;
+        this.where = where;
+        this.message = message;
+    }
+
+    public String toString() {
+        return "[line " + line + "] Error" + where + ": " + message;
+    }
+}
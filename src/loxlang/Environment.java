@@ -42,9 +42,50 @@ class Environment {
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
+    // Reads a variable the Resolver found in the Environment distance steps
+    // out. Looking it up by name instead could find one declared closer in
+    // after the site was resolved.
+    Object getAt(int distance, Token name) {
+        Environment environment = ancestor(distance);
+        if (environment.values.containsKey(name.lexeme)) {
+            return environment.values.get(name.lexeme);
+        }
+        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
+
+    void assignAt(int distance, Token name, Object value) {
+        Environment environment = ancestor(distance);
+        if (environment.values.containsKey(name.lexeme)) {
+            environment.values.put(name.lexeme, value);
+            return;
+        }
+        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
+
+    private Environment ancestor(int distance) {
+        Environment environment = this;
+        for (int i = 0; i < distance; i++) {
+            environment = environment.enclosing;
+        }
+        return environment;
+    }
+
     void define(String name, Object value) {
         values.put(name, value);
     }
 
+    // Copy of the chain of environments with the given globals at its root,
+    // for a spawned task.
+    Environment copy(Globals root) {
+        Environment copy = new Environment(enclosing == null ? root : enclosing.copy(root));
+        copy.values.putAll(values);
+        return copy;
+    }
+
+    // Forgets every variable, so a loop body can run in the same scope again.
+    void clear() {
+        values.clear();
+    }
+
 
 }
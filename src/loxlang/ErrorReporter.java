@@ -0,0 +1,48 @@
+package loxlang;
+
+import java.io.PrintStream;
+
+// Error state for one script. Lox keeps one per thread so scripts running
+// concurrently in batch mode don't see each other's errors.
+class ErrorReporter {
+    // Has an error occured? We don't want to run code with errors!!
+    boolean hadError = false;
+    boolean hadRuntimeError = false;
+    private final PrintStream err;
+
+    ErrorReporter(PrintStream err) {
+        this.err = err;
+    }
+
+    // Report error at a given line
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    // Reports error at a given token
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, "at end", message);
+        } else {
+            report(token.line, " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    // Spawned tasks report to the reporter of their program.
+    synchronized void runtimeError(RuntimeError error) {
+        err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+        hadRuntimeError = true;
+    }
+
+    // Prints the line number and error message of said error
+    private void report(int line, String where, String message) {
+        err.println("[line " + line + "] Error" + where + ": " + message);
+        hadError = true;
+    }
+
+    // Replays error text captured elsewhere, e.g. parse errors of a cached script.
+    void replay(String text, boolean hadError) {
+        err.print(text);
+        this.hadError |= hadError;
+    }
+}
@@ -0,0 +1,56 @@
+package loxlang;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JDK Flight Recorder events for the phases of running a script.
+// Enable them in a recording with e.g. -XX:StartFlightRecording and look for
+// the "Lox" category. Allocation is what the phase's thread allocated.
+class Events {
+    @Name("loxlang.Scan")
+    @Label("Lox Scan")
+    @Category("Lox")
+    @StackTrace(false)
+    static final class Scan extends Event {
+        @Label("Source Bytes") @DataAmount long bytes;
+        @Label("Tokens") int tokens;
+        @Label("Allocated") @DataAmount long allocated;
+    }
+
+    @Name("loxlang.Parse")
+    @Label("Lox Parse")
+    @Category("Lox")
+    @StackTrace(false)
+    static final class Parse extends Event {
+        @Label("Tokens") int tokens;
+        @Label("Nodes") int nodes;
+        @Label("Allocated") @DataAmount long allocated;
+    }
+
+    @Name("loxlang.Execute")
+    @Label("Lox Execute")
+    @Category("Lox")
+    @StackTrace(false)
+    static final class Execute extends Event {
+        @Label("Statements") int statements;
+        @Label("Nodes") int nodes;
+        @Label("Allocated") @DataAmount long allocated;
+    }
+
+    @Name("loxlang.Script")
+    @Label("Lox Script")
+    @Category("Lox")
+    @Description("A whole script, from source text to the end of execution")
+    @StackTrace(false)
+    static final class Script extends Event {
+        @Label("Script") String script;
+        @Label("Source Bytes") @DataAmount long bytes;
+        @Label("Exit Code") int exitCode;
+        @Label("Allocated") @DataAmount long allocated;
+    }
+}
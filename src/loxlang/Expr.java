@@ -1,16 +1,55 @@
 package loxlang;
 
 import java.util.List;
+import java.util.Objects;
 
 abstract class Expr {
   interface Visitor<R> {
     R visitAssignExpr(Assign expr);
     R visitBinaryExpr(Binary expr);
+    R visitCallExpr(Call expr);
+    R visitErrorExpr(Error expr);
+    R visitGetExpr(Get expr);
     R visitGroupingExpr(Grouping expr);
+    R visitIndexExpr(Index expr);
     R visitLiteralExpr(Literal expr);
+    R visitLogicalExpr(Logical expr);
+    R visitMapLiteralExpr(MapLiteral expr);
+    R visitSetExpr(Set expr);
+    R visitSetIndexExpr(SetIndex expr);
+    R visitSuperExpr(Super expr);
+    R visitThisExpr(This expr);
     R visitUnaryExpr(Unary expr);
     R visitVariableExpr(Variable expr);
   }
+
+  static boolean sameToken(Token a, Token b) {
+    if (a == b) return true;
+    if (a == null || b == null) return false;
+    return a.type == b.type && a.lexeme.equals(b.lexeme);
+  }
+
+  static int tokenHash(Token token) {
+    return token == null ? 0 : Objects.hash(token.type, token.lexeme);
+  }
+
+  static boolean sameTokens(List<Token> a, List<Token> b) {
+    if (a == b) return true;
+    if (a == null || b == null || a.size() != b.size()) return false;
+    for (int i = 0; i < a.size(); i++) {
+      if (!sameToken(a.get(i), b.get(i))) return false;
+    }
+    return true;
+  }
+
+  static int tokensHash(List<Token> tokens) {
+    if (tokens == null) return 0;
+    int hash = 1;
+    for (Token token : tokens) {
+      hash = 31 * hash + tokenHash(token);
+    }
+    return hash;
+  }
  static class Assign extends Expr {
     Assign(Token name, Expr value) {
     this.name = name;
@@ -24,6 +63,23 @@ abstract class Expr {
 
     final Token name;
     final Expr value;
+    boolean global;
+    Globals.Cell cell;
+    int access;
+    int slot;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Assign)) return false;
+      Assign other = (Assign)object;
+      return sameToken(name, other.name) && Objects.equals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Assign", tokenHash(name), value);
+    }
   }
  static class Binary extends Expr {
     Binary(Expr left, Token operator, Expr right) {
@@ -40,6 +96,103 @@ abstract class Expr {
     final Expr left;
     final Token operator;
     final Expr right;
+    boolean numbers;
+    boolean strings;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Binary)) return false;
+      Binary other = (Binary)object;
+      return Objects.equals(left, other.left) && sameToken(operator, other.operator) && Objects.equals(right, other.right);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Binary", left, tokenHash(operator), right);
+    }
+  }
+ static class Call extends Expr {
+    Call(Expr callee, Token paren, List<Expr> arguments) {
+    this.callee = callee;
+    this.paren = paren;
+    this.arguments = arguments;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitCallExpr(this);
+}
+
+    final Expr callee;
+    final Token paren;
+    final List<Expr> arguments;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Call)) return false;
+      Call other = (Call)object;
+      return Objects.equals(callee, other.callee) && sameToken(paren, other.paren) && Objects.equals(arguments, other.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Call", callee, tokenHash(paren), arguments);
+    }
+  }
+ static class Error extends Expr {
+    Error(Token token) {
+    this.token = token;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitErrorExpr(this);
+}
+
+    final Token token;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Error)) return false;
+      Error other = (Error)object;
+      return sameToken(token, other.token);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Error", tokenHash(token));
+    }
+  }
+ static class Get extends Expr {
+    Get(Expr object, Token name) {
+    this.object = object;
+    this.name = name;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitGetExpr(this);
+}
+
+    final Expr object;
+    final Token name;
+    PropertyCache cache;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Get)) return false;
+      Get other = (Get)object;
+      return Objects.equals(object, other.object) && sameToken(name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Get", object, tokenHash(name));
+    }
   }
  static class Grouping extends Expr {
     Grouping(Expr expression) {
@@ -52,6 +205,48 @@ abstract class Expr {
 }
 
     final Expr expression;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Grouping)) return false;
+      Grouping other = (Grouping)object;
+      return Objects.equals(expression, other.expression);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Grouping", expression);
+    }
+  }
+ static class Index extends Expr {
+    Index(Expr object, Token bracket, Expr index) {
+    this.object = object;
+    this.bracket = bracket;
+    this.index = index;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitIndexExpr(this);
+}
+
+    final Expr object;
+    final Token bracket;
+    final Expr index;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Index)) return false;
+      Index other = (Index)object;
+      return Objects.equals(object, other.object) && sameToken(bracket, other.bracket) && Objects.equals(index, other.index);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Index", object, tokenHash(bracket), index);
+    }
   }
  static class Literal extends Expr {
     Literal(Object value) {
@@ -64,6 +259,193 @@ abstract class Expr {
 }
 
     final Object value;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Literal)) return false;
+      Literal other = (Literal)object;
+      return Objects.equals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Literal", value);
+    }
+  }
+ static class Logical extends Expr {
+    Logical(Expr left, Token operator, Expr right) {
+    this.left = left;
+    this.operator = operator;
+    this.right = right;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitLogicalExpr(this);
+}
+
+    final Expr left;
+    final Token operator;
+    final Expr right;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Logical)) return false;
+      Logical other = (Logical)object;
+      return Objects.equals(left, other.left) && sameToken(operator, other.operator) && Objects.equals(right, other.right);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Logical", left, tokenHash(operator), right);
+    }
+  }
+ static class MapLiteral extends Expr {
+    MapLiteral(Token brace, List<Expr> keys, List<Expr> values) {
+    this.brace = brace;
+    this.keys = keys;
+    this.values = values;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitMapLiteralExpr(this);
+}
+
+    final Token brace;
+    final List<Expr> keys;
+    final List<Expr> values;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof MapLiteral)) return false;
+      MapLiteral other = (MapLiteral)object;
+      return sameToken(brace, other.brace) && Objects.equals(keys, other.keys) && Objects.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("MapLiteral", tokenHash(brace), keys, values);
+    }
+  }
+ static class Set extends Expr {
+    Set(Expr object, Token name, Expr value) {
+    this.object = object;
+    this.name = name;
+    this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitSetExpr(this);
+}
+
+    final Expr object;
+    final Token name;
+    final Expr value;
+    PropertyCache cache;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Set)) return false;
+      Set other = (Set)object;
+      return Objects.equals(object, other.object) && sameToken(name, other.name) && Objects.equals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Set", object, tokenHash(name), value);
+    }
+  }
+ static class SetIndex extends Expr {
+    SetIndex(Expr object, Token bracket, Expr index, Expr value) {
+    this.object = object;
+    this.bracket = bracket;
+    this.index = index;
+    this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitSetIndexExpr(this);
+}
+
+    final Expr object;
+    final Token bracket;
+    final Expr index;
+    final Expr value;
+    boolean number;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof SetIndex)) return false;
+      SetIndex other = (SetIndex)object;
+      return Objects.equals(object, other.object) && sameToken(bracket, other.bracket) && Objects.equals(index, other.index) && Objects.equals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("SetIndex", object, tokenHash(bracket), index, value);
+    }
+  }
+ static class Super extends Expr {
+    Super(Token keyword, Token method) {
+    this.keyword = keyword;
+    this.method = method;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitSuperExpr(this);
+}
+
+    final Token keyword;
+    final Token method;
+    int access;
+    int slot;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Super)) return false;
+      Super other = (Super)object;
+      return sameToken(keyword, other.keyword) && sameToken(method, other.method);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Super", tokenHash(keyword), tokenHash(method));
+    }
+  }
+ static class This extends Expr {
+    This(Token keyword) {
+    this.keyword = keyword;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitThisExpr(this);
+}
+
+    final Token keyword;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof This)) return false;
+      This other = (This)object;
+      return sameToken(keyword, other.keyword);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("This", tokenHash(keyword));
+    }
   }
  static class Unary extends Expr {
     Unary(Token operator, Expr right) {
@@ -78,6 +460,20 @@ abstract class Expr {
 
     final Token operator;
     final Expr right;
+    boolean number;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Unary)) return false;
+      Unary other = (Unary)object;
+      return sameToken(operator, other.operator) && Objects.equals(right, other.right);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Unary", tokenHash(operator), right);
+    }
   }
  static class Variable extends Expr {
     Variable(Token name) {
@@ -90,6 +486,23 @@ abstract class Expr {
 }
 
     final Token name;
+    boolean global;
+    Globals.Cell cell;
+    int access;
+    int slot;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Variable)) return false;
+      Variable other = (Variable)object;
+      return sameToken(name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Variable", tokenHash(name));
+    }
   }
 
     abstract <R> R accept(Visitor<R> visitor);
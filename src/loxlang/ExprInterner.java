@@ -0,0 +1,173 @@
+package loxlang;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static loxlang.TokenType.*;
+
+// Hash-consing for the parser: structurally equal expressions are built only
+// once and shared, using the generated equals() and hashCode().
+//
+// Only constant subtrees that can never raise a runtime error are shared, like
+// 2, "a" + "b" or -(1 * 3). Anything that names a variable depends on the scope
+// it sits in, and anything that can fail must keep its own operator token so
+// the error reports the right line. The slots later passes fill in for shared
+// nodes depend only on the subtree, so sharing them is safe too.
+//
+// Literals go through a constant table, so every 1.5 or "name" in the program
+// is one Literal node holding one boxed value.
+class ExprInterner {
+    // Bigger subtrees rarely repeat, and comparing them gets costly.
+    private static final int MAX_SIZE = 32;
+
+    private enum Kind { NUMBER, STRING, OTHER }
+
+    // Value to its one Literal node, null has its own slot below.
+    private final Map<Object, Expr.Literal> constants = new HashMap<>();
+    private Expr.Literal nil;
+    private final Map<Expr, Expr> shared = new HashMap<>();
+    // What every shared node evaluates to, and how many nodes it has
+    private final Map<Expr, Kind> kinds = new IdentityHashMap<>();
+    private final Map<Expr, Integer> sizes = new IdentityHashMap<>();
+
+    private int built = 0;
+    private int reused = 0;
+
+    // Returns the shared copy of expr, or expr itself if it can't be shared.
+    Expr intern(Expr expr) {
+        built++;
+        Kind kind = kind(expr);
+        if (kind == null) {
+            return expr;
+        }
+
+        Expr existing;
+        if (expr instanceof Expr.Literal) {
+            existing = literal((Expr.Literal)expr);
+        } else {
+            int size = size(expr);
+            if (size > MAX_SIZE) {
+                return expr;
+            }
+            existing = shared.putIfAbsent(expr, expr);
+            if (existing == null) {
+                sizes.put(expr, size);
+            }
+        }
+
+        if (existing != null && existing != expr) {
+            reused++;
+            return existing;
+        }
+        kinds.put(expr, kind);
+        return expr;
+    }
+
+    private Expr.Literal literal(Expr.Literal literal) {
+        if (literal.value == null) {
+            if (nil == null) {
+                nil = literal;
+            }
+            return nil;
+        }
+        return constants.putIfAbsent(literal.value, literal);
+    }
+
+    // What a shareable expression evaluates to, null if it isn't shareable.
+    // Children have been interned already, so they are shared or not at all.
+    private Kind kind(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            Object value = ((Expr.Literal)expr).value;
+            return value instanceof Double ? Kind.NUMBER
+                    : value instanceof String ? Kind.STRING : Kind.OTHER;
+        }
+        if (expr instanceof Expr.Grouping) {
+            return kinds.get(((Expr.Grouping)expr).expression);
+        }
+        if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary)expr;
+            Kind right = kinds.get(unary.right);
+            if (right == null) {
+                return null;
+            }
+            if (unary.operator.type == BANG) {
+                return Kind.OTHER;
+            }
+            return right == Kind.NUMBER ? Kind.NUMBER : null;
+        }
+        if (expr instanceof Expr.Binary) {
+            return binaryKind((Expr.Binary)expr);
+        }
+        return null;
+    }
+
+    // Mirrors the operand checks in Interpreter.binary().
+    private Kind binaryKind(Expr.Binary binary) {
+        Kind left = kinds.get(binary.left);
+        Kind right = kinds.get(binary.right);
+        if (left == null || right == null) {
+            return null;
+        }
+
+        switch (binary.operator.type) {
+            case BANG_EQUAL:
+            case EQUAL_EQUAL:
+                return Kind.OTHER;
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return left == Kind.NUMBER && right == Kind.NUMBER ? Kind.OTHER : null;
+            case MINUS:
+            case STAR:
+                return left == Kind.NUMBER && right == Kind.NUMBER ? Kind.NUMBER : null;
+            case SLASH:
+                // Only a literal divisor is known not to be zero.
+                if (left == Kind.NUMBER && right == Kind.NUMBER && binary.right instanceof Expr.Literal
+                        && (double)((Expr.Literal)binary.right).value != 0) {
+                    return Kind.NUMBER;
+                }
+                return null;
+            case PLUS:
+                if (left == Kind.NUMBER && right == Kind.NUMBER) {
+                    return Kind.NUMBER;
+                }
+                if (left == Kind.OTHER || right == Kind.OTHER) {
+                    return null;
+                }
+                return Kind.STRING;
+        }
+        return null;
+    }
+
+    private int size(Expr expr) {
+        if (expr instanceof Expr.Grouping) {
+            return 1 + sizeOf(((Expr.Grouping)expr).expression);
+        }
+        if (expr instanceof Expr.Unary) {
+            return 1 + sizeOf(((Expr.Unary)expr).right);
+        }
+        if (expr instanceof Expr.Binary) {
+            return 1 + sizeOf(((Expr.Binary)expr).left) + sizeOf(((Expr.Binary)expr).right);
+        }
+        return 1;
+    }
+
+    private int sizeOf(Expr child) {
+        return sizes.getOrDefault(child, 1);
+    }
+
+    // Expressions passed through intern(), and how many were already there.
+    int built() {
+        return built;
+    }
+
+    int reused() {
+        return reused;
+    }
+
+    int constants() {
+        return constants.size();
+    }
+}
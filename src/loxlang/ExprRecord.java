@@ -0,0 +1,22 @@
+package loxlang;
+
+import java.util.List;
+
+sealed interface ExprRecord {
+  record Assign(Token name, ExprRecord value) implements ExprRecord {}
+  record Binary(ExprRecord left, Token operator, ExprRecord right) implements ExprRecord {}
+  record Call(ExprRecord callee, Token paren, List<ExprRecord> arguments) implements ExprRecord {}
+  record Error(Token token) implements ExprRecord {}
+  record Get(ExprRecord object, Token name) implements ExprRecord {}
+  record Grouping(ExprRecord expression) implements ExprRecord {}
+  record Index(ExprRecord object, Token bracket, ExprRecord index) implements ExprRecord {}
+  record Literal(Object value) implements ExprRecord {}
+  record Logical(ExprRecord left, Token operator, ExprRecord right) implements ExprRecord {}
+  record MapLiteral(Token brace, List<ExprRecord> keys, List<ExprRecord> values) implements ExprRecord {}
+  record Set(ExprRecord object, Token name, ExprRecord value) implements ExprRecord {}
+  record SetIndex(ExprRecord object, Token bracket, ExprRecord index, ExprRecord value) implements ExprRecord {}
+  record Super(Token keyword, Token method) implements ExprRecord {}
+  record This(Token keyword) implements ExprRecord {}
+  record Unary(Token operator, ExprRecord right) implements ExprRecord {}
+  record Variable(Token name) implements ExprRecord {}
+}
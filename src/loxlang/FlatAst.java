@@ -0,0 +1,475 @@
+package loxlang;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact form of a parsed program, generated alongside Expr and Stmt.
+// A node is a record in nodes[]: its kind followed by one int per field.
+// Child nodes are indices into nodes[], tokens are indices into tokens[]
+// (type, source offset, length, line), lists are indices into lists[]
+// (size, then elements) and any other value is an index into constants[].
+// -1 stands for null. Nodes are turned back into Expr and Stmt on demand.
+final class FlatAst {
+  static final int ASSIGN_EXPR = 0;
+  static final int BINARY_EXPR = 1;
+  static final int CALL_EXPR = 2;
+  static final int ERROR_EXPR = 3;
+  static final int GET_EXPR = 4;
+  static final int GROUPING_EXPR = 5;
+  static final int INDEX_EXPR = 6;
+  static final int LITERAL_EXPR = 7;
+  static final int LOGICAL_EXPR = 8;
+  static final int MAPLITERAL_EXPR = 9;
+  static final int SET_EXPR = 10;
+  static final int SETINDEX_EXPR = 11;
+  static final int SUPER_EXPR = 12;
+  static final int THIS_EXPR = 13;
+  static final int UNARY_EXPR = 14;
+  static final int VARIABLE_EXPR = 15;
+  static final int BLOCK_STMT = 16;
+  static final int CLASS_STMT = 17;
+  static final int ERROR_STMT = 18;
+  static final int EXPRESSION_STMT = 19;
+  static final int FUNCTION_STMT = 20;
+  static final int IF_STMT = 21;
+  static final int IMPORT_STMT = 22;
+  static final int PRINT_STMT = 23;
+  static final int RETURN_STMT = 24;
+  static final int SPAWN_STMT = 25;
+  static final int VAR_STMT = 26;
+  static final int WHILE_STMT = 27;
+
+  private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+  final String source;
+  private int[] nodes = new int[64];
+  private int nodeCount = 0;
+  private int[] tokens = new int[64];
+  private int tokenCount = 0;
+  private int[] lists = new int[16];
+  private int listCount = 0;
+  private Object[] constants = new Object[16];
+  private int constantCount = 0;
+  private int[] roots = new int[16];
+  private int rootCount = 0;
+
+  // Only needed while encoding, dropped by trim()
+  private Map<Token, Integer> tokenIndex = new IdentityHashMap<>();
+  private Map<Object, Integer> constantIndex = new HashMap<>();
+  private final Encoder encoder = new Encoder();
+
+  FlatAst(String source) {
+    this.source = source;
+  }
+
+  // Encodes a top-level statement and appends it to the program.
+  void add(Stmt stmt) {
+    if (rootCount == roots.length) roots = Arrays.copyOf(roots, rootCount * 2);
+    roots[rootCount++] = node(stmt);
+  }
+
+  int rootCount() {
+    return rootCount;
+  }
+
+  int root(int index) {
+    return roots[index];
+  }
+
+  int kind(int node) {
+    return nodes[node];
+  }
+
+  // Shrinks the arrays to their final size once the program is complete.
+  void trim() {
+    nodes = Arrays.copyOf(nodes, nodeCount);
+    tokens = Arrays.copyOf(tokens, tokenCount * 4);
+    lists = Arrays.copyOf(lists, listCount);
+    constants = Arrays.copyOf(constants, constantCount);
+    roots = Arrays.copyOf(roots, rootCount);
+    tokenIndex = new IdentityHashMap<>();
+    constantIndex = new HashMap<>();
+  }
+
+  // Approximate heap used by the encoding, not counting the source.
+  long byteSize() {
+    long bytes = 16L * 5 + 4L * (nodes.length + tokens.length + lists.length + roots.length);
+    bytes += 4L * constants.length;
+    for (int i = 0; i < constantCount; i++) {
+      if (constants[i] instanceof String) {
+        bytes += 40 + ((String)constants[i]).length();
+      } else if (constants[i] != null) {
+        bytes += 16;
+      }
+    }
+    return bytes;
+  }
+
+  Expr expr(int node) {
+    if (node < 0) return null;
+    switch (nodes[node]) {
+      case ASSIGN_EXPR:
+        return new Expr.Assign(token(nodes[node + 1]), expr(nodes[node + 2]));
+      case BINARY_EXPR:
+        return new Expr.Binary(expr(nodes[node + 1]), token(nodes[node + 2]), expr(nodes[node + 3]));
+      case CALL_EXPR:
+        return new Expr.Call(expr(nodes[node + 1]), token(nodes[node + 2]), exprList(nodes[node + 3]));
+      case ERROR_EXPR:
+        return new Expr.Error(token(nodes[node + 1]));
+      case GET_EXPR:
+        return new Expr.Get(expr(nodes[node + 1]), token(nodes[node + 2]));
+      case GROUPING_EXPR:
+        return new Expr.Grouping(expr(nodes[node + 1]));
+      case INDEX_EXPR:
+        return new Expr.Index(expr(nodes[node + 1]), token(nodes[node + 2]), expr(nodes[node + 3]));
+      case LITERAL_EXPR:
+        return new Expr.Literal(constantAt(nodes[node + 1]));
+      case LOGICAL_EXPR:
+        return new Expr.Logical(expr(nodes[node + 1]), token(nodes[node + 2]), expr(nodes[node + 3]));
+      case MAPLITERAL_EXPR:
+        return new Expr.MapLiteral(token(nodes[node + 1]), exprList(nodes[node + 2]), exprList(nodes[node + 3]));
+      case SET_EXPR:
+        return new Expr.Set(expr(nodes[node + 1]), token(nodes[node + 2]), expr(nodes[node + 3]));
+      case SETINDEX_EXPR:
+        return new Expr.SetIndex(expr(nodes[node + 1]), token(nodes[node + 2]), expr(nodes[node + 3]), expr(nodes[node + 4]));
+      case SUPER_EXPR:
+        return new Expr.Super(token(nodes[node + 1]), token(nodes[node + 2]));
+      case THIS_EXPR:
+        return new Expr.This(token(nodes[node + 1]));
+      case UNARY_EXPR:
+        return new Expr.Unary(token(nodes[node + 1]), expr(nodes[node + 2]));
+      case VARIABLE_EXPR:
+        return new Expr.Variable(token(nodes[node + 1]));
+    }
+    throw new IllegalArgumentException("Not a Expr node: " + node);
+  }
+
+  Stmt stmt(int node) {
+    if (node < 0) return null;
+    switch (nodes[node]) {
+      case BLOCK_STMT:
+        return new Stmt.Block(stmtList(nodes[node + 1]));
+      case CLASS_STMT:
+        return new Stmt.Class(token(nodes[node + 1]), (Expr.Variable)expr(nodes[node + 2]), stmtList(nodes[node + 3]));
+      case ERROR_STMT:
+        return new Stmt.Error(token(nodes[node + 1]), stmt(nodes[node + 2]));
+      case EXPRESSION_STMT:
+        return new Stmt.Expression(expr(nodes[node + 1]));
+      case FUNCTION_STMT:
+        return new Stmt.Function(token(nodes[node + 1]), tokenList(nodes[node + 2]), (Stmt.Block)stmt(nodes[node + 3]));
+      case IF_STMT:
+        return new Stmt.If(expr(nodes[node + 1]), stmt(nodes[node + 2]), stmt(nodes[node + 3]));
+      case IMPORT_STMT:
+        return new Stmt.Import(token(nodes[node + 1]), token(nodes[node + 2]));
+      case PRINT_STMT:
+        return new Stmt.Print(expr(nodes[node + 1]));
+      case RETURN_STMT:
+        return new Stmt.Return(token(nodes[node + 1]), expr(nodes[node + 2]));
+      case SPAWN_STMT:
+        return new Stmt.Spawn(token(nodes[node + 1]), stmt(nodes[node + 2]));
+      case VAR_STMT:
+        return new Stmt.Var(token(nodes[node + 1]), expr(nodes[node + 2]));
+      case WHILE_STMT:
+        return new Stmt.While(expr(nodes[node + 1]), stmt(nodes[node + 2]), expr(nodes[node + 3]));
+    }
+    throw new IllegalArgumentException("Not a Stmt node: " + node);
+  }
+
+  Object constantAt(int index) {
+    return index < 0 ? null : constants[index];
+  }
+
+  Token token(int index) {
+    if (index < 0) return null;
+    int base = index * 4;
+    TokenType type = TOKEN_TYPES[tokens[base]];
+    int offset = tokens[base + 1];
+    int line = tokens[base + 3];
+    // Synthetic tokens have no source text, their lexeme is a constant.
+    String lexeme = offset < 0
+        ? (String)constants[tokens[base + 2]]
+        : source.substring(offset, offset + tokens[base + 2]);
+    Object literal = null;
+    if (type == TokenType.NUMBER) {
+      literal = Double.parseDouble(lexeme);
+    } else if (type == TokenType.STRING) {
+      literal = lexeme.substring(1, lexeme.length() - 1);
+    }
+    return new Token(type, lexeme, literal, line, offset);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T extends Expr> List<T> exprList(int list) {
+    if (list < 0) return null;
+    List<T> result = new ArrayList<>(lists[list]);
+    for (int i = 1; i <= lists[list]; i++) result.add((T)expr(lists[list + i]));
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T extends Stmt> List<T> stmtList(int list) {
+    if (list < 0) return null;
+    List<T> result = new ArrayList<>(lists[list]);
+    for (int i = 1; i <= lists[list]; i++) result.add((T)stmt(lists[list + i]));
+    return result;
+  }
+
+  private List<Token> tokenList(int list) {
+    if (list < 0) return null;
+    List<Token> result = new ArrayList<>(lists[list]);
+    for (int i = 1; i <= lists[list]; i++) result.add(token(lists[list + i]));
+    return result;
+  }
+
+  private int node(Expr expr) {
+    return expr == null ? -1 : expr.accept(encoder);
+  }
+
+  private int node(Stmt stmt) {
+    return stmt == null ? -1 : stmt.accept(encoder);
+  }
+
+  private int record(int... fields) {
+    if (nodeCount + fields.length > nodes.length) {
+      nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, nodeCount + fields.length));
+    }
+    int node = nodeCount;
+    System.arraycopy(fields, 0, nodes, nodeCount, fields.length);
+    nodeCount += fields.length;
+    return node;
+  }
+
+  private int list(int[] elements) {
+    if (listCount + elements.length + 1 > lists.length) {
+      lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listCount + elements.length + 1));
+    }
+    int list = listCount;
+    lists[listCount++] = elements.length;
+    System.arraycopy(elements, 0, lists, listCount, elements.length);
+    listCount += elements.length;
+    return list;
+  }
+
+  private int list(List<?> elements) {
+    if (elements == null) return -1;
+    int[] indices = new int[elements.size()];
+    for (int i = 0; i < indices.length; i++) {
+      Object element = elements.get(i);
+      if (element instanceof Expr) {
+        indices[i] = node((Expr)element);
+      } else if (element instanceof Stmt) {
+        indices[i] = node((Stmt)element);
+      } else if (element instanceof Token) {
+        indices[i] = token((Token)element);
+      } else {
+        indices[i] = -1;
+      }
+    }
+    return list(indices);
+  }
+
+  private int token(Token token) {
+    if (token == null) return -1;
+    Integer existing = tokenIndex.get(token);
+    if (existing != null) return existing;
+
+    if (tokenCount * 4 + 4 > tokens.length) tokens = Arrays.copyOf(tokens, tokens.length * 2);
+    int base = tokenCount * 4;
+    tokens[base] = token.type.ordinal();
+    tokens[base + 1] = token.offset;
+    tokens[base + 2] = token.offset < 0 ? constant(token.lexeme) : token.lexeme.length();
+    tokens[base + 3] = token.line;
+    tokenIndex.put(token, tokenCount);
+    return tokenCount++;
+  }
+
+  private int constant(Object value) {
+    if (value == null) return -1;
+    Integer existing = constantIndex.get(value);
+    if (existing != null) return existing;
+
+    if (constantCount == constants.length) constants = Arrays.copyOf(constants, constantCount * 2);
+    constants[constantCount] = value;
+    constantIndex.put(value, constantCount);
+    return constantCount++;
+  }
+
+  private final class Encoder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+      int name = token(expr.name);
+      int value = node(expr.value);
+      return record(ASSIGN_EXPR, name, value);
+    }
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+      int left = node(expr.left);
+      int operator = token(expr.operator);
+      int right = node(expr.right);
+      return record(BINARY_EXPR, left, operator, right);
+    }
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+      int callee = node(expr.callee);
+      int paren = token(expr.paren);
+      int arguments = list(expr.arguments);
+      return record(CALL_EXPR, callee, paren, arguments);
+    }
+    @Override
+    public Integer visitErrorExpr(Expr.Error expr) {
+      int token = token(expr.token);
+      return record(ERROR_EXPR, token);
+    }
+    @Override
+    public Integer visitGetExpr(Expr.Get expr) {
+      int object = node(expr.object);
+      int name = token(expr.name);
+      return record(GET_EXPR, object, name);
+    }
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+      int expression = node(expr.expression);
+      return record(GROUPING_EXPR, expression);
+    }
+    @Override
+    public Integer visitIndexExpr(Expr.Index expr) {
+      int object = node(expr.object);
+      int bracket = token(expr.bracket);
+      int index = node(expr.index);
+      return record(INDEX_EXPR, object, bracket, index);
+    }
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+      int value = constant(expr.value);
+      return record(LITERAL_EXPR, value);
+    }
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+      int left = node(expr.left);
+      int operator = token(expr.operator);
+      int right = node(expr.right);
+      return record(LOGICAL_EXPR, left, operator, right);
+    }
+    @Override
+    public Integer visitMapLiteralExpr(Expr.MapLiteral expr) {
+      int brace = token(expr.brace);
+      int keys = list(expr.keys);
+      int values = list(expr.values);
+      return record(MAPLITERAL_EXPR, brace, keys, values);
+    }
+    @Override
+    public Integer visitSetExpr(Expr.Set expr) {
+      int object = node(expr.object);
+      int name = token(expr.name);
+      int value = node(expr.value);
+      return record(SET_EXPR, object, name, value);
+    }
+    @Override
+    public Integer visitSetIndexExpr(Expr.SetIndex expr) {
+      int object = node(expr.object);
+      int bracket = token(expr.bracket);
+      int index = node(expr.index);
+      int value = node(expr.value);
+      return record(SETINDEX_EXPR, object, bracket, index, value);
+    }
+    @Override
+    public Integer visitSuperExpr(Expr.Super expr) {
+      int keyword = token(expr.keyword);
+      int method = token(expr.method);
+      return record(SUPER_EXPR, keyword, method);
+    }
+    @Override
+    public Integer visitThisExpr(Expr.This expr) {
+      int keyword = token(expr.keyword);
+      return record(THIS_EXPR, keyword);
+    }
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+      int operator = token(expr.operator);
+      int right = node(expr.right);
+      return record(UNARY_EXPR, operator, right);
+    }
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+      int name = token(expr.name);
+      return record(VARIABLE_EXPR, name);
+    }
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+      int statements = list(stmt.statements);
+      return record(BLOCK_STMT, statements);
+    }
+    @Override
+    public Integer visitClassStmt(Stmt.Class stmt) {
+      int name = token(stmt.name);
+      int superclass = node(stmt.superclass);
+      int methods = list(stmt.methods);
+      return record(CLASS_STMT, name, superclass, methods);
+    }
+    @Override
+    public Integer visitErrorStmt(Stmt.Error stmt) {
+      int token = token(stmt.token);
+      int partial = node(stmt.partial);
+      return record(ERROR_STMT, token, partial);
+    }
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expression stmt) {
+      int expression = node(stmt.expression);
+      return record(EXPRESSION_STMT, expression);
+    }
+    @Override
+    public Integer visitFunctionStmt(Stmt.Function stmt) {
+      int name = token(stmt.name);
+      int params = list(stmt.params);
+      int body = node(stmt.body);
+      return record(FUNCTION_STMT, name, params, body);
+    }
+    @Override
+    public Integer visitIfStmt(Stmt.If stmt) {
+      int condition = node(stmt.condition);
+      int thenBranch = node(stmt.thenBranch);
+      int elseBranch = node(stmt.elseBranch);
+      return record(IF_STMT, condition, thenBranch, elseBranch);
+    }
+    @Override
+    public Integer visitImportStmt(Stmt.Import stmt) {
+      int keyword = token(stmt.keyword);
+      int path = token(stmt.path);
+      return record(IMPORT_STMT, keyword, path);
+    }
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+      int expression = node(stmt.expression);
+      return record(PRINT_STMT, expression);
+    }
+    @Override
+    public Integer visitReturnStmt(Stmt.Return stmt) {
+      int keyword = token(stmt.keyword);
+      int value = node(stmt.value);
+      return record(RETURN_STMT, keyword, value);
+    }
+    @Override
+    public Integer visitSpawnStmt(Stmt.Spawn stmt) {
+      int keyword = token(stmt.keyword);
+      int body = node(stmt.body);
+      return record(SPAWN_STMT, keyword, body);
+    }
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+      int name = token(stmt.name);
+      int initializer = node(stmt.initializer);
+      return record(VAR_STMT, name, initializer);
+    }
+    @Override
+    public Integer visitWhileStmt(Stmt.While stmt) {
+      int condition = node(stmt.condition);
+      int body = node(stmt.body);
+      int increment = node(stmt.increment);
+      return record(WHILE_STMT, condition, body, increment);
+    }
+  }
+}
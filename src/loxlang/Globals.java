@@ -0,0 +1,88 @@
+package loxlang;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Root environment holding top-level variables.
+// Globals live in a dense slot table of cells instead of a HashMap of values, so a
+// variable site can cache its cell after the first lookup and skip the name lookup
+// (and the walk up the enclosing chain) from then on.
+class Globals extends Environment {
+    static final class Cell {
+        final Globals owner;
+        final String name;
+        Object value;
+
+        Cell(Globals owner, String name, Object value) {
+            this.owner = owner;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    // Name -> slot index into cells
+    private final Map<String, Integer> slots = new HashMap<>();
+    private Cell[] cells = new Cell[16];
+    private int count = 0;
+
+    // Globals of a spawned task, with the values these have now.
+    Globals copy() {
+        Globals copy = new Globals();
+        for (int slot = 0; slot < count; slot++) {
+            copy.define(cells[slot].name, cells[slot].value);
+        }
+        return copy;
+    }
+
+    @Override
+    Environment copy(Globals root) {
+        return root;
+    }
+
+    // Returns the cell for the given name, throws if it has not been defined yet.
+    Cell cell(Token name) {
+        Integer slot = slots.get(name.lexeme);
+        if (slot == null) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        }
+        return cells[slot];
+    }
+
+    // Number of globals defined so far, slots are numbered in definition order.
+    int size() {
+        return count;
+    }
+
+    Cell cellAt(int slot) {
+        return cells[slot];
+    }
+
+    @Override
+    Object get(Token name) {
+        return cell(name).value;
+    }
+
+    @Override
+    void assign(Token name, Object value) {
+        cell(name).value = value;
+    }
+
+    // Redefining an existing global reuses its cell, so sites that already cached
+    // the cell see the new value.
+    @Override
+    void define(String name, Object value) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            cells[slot].value = value;
+            return;
+        }
+
+        if (count == cells.length) {
+            Cell[] grown = new Cell[cells.length * 2];
+            System.arraycopy(cells, 0, grown, 0, count);
+            cells = grown;
+        }
+        slots.put(name, count);
+        cells[count++] = new Cell(this, name, value);
+    }
+}
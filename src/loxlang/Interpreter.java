@@ -1,20 +1,98 @@
 package loxlang;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 class Interpreter implements Expr.Visitor<Object>,
                              Stmt.Visitor<Void> {
-    private Environment environment = new Environment();
+    final Globals globals;
+    private Environment environment;
+    // Where print statements go
+    private final PrintStream out;
+    // Tasks spawned by this interpreter and the tasks' own interpreters
+    private final Tasks tasks;
+    // Imports resolve against the directory of the file being run
+    private Path directory = Paths.get("");
+    // Modules this interpreter imported, false while one is still running
+    private final Map<Path, Boolean> imports = new HashMap<>();
+
+    // Call frames live on one value stack: a frame is the slots from base, the
+    // arguments first, then the function's variables. Calls push their
+    // arguments at top and the callee's frame starts there, so a call
+    // allocates nothing but the boxes of captured variables.
+    Object[] stack;
+    int base = 0;
+    int top = 0;
+    // Boxes captured by the running function, and what 'this' is in it
+    LoxFunction.Box[] upvalues;
+    Object receiver;
+    // Set by a return statement, statement loops stop when they see it and
+    // the call picks up the value.
+    boolean returning = false;
+    private Object returnValue;
+    // The program stopped with a runtime error, see awaitTasks().
+    private boolean stopped = false;
+
+    Interpreter() {
+        this(System.out);
+    }
+
+    Interpreter(PrintStream out) {
+        this(out, new Globals(), new Tasks(), 1024);
+        LoxChannel.define(globals);
+        LoxArray.define(globals);
+        LoxMap.define(globals);
+    }
+
+    // Interpreter of a spawned task, a task mostly needs a small stack.
+    private Interpreter(PrintStream out, Globals globals, Tasks tasks, int stackSize) {
+        this.out = out;
+        this.globals = globals;
+        this.environment = globals;
+        this.tasks = tasks;
+        this.stack = new Object[stackSize];
+    }
 
     void interpret(List<Stmt> statements) {
+        Probe probe = Probe.start(new Events.Execute());
         try {
             for (Stmt statement : statements) {
                 execute(statement);
             }
         } catch (RuntimeError error) {
+            // Arguments of the call that failed may still be on the stack.
+            top = 0;
+            stopped = true;
+            Trace.runtimeError(error);
             Lox.runtimeError(error);
+        } finally {
+            probe.executed(statements);
         }
     }
+
+    // Waits for every task the program spawned, once the program is done.
+    // Not after each call to interpret(): a program run a statement at a time
+    // may have a task waiting on a statement that hasn't run yet. Nothing
+    // will feed the tasks of a program that stopped with an error, so those
+    // aren't waited for.
+    void awaitTasks() {
+        if (!stopped) {
+            tasks.await();
+        }
+    }
+
+    // The REPL keeps going after a runtime error, and its later inputs may
+    // still feed the tasks, so it clears the error after each input.
+    void resume() {
+        stopped = false;
+    }
+
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
         return expr.value;
@@ -23,12 +101,20 @@ class Interpreter implements Expr.Visitor<Object>,
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
         Object right = evaluate(expr.right);
+        // TypeInference proved the operand is a number, skip the check.
+        if (expr.number) {
+            return -(double)right;
+        }
+        return unary(expr.operator, right);
+    }
 
-        switch(expr.operator.type) {
+    // Operator semantics are shared with SwitchInterpreter.
+    static Object unary(Token operator, Object right) {
+        switch(operator.type) {
             case BANG:
                 return !isTruthy(right);
             case MINUS:
-                checkNumberOperand(expr.operator, right);
+                checkNumberOperand(operator, right);
                 return -(double)right;
 
         }
@@ -38,24 +124,53 @@ class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return environment.get(expr.name);
+        if (expr.global) {
+            Globals.Cell cell = expr.cell;
+            // Parsed programs may be shared between interpreters, so only trust
+            // the cached cell if it belongs to our own globals.
+            if (cell == null || cell.owner != globals) {
+                // First execution of this site, cache the cell.
+                cell = globals.cell(expr.name);
+                expr.cell = cell;
+            }
+            return cell.value;
+        }
+        return local(expr.access, expr.slot, expr.name);
+    }
+
+    private Object local(int access, int slot, Token name) {
+        switch (access) {
+            case Resolver.FRAME: return stack[base + slot];
+            case Resolver.BOX: return ((LoxFunction.Box)stack[base + slot]).value;
+            case Resolver.UPVALUE: return upvalues[slot].value;
+        }
+        return environment.getAt(slot, name);
+    }
+
+    // Stores the value of a declaration, boxed if it is captured.
+    private void define(int access, int slot, String name, Object value) {
+        switch (access) {
+            case Resolver.FRAME: stack[base + slot] = value; break;
+            case Resolver.BOX: stack[base + slot] = new LoxFunction.Box(value); break;
+            default: environment.define(name, value);
+        }
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
+    private static void checkNumberOperand(Token operator, Object operand) {
         if (operand instanceof Double) {
             return;
         }
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right) {
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
         if(left instanceof Double && right instanceof Double) {
             return;
         }
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private void checkDivideByZero(Token operator, Object left,  Object right) {
+    private static void checkDivideByZero(Token operator, Object left,  Object right) {
         if (left instanceof Double && right instanceof Double && (Double)right != 0) {
             return;
         }
@@ -66,7 +181,7 @@ class Interpreter implements Expr.Visitor<Object>,
     public Object visitGroupingExpr(Expr.Grouping expr) {
         return evaluate(expr.expression);
     }
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) {
             return false;
         }
@@ -76,7 +191,7 @@ class Interpreter implements Expr.Visitor<Object>,
         return true;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) {
             return true;
         }
@@ -86,7 +201,7 @@ class Interpreter implements Expr.Visitor<Object>,
         return a.equals(b);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) {
             return "nil";
         }
@@ -100,11 +215,14 @@ class Interpreter implements Expr.Visitor<Object>,
         return object.toString();
     }
 
+    // The Trace calls compile to nothing while no hooks are installed.
     private Object evaluate(Expr expr) {
+        Trace.expression(expr);
         return expr.accept(this);
     }
 
     private void execute(Stmt stmt) {
+        Trace.statement(stmt);
         stmt.accept(this);
     }
 
@@ -112,30 +230,583 @@ class Interpreter implements Expr.Visitor<Object>,
         Environment previous = this.environment;
         try {
             this.environment = environment;
+            executeStatements(statements);
+        } finally {
+            this.environment = previous;
+        }
+    }
 
-            for (Stmt statement : statements) {
-                execute(statement);
+    private void executeStatements(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            execute(statement);
+            if (returning) {
+                return;
+            }
+        }
+    }
+
+    // Same as executeBlock, for the body of a block compiled by Tier.
+    void executeCompiled(Tier.Code[] body, Environment environment) {
+        Environment previous = this.environment;
+        try {
+            this.environment = environment;
+
+            for (Tier.Code statement : body) {
+                statement.run(this);
+                if (returning) {
+                    return;
+                }
             }
         } finally {
             this.environment = previous;
         }
     }
 
+    Environment environment() {
+        return environment;
+    }
+
+    void print(Object value) {
+        out.println(stringify(value));
+    }
+
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
+        // Hot blocks run compiled instead.
+        if (Tier.threshold > 0 && Tier.run(this, stmt)) {
+            return null;
+        }
+        // Variables of blocks in functions are in the frame, no Environment needed.
+        if (stmt.framed) {
+            executeStatements(stmt.statements);
+            return null;
+        }
         executeBlock(stmt.statements, new Environment(environment));
         return null;
     }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        if (test(stmt.condition)) {
+            execute(stmt.thenBranch);
+        } else if (stmt.elseBranch != null) {
+            execute(stmt.elseBranch);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        // Nothing in the body can keep its scope, one Environment does for
+        // every iteration.
+        Environment scope = null;
+        if (stmt.body instanceof Stmt.Block && ((Stmt.Block)stmt.body).reusable) {
+            scope = new Environment(environment);
+        }
+
+        while (test(stmt.condition)) {
+            if (scope != null) {
+                executeBody((Stmt.Block)stmt.body, scope);
+            } else {
+                execute(stmt.body);
+            }
+            if (returning) {
+                return null;
+            }
+            if (stmt.increment != null) {
+                evaluate(stmt.increment);
+            }
+        }
+        return null;
+    }
+
+    // Runs a reusable loop body in the given scope, emptied first.
+    private void executeBody(Stmt.Block body, Environment scope) {
+        Trace.statement(body);
+        scope.clear();
+        Environment previous = environment;
+        try {
+            environment = scope;
+            // Compiled reusable bodies run in the current environment too.
+            if (Tier.threshold > 0 && Tier.run(this, body)) {
+                return;
+            }
+            executeStatements(body.statements);
+        } finally {
+            environment = previous;
+        }
+    }
+
+    // Truthiness of a condition. and/or are tested directly, so they never
+    // produce a value just to have it tested.
+    private boolean test(Expr condition) {
+        if (condition instanceof Expr.Logical) {
+            Trace.expression(condition);
+            Expr.Logical logical = (Expr.Logical)condition;
+            if (logical.operator.type == TokenType.OR) {
+                return test(logical.left) || test(logical.right);
+            }
+            return test(logical.left) && test(logical.right);
+        }
+        return isTruthy(evaluate(condition));
+    }
+
+    @Override
+    public Object visitLogicalExpr(Expr.Logical expr) {
+        Object left = evaluate(expr.left);
+
+        if (expr.operator.type == TokenType.OR) {
+            if (isTruthy(left)) {
+                return left;
+            }
+        } else if (!isTruthy(left)) {
+            return left;
+        }
+        return evaluate(expr.right);
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        declareFunction(stmt);
+        return null;
+    }
+
+    // Creates the function, capturing the boxes it needs from the current
+    // frame and upvalues, and stores it in its variable.
+    void declareFunction(Stmt.Function stmt) {
+        LoxFunction.Box box = null;
+        if (stmt.access == Resolver.BOX) {
+            // Boxed first, so a function that calls itself can capture the box.
+            box = new LoxFunction.Box(null);
+            stack[base + stmt.slot] = box;
+        }
+
+        LoxFunction function = new LoxFunction(stmt, environment, capture(stmt.captures), receiver, false);
+
+        switch (stmt.access) {
+            case Resolver.FRAME: stack[base + stmt.slot] = function; break;
+            case Resolver.BOX: box.value = function; break;
+            default: environment.define(stmt.name.lexeme, function);
+        }
+    }
+
+    private LoxFunction.Box[] capture(int[] captures) {
+        LoxFunction.Box[] captured = new LoxFunction.Box[captures.length];
+        for (int i = 0; i < captured.length; i++) {
+            int from = captures[i];
+            captured[i] = from >= 0 ? (LoxFunction.Box)stack[base + from] : upvalues[-from - 1];
+        }
+        return captured;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        LoxClass superclass = null;
+        if (stmt.superclass != null) {
+            Object value = evaluate(stmt.superclass);
+            if (!(value instanceof LoxClass)) {
+                throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
+            }
+            superclass = (LoxClass)value;
+        }
+
+        LoxFunction.Box box = null;
+        if (stmt.access == Resolver.BOX) {
+            // Methods may capture the class's own variable.
+            box = new LoxFunction.Box(null);
+            stack[base + stmt.slot] = box;
+        }
+
+        Environment previous = environment;
+        try {
+            if (superclass != null) {
+                if (stmt.superAccess == Resolver.ENVIRONMENT) {
+                    environment = new Environment(environment);
+                }
+                define(stmt.superAccess, stmt.superSlot, "super", superclass);
+            }
+
+            Map<String, LoxFunction> methods = new HashMap<>();
+            for (Stmt.Function method : stmt.methods) {
+                String name = method.name.lexeme;
+                methods.put(name, new LoxFunction(method, environment, capture(method.captures),
+                        null, name.equals("init")));
+            }
+            LoxClass klass = new LoxClass(stmt.name.lexeme, superclass, methods);
+
+            environment = previous;
+            switch (stmt.access) {
+                case Resolver.FRAME: stack[base + stmt.slot] = klass; break;
+                case Resolver.BOX: box.value = klass; break;
+                default: environment.define(stmt.name.lexeme, klass);
+            }
+        } finally {
+            environment = previous;
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitErrorExpr(Expr.Error expr) {
+        throw new RuntimeError(expr.token, "Can't run code with syntax errors.");
+    }
+
+    @Override
+    public Object visitGetExpr(Expr.Get expr) {
+        return getProperty(evaluate(expr.object), expr.name, expr.cache);
+    }
+
+    Object getProperty(Object object, Token name, PropertyCache cache) {
+        if (!(object instanceof LoxInstance)) {
+            throw new RuntimeError(name, "Only instances have properties.");
+        }
+        LoxInstance instance = (LoxInstance)object;
+        PropertyCache.Entry entry = cache.get(instance, name.lexeme);
+        if (entry == null) {
+            throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+        }
+        return entry.slot >= 0 ? instance.fields[entry.slot] : entry.method.bind(instance);
+    }
+
+    @Override
+    public Object visitMapLiteralExpr(Expr.MapLiteral expr) {
+        LoxMap map = new LoxMap(expr.keys.size());
+        for (int i = 0; i < expr.keys.size(); i++) {
+            Object key = evaluate(expr.keys.get(i));
+            map.put(key, evaluate(expr.values.get(i)));
+        }
+        return map;
+    }
+
+    @Override
+    public Object visitSetExpr(Expr.Set expr) {
+        Object object = evaluate(expr.object);
+        if (!(object instanceof LoxInstance)) {
+            throw new RuntimeError(expr.name, "Only instances have fields.");
+        }
+        Object value = evaluate(expr.value);
+        return setProperty((LoxInstance)object, expr.name, expr.cache, value);
+    }
+
+    Object setProperty(LoxInstance instance, Token name, PropertyCache cache, Object value) {
+        PropertyCache.Entry entry = cache.set(instance, name.lexeme);
+        if (entry.next != instance.shape) {
+            instance.grow(entry.next);
+        }
+        instance.fields[entry.slot] = value;
+        return value;
+    }
+
+    @Override
+    public Object visitIndexExpr(Expr.Index expr) {
+        Object object = indexed(evaluate(expr.object), expr.bracket);
+        return index(object, evaluate(expr.index), expr.bracket);
+    }
+
+    @Override
+    public Object visitSetIndexExpr(Expr.SetIndex expr) {
+        Object object = indexed(evaluate(expr.object), expr.bracket);
+        Object index = evaluate(expr.index);
+        Object value = evaluate(expr.value);
+        store(object, index, value, expr.bracket);
+        return value;
+    }
+
+    // Checks what an index expression applies to, before its index is evaluated.
+    static Object indexed(Object object, Token bracket) {
+        if (!(object instanceof LoxArray) && !(object instanceof LoxMap)) {
+            throw new RuntimeError(bracket, "Only arrays and maps can be indexed.");
+        }
+        return object;
+    }
+
+    // Element of an array or value of a map key, the object came from indexed().
+    static Object index(Object object, Object index, Token bracket) {
+        if (object instanceof LoxMap) {
+            return ((LoxMap)object).get(index);
+        }
+        return ((LoxArray)object).get(index, bracket);
+    }
+
+    static void store(Object object, Object index, Object value, Token bracket) {
+        if (object instanceof LoxMap) {
+            ((LoxMap)object).put(index, value);
+        } else {
+            ((LoxArray)object).set(index, value, bracket);
+        }
+    }
+
+    @Override
+    public Object visitSuperExpr(Expr.Super expr) {
+        LoxClass superclass = (LoxClass)local(expr.access, expr.slot, expr.keyword);
+        LoxFunction method = superclass.findMethod(expr.method.lexeme);
+        if (method == null) {
+            throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
+        }
+        return method.bind((LoxInstance)receiver);
+    }
+
+    @Override
+    public Object visitThisExpr(Expr.This expr) {
+        return receiver;
+    }
+
+    @Override
+    public Void visitSpawnStmt(Stmt.Spawn stmt) {
+        spawn(stmt);
+        return null;
+    }
+
+    // Starts the body on a virtual thread with an interpreter of its own.
+    //
+    // The rule for variables: a task starts with a copy of every variable it
+    // can see, globals included, taken when it is spawned. Assignments and
+    // new globals in the task change only its copies, and the task doesn't
+    // see later assignments by its spawner. The values themselves aren't
+    // copied, instances and channels are shared. Pass values between tasks
+    // over channels; an instance changed by two tasks at once may lose
+    // fields.
+    void spawn(Stmt.Spawn stmt) {
+        Globals copy = globals.copy();
+        Interpreter task = new Interpreter(out, copy, tasks, Math.max(64, stmt.frameSize * 2));
+        task.environment = environment.copy(copy);
+        task.receiver = receiver;
+        LoxFunction.Box[] captured = capture(stmt.captures);
+        for (int i = 0; i < captured.length; i++) {
+            captured[i] = new LoxFunction.Box(captured[i].value);
+        }
+        task.upvalues = captured;
+        task.top = stmt.frameSize;
+
+        // Errors in the task count as errors of the program.
+        ErrorReporter errors = Lox.reporter();
+        tasks.started();
+        Thread.ofVirtual().start(() -> {
+            Lox.setReporter(errors);
+            try {
+                task.execute(stmt.body);
+            } catch (RuntimeError error) {
+                Trace.runtimeError(error);
+                Lox.runtimeError(error);
+            } catch (StackOverflowError error) {
+                Lox.runtimeError(new RuntimeError(stmt.keyword, "Stack overflow."));
+            } finally {
+                Lox.clearReporter();
+                tasks.finished();
+            }
+        });
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        returnWith(stmt.value != null ? evaluate(stmt.value) : null);
+        return null;
+    }
+
+    // No exception, the statement loops see the flag and stop.
+    void returnWith(Object value) {
+        returnValue = value;
+        returning = true;
+    }
+
+    @Override
+    public Object visitCallExpr(Expr.Call expr) {
+        // A method call doesn't need the method bound to the instance first.
+        if (expr.callee instanceof Expr.Get) {
+            return invoke((Expr.Get)expr.callee, expr);
+        }
+        Object callee = evaluate(expr.callee);
+
+        // Arguments go straight onto the stack, where the callee's frame begins.
+        int arguments = top;
+        for (Expr argument : expr.arguments) {
+            push(evaluate(argument));
+        }
+        return call(callee, expr.paren, arguments);
+    }
+
+    private Object invoke(Expr.Get get, Expr.Call expr) {
+        Trace.expression(get);
+        Object object = evaluate(get.object);
+        PropertyCache.Entry entry = method(object, get.name, get.cache);
+        Object field = entry.method == null ? ((LoxInstance)object).fields[entry.slot] : null;
+
+        int arguments = top;
+        for (Expr argument : expr.arguments) {
+            push(evaluate(argument));
+        }
+        if (entry.method == null) {
+            return call(field, expr.paren, arguments);
+        }
+        return invoke(entry.method, (LoxInstance)object, expr.paren, arguments);
+    }
+
+    // Where the property called by a method call is, a field holding
+    // something to call or a method.
+    PropertyCache.Entry method(Object object, Token name, PropertyCache cache) {
+        if (!(object instanceof LoxInstance)) {
+            throw new RuntimeError(name, "Only instances have properties.");
+        }
+        PropertyCache.Entry entry = cache.get((LoxInstance)object, name.lexeme);
+        if (entry == null) {
+            throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+        }
+        return entry;
+    }
+
+    // Calls the method with the instance as receiver, pops the arguments.
+    Object invoke(LoxFunction method, LoxInstance instance, Token paren, int arguments) {
+        try {
+            int count = top - arguments;
+            if (count != method.arity()) {
+                throw new RuntimeError(paren, "Expected " + method.arity()
+                        + " arguments but got " + count + ".");
+            }
+            return callFunction(method, instance, arguments);
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(paren, "Stack overflow.");
+        } finally {
+            top = arguments;
+        }
+    }
+
+    void push(Object value) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = value;
+    }
+
+    // Calls callee with the arguments pushed since the given stack index, and
+    // pops them again.
+    Object call(Object callee, Token paren, int arguments) {
+        try {
+            return call(callee, paren, arguments, top - arguments);
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(paren, "Stack overflow.");
+        } finally {
+            top = arguments;
+        }
+    }
+
+    private Object call(Object callee, Token paren, int arguments, int count) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+        LoxCallable function = (LoxCallable)callee;
+        if (count != function.arity()) {
+            throw new RuntimeError(paren, "Expected " + function.arity()
+                    + " arguments but got " + count + ".");
+        }
+        return function.call(this, paren, arguments);
+    }
+
+    // Argument index of a call whose arguments start at the given stack index.
+    Object argument(int arguments, int index) {
+        return stack[arguments + index];
+    }
+
+    // Runs the function with its frame starting at the arguments.
+    Object callFunction(LoxFunction function, Object self, int arguments) {
+        Stmt.Function declaration = function.declaration;
+        int previousBase = base;
+        int previousTop = top;
+        LoxFunction.Box[] previousUpvalues = upvalues;
+        Object previousReceiver = receiver;
+        Environment previousEnvironment = environment;
+        try {
+            receiver = self;
+            base = arguments;
+            top = arguments + declaration.frameSize;
+            if (top > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(top, stack.length * 2));
+            }
+            upvalues = function.upvalues;
+            environment = function.closure;
+
+            boolean[] boxed = declaration.boxedParams;
+            for (int i = 0; i < boxed.length; i++) {
+                if (boxed[i]) {
+                    stack[base + i] = new LoxFunction.Box(stack[base + i]);
+                }
+            }
+
+            execute(declaration.body);
+            Object value = returnValue;
+            returning = false;
+            returnValue = null;
+            // init() always gives back the instance, even called again later.
+            return function.isInitializer ? self : value;
+        } finally {
+            base = previousBase;
+            top = previousTop;
+            upvalues = previousUpvalues;
+            receiver = previousReceiver;
+            environment = previousEnvironment;
+        }
+    }
+    @Override
+    public Void visitErrorStmt(Stmt.Error stmt) {
+        throw new RuntimeError(stmt.token, "Can't run code with syntax errors.");
+    }
+
     @Override
     public Void visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
         return null;
     }
 
+    // Runs a module in the global scope, the first time this interpreter
+    // imports it. Importing one that is still running is a cycle.
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        String name = (String)stmt.path.literal;
+        Path path = directory.resolve(name).toAbsolutePath().normalize();
+        Boolean imported = imports.get(path);
+        if (imported != null) {
+            if (!imported) {
+                throw new RuntimeError(stmt.path, "Circular import of '" + name + "'.");
+            }
+            return null;
+        }
+
+        Modules.Module module;
+        try {
+            module = Modules.load(path);
+        } catch (IOException e) {
+            throw new RuntimeError(stmt.path, "Could not read module '" + name + "'.");
+        }
+        Lox.reporter().replay(module.errors, module.hadError);
+        if (module.hadError) {
+            throw new RuntimeError(stmt.path, "Module '" + name + "' has errors.");
+        }
+
+        imports.put(path, false);
+        Path previous = directory;
+        directory = path.getParent();
+        try {
+            for (Stmt statement : module.statements) {
+                execute(statement);
+            }
+        } finally {
+            directory = previous;
+        }
+        imports.put(path, true);
+        return null;
+    }
+
+    // The file about to run, imports in it resolve against its directory and
+    // importing it again is a cycle.
+    void setScript(Path path) {
+        Path script = path.toAbsolutePath().normalize();
+        directory = script.getParent();
+        imports.put(script, false);
+    }
+
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        print(value);
         return null;
     }
 
@@ -146,7 +817,7 @@ class Interpreter implements Expr.Visitor<Object>,
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
+        define(stmt.access, stmt.slot, stmt.name.lexeme, value);
         return null;
     }
 
@@ -154,7 +825,21 @@ class Interpreter implements Expr.Visitor<Object>,
     public Object visitAssignExpr(Expr.Assign expr)  {
         Object value = evaluate(expr.value);
 
-        environment.assign(expr.name, value);
+        if (expr.global) {
+            Globals.Cell cell = expr.cell;
+            if (cell == null || cell.owner != globals) {
+                cell = globals.cell(expr.name);
+                expr.cell = cell;
+            }
+            cell.value = value;
+            return value;
+        }
+        switch (expr.access) {
+            case Resolver.FRAME: stack[base + expr.slot] = value; break;
+            case Resolver.BOX: ((LoxFunction.Box)stack[base + expr.slot]).value = value; break;
+            case Resolver.UPVALUE: upvalues[expr.slot].value = value; break;
+            default: environment.assignAt(expr.slot, expr.name, value);
+        }
         return value;
     }
 
@@ -162,26 +847,59 @@ class Interpreter implements Expr.Visitor<Object>,
     public Object visitBinaryExpr(Expr.Binary expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
+        // Check free paths for operand types proven by TypeInference.
+        if (expr.numbers) {
+            return numbers(expr.operator, (double)left, (double)right);
+        }
+        if (expr.strings) {
+            return (String)left + (String)right;
+        }
+        return binary(expr.operator, left, right);
+    }
+
+    // Same results as binary() for two numbers, without the type checks.
+    static Object numbers(Token operator, double left, double right) {
+        switch(operator.type) {
+            case GREATER: return left > right;
+            case GREATER_EQUAL: return left >= right;
+            case LESS: return left < right;
+            case LESS_EQUAL: return left <= right;
+            // Double.equals semantics, like isEqual()
+            case BANG_EQUAL: return Double.doubleToLongBits(left) != Double.doubleToLongBits(right);
+            case EQUAL_EQUAL: return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+            case MINUS: return left - right;
+            case PLUS: return left + right;
+            case SLASH:
+                if (right == 0) {
+                    throw new RuntimeError(operator, "Cannot divide by zero");
+                }
+                return left / right;
+            case STAR: return left * right;
+        }
+        // Unreachable
+        return null;
+    }
 
-        switch(expr.operator.type) {
+    static Object binary(Token operator, Object left, Object right) {
+        switch(operator.type) {
             case GREATER:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double)left > (double)right;
             case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double)left >= (double)right;
             case LESS:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double)left < (double)right;
             case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double)left <= (double)right;
             case BANG_EQUAL:
                 return !isEqual(left, right);
             case EQUAL_EQUAL:
                 return isEqual(left, right);
             case MINUS:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double)left - (double)right;
             case PLUS:
                 if (left instanceof Double && right instanceof Double) {
@@ -197,13 +915,13 @@ class Interpreter implements Expr.Visitor<Object>,
                     return (String.valueOf(left) + (String)right);
                 }
 
-                throw new RuntimeError(expr.operator, "Operands must be numbers or strings");
+                throw new RuntimeError(operator, "Operands must be numbers or strings");
             case SLASH:
-                checkNumberOperands(expr.operator, left, right);
-                checkDivideByZero(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
+                checkDivideByZero(operator, left, right);
                 return (double)left / (double)right;
             case STAR:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double)left * (double)right;
         }
         // Unreachable
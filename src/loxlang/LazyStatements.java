@@ -0,0 +1,84 @@
+package loxlang;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+// Body of a block in lazy parsing mode. The parser only records the token range
+// between the braces, the statements are parsed the first time they are needed,
+// normally when the interpreter first executes the block.
+//
+// The parser already parsed the body once to report its syntax errors, see
+// Parser.lazyBlock(), so a script with one never runs, as without --lazy.
+// Should parsing it here fail anyway, execution stops with a runtime error
+// on the block's opening brace.
+class LazyStatements extends AbstractList<Stmt> {
+    private List<Token> tokens;
+    private final int start;
+    private final int end;
+    private final Token brace;
+    // Names declared by each enclosing block, set when the resolver passes the
+    // unparsed body so it can be resolved once it is parsed.
+    private List<Set<String>> enclosing;
+    private volatile List<Stmt> statements;
+
+    LazyStatements(List<Token> tokens, int start, int end, Token brace) {
+        this.tokens = tokens;
+        this.start = start;
+        this.end = end;
+        this.brace = brace;
+    }
+
+    boolean isParsed() {
+        return statements != null;
+    }
+
+    synchronized void resolveLater(List<Set<String>> enclosing) {
+        this.enclosing = enclosing;
+    }
+
+    List<Stmt> statements() {
+        List<Stmt> result = statements;
+        if (result != null) {
+            return result;
+        }
+        return parse();
+    }
+
+    // Parsed programs can be shared between threads, so only one of them parses.
+    private synchronized List<Stmt> parse() {
+        if (statements != null) {
+            return statements;
+        }
+
+        Parser parser = new Parser(tokens, start, end, true);
+        List<Stmt> parsed = parser.parse();
+        if (parser.hadError()) {
+            throw new RuntimeError(brace, "Syntax error in block.");
+        }
+
+        if (enclosing != null) {
+            new Resolver().resolveBlock(enclosing, parsed);
+        }
+        // The token list is not needed anymore once the body is parsed.
+        tokens = null;
+        statements = parsed;
+        return parsed;
+    }
+
+    @Override
+    public Stmt get(int index) {
+        return statements().get(index);
+    }
+
+    @Override
+    public int size() {
+        return statements().size();
+    }
+
+    @Override
+    public Iterator<Stmt> iterator() {
+        return statements().iterator();
+    }
+}
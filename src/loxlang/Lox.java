@@ -1,11 +1,17 @@
 package loxlang;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 
@@ -13,13 +19,81 @@ import java.util.List;
 
 public class Lox {
     private static final Interpreter interpreter = new Interpreter();
-    // Has an error occured? We don't want to run code with errors!!
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    // Error state of the current thread. Batch workers install their own so
+    // every script gets isolated error flags and a captured error stream.
+    private static final ThreadLocal<ErrorReporter> reporter =
+            ThreadLocal.withInitial(() -> new ErrorReporter(System.err));
+    // Parse block bodies only when they first run
+    private static boolean lazy = false;
+    // Scan large sources on several threads
+    private static boolean parallelScan = false;
+    // Share identical constant subtrees between statements
+    private static boolean share = false;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchRunner.main(args);
+        } else if (args.length == 3 && args[0].equals("--snapshot")) {
+            // Run the prelude, then save the globals it left behind.
+            runFile(args[1]);
+            try {
+                Snapshot.save(interpreter.globals, Paths.get(args[2]));
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                System.exit(70);
+            }
+        } else if ((args.length == 2 || args.length == 3) && args[0].equals("--restore")) {
+            try {
+                Snapshot.load(interpreter.globals, Paths.get(args[1]));
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                System.exit(65);
+            }
+            if (args.length == 3) {
+                runFile(args[2]);
+            } else {
+                runPrompt();
+            }
+        } else if (args.length == 2 && args[0].equals("--flat")) {
+            runFlatFile(args[1]);
+        } else if (args.length == 2 && args[0].equals("--mmap")) {
+            runMappedFile(args[1]);
+        } else if (args.length == 2 && args[0].equals("--stream")) {
+            runStreamFile(args[1]);
+        } else if (args.length == 2 && args[0].equals("--pipeline")) {
+            runPipelinedFile(args[1]);
+        } else if (args.length == 2 && args[0].equals("--parallel-scan")) {
+            parallelScan = true;
+            runFile(args[1]);
+        } else if (args.length == 2 && args[0].equals("--lazy")) {
+            lazy = true;
+            runFile(args[1]);
+        } else if (args.length == 2 && args[0].equals("--trace")) {
+            Trace.install(Trace.printer(System.err));
+            runFile(args[1]);
+        } else if (args.length == 2 && args[0].equals("--share")) {
+            share = true;
+            runFile(args[1]);
+        } else if (args.length == 2 && args[0].equals("--check")) {
+            checkFile(args[1]);
+        } else if (args.length == 2 && args[0].equals("--ast-heap")) {
+            AstHeap.report(new String(Files.readAllBytes(Paths.get(args[1])), Charset.defaultCharset()));
+        } else if (args.length > 1) {
             System.out.println("Usage: jlox [script]");
+            System.out.println("       jlox --batch [--jobs n] <directory | manifest>");
+            System.out.println("       jlox --snapshot <prelude> <snapshot>");
+            System.out.println("       jlox --restore <snapshot> [script]");
+            System.out.println("       jlox --flat <script>");
+            System.out.println("       jlox --lazy <script>");
+            System.out.println("       jlox --mmap <script>");
+            System.out.println("       jlox --stream <script>");
+            System.out.println("       jlox --pipeline <script>");
+            System.out.println("       jlox --parallel-scan <script>");
+            System.out.println("       jlox --share <script>");
+            System.out.println("       jlox --trace <script>");
+            System.out.println("       jlox --ast-heap <script>");
+            System.out.println("       jlox --check <script>");
+            System.out.println("Needs JDK 21. Run java with --add-modules jdk.incubator.vector for vectorized scanning.");
             System.exit(64);
         } else if (args.length == 1) {
             runFile(args[0]);
@@ -33,18 +107,144 @@ public class Lox {
         // Reads all bytes from file, file is closed when all bytes have been read
         // or and error is thrown.
         byte[] bytes = Files.readAllBytes(Paths.get(path));
+        interpreter.setScript(Paths.get(path));
         //
-        run(new String(bytes, Charset.defaultCharset()));
+        run(new String(bytes, Charset.defaultCharset()), path);
+        interpreter.awaitTasks();
 
         // Indicate an error in the exit code.
-        if (hadError) {
+        if (reporter().hadError) {
             System.exit(65);
         }
-        if (hadRuntimeError) {
+        if (reporter().hadRuntimeError) {
             System.exit(70);
         }
     }
 
+    // Like runFile, but the program is kept in its flat encoding and each
+    // top-level statement is only turned back into a tree while it runs.
+    private static void runFlatFile(String path) throws IOException {
+        String source = new String(Files.readAllBytes(Paths.get(path)), Charset.defaultCharset());
+        FlatAst ast = AstHeap.parseFlat(source);
+        if (reporter().hadError) {
+            System.exit(65);
+        }
+
+        Resolver resolver = new Resolver();
+        TypeInference types = new TypeInference();
+        interpreter.setScript(Paths.get(path));
+        for (int i = 0; i < ast.rootCount() && !reporter().hadRuntimeError; i++) {
+            List<Stmt> statement = List.of(ast.stmt(ast.root(i)));
+            resolver.resolve(statement);
+            if (reporter().hadError) {
+                System.exit(65);
+            }
+            types.infer(statement);
+            interpreter.interpret(statement);
+        }
+        interpreter.awaitTasks();
+        if (reporter().hadRuntimeError) {
+            System.exit(70);
+        }
+    }
+
+    // Like runFile, but scans the memory mapped UTF-8 bytes of the file instead
+    // of reading and decoding it into a String first. The parser takes the
+    // tokens as they are scanned, so neither the source nor all of its tokens
+    // are ever on the heap, only the tree.
+    private static void runMappedFile(String path) throws IOException {
+        Probe probe = Probe.start(new Events.Script());
+        long bytes = Files.size(Paths.get(path));
+        interpreter.setScript(Paths.get(path));
+        try {
+            run(ByteScanner.map(Paths.get(path)));
+            interpreter.awaitTasks();
+        } finally {
+            probe.finished(path, (int) Math.min(bytes, Integer.MAX_VALUE), reporter());
+        }
+
+        if (reporter().hadError) {
+            System.exit(65);
+        }
+        if (reporter().hadRuntimeError) {
+            System.exit(70);
+        }
+    }
+
+    // Scans, parses and runs one top-level declaration at a time, so neither
+    // all of the tokens nor the whole tree exist at once and the script
+    // starts running right away.
+    private static void runStreamFile(String path) throws IOException {
+        interpreter.setScript(Paths.get(path));
+        try (Reader reader = Files.newBufferedReader(Paths.get(path), Charset.defaultCharset())) {
+            runStream(reader, interpreter);
+        }
+
+        if (reporter().hadError) {
+            System.exit(65);
+        }
+        if (reporter().hadRuntimeError) {
+            System.exit(70);
+        }
+    }
+
+    // Like runStreamFile, with the scanner, the parser and the interpreter each
+    // on a thread of their own.
+    private static void runPipelinedFile(String path) throws IOException {
+        interpreter.setScript(Paths.get(path));
+        try (Reader reader = Files.newBufferedReader(Paths.get(path), Charset.defaultCharset())) {
+            new Pipeline(reader, interpreter).run();
+        }
+
+        if (reporter().hadError) {
+            System.exit(65);
+        }
+        if (reporter().hadRuntimeError) {
+            System.exit(70);
+        }
+    }
+
+    // Each declaration is dropped once it ran, unless something it declared
+    // holds on to it. What came before a syntax error has already run, the
+    // rest is only parsed to report its syntax errors too.
+    static void runStream(Reader reader, Interpreter interpreter) {
+        Parser parser = new Parser(new StreamScanner(reader));
+        Resolver resolver = new Resolver();
+        TypeInference types = new TypeInference();
+        while (parser.hasNext() && !reporter().hadRuntimeError) {
+            List<Stmt> statement = Collections.singletonList(parser.next());
+            if (!reporter().hadError) {
+                resolver.resolve(statement);
+            }
+            if (!reporter().hadError) {
+                types.infer(statement);
+                interpreter.interpret(statement);
+            }
+        }
+        // Only now, a task may be waiting on any of the statements.
+        interpreter.awaitTasks();
+    }
+
+    // Reports every syntax error in the file without running it. The parser
+    // recovers after each one instead of unwinding with a ParseError.
+    private static void checkFile(String path) throws IOException {
+        String source = new String(Files.readAllBytes(Paths.get(path)), Charset.defaultCharset());
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        ScanSkipper skipper = ScanSkipper.vectorized();
+        List<Token> tokens = new Scanner(source, skipper, skipper != null ? source.toCharArray() : null,
+                0, source.length(), 1, diagnostics).scanTokens();
+        new Parser(tokens, diagnostics).parse();
+
+        // Scan errors came first, the sort is stable.
+        diagnostics.sort(Comparator.comparingInt(diagnostic -> diagnostic.line));
+        for (Diagnostic diagnostic : diagnostics) {
+            System.err.println(diagnostic);
+        }
+        if (!diagnostics.isEmpty()) {
+            System.exit(65);
+        }
+    }
+
     private static void runPrompt() throws IOException {
         // Used to bridge from byte streams to character streams
         InputStreamReader input = new InputStreamReader(System.in);
@@ -57,54 +257,120 @@ public class Lox {
             String line = reader.readLine();
 
             if (line == null) break;
-            run(line);
-            // Reset flag in order to not kill the entire session.
-            hadError = false;
+            run(line, "<repl>");
+            // Reset flags in order to not kill the entire session.
+            reporter().hadError = false;
+            interpreter.resume();
+        }
+        interpreter.awaitTasks();
+    }
+
+    private static void run(String source, String script) {
+        Probe probe = Probe.start(new Events.Script());
+        try {
+            run(source);
+        } finally {
+            probe.finished(script, source.length(), reporter());
         }
     }
 
     private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+        List<Token> tokens = parallelScan
+                ? new ParallelScanner(source).scanTokens()
+                : new Scanner(source).scanTokens();
 
         // Print tokens
         //for (Token token :tokens) {
         //    System.out.println(token);
         //}
 
-        Parser parser = new Parser(tokens);
+        run(tokens);
+    }
+
+    private static void run(List<Token> tokens) {
+        Parser parser = new Parser(tokens, lazy, share ? new ExprInterner() : null);
         List<Stmt> statements = parser.parse();
 
         //Stop if there was a syntax error
-        if (hadError) {
+        if (reporter().hadError) {
             return;
         }
+
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        // Resolution errors, like a return outside any function
+        if (reporter().hadError) {
+            return;
+        }
+        new TypeInference().infer(statements);
+
         interpreter.interpret(statements);
     }
 
+    // Scan errors are reported as each batch is scanned, syntax errors are
+    // held back until the end, so they come after all of the scan errors as
+    // they do when the whole file is scanned first.
+    private static void run(ByteScanner scanner) {
+        ErrorReporter errors = reporter();
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        List<Stmt> statements = new ArrayList<>();
+        setReporter(new ErrorReporter(new PrintStream(captured, true)));
+        try {
+            Parser parser = new Parser(new StreamScanner(() -> {
+                ReaderScanner.Batch batch = scanner.nextBatch();
+                for (Diagnostic diagnostic : batch.diagnostics) {
+                    errors.error(diagnostic.line, diagnostic.message);
+                }
+                return new ReaderScanner.Batch(batch.tokens, List.of());
+            }));
+            while (parser.hasNext()) {
+                statements.add(parser.next());
+            }
+            errors.replay(captured.toString(), reporter().hadError);
+        } finally {
+            setReporter(errors);
+        }
+
+        //Stop if there was a syntax error
+        if (errors.hadError) {
+            return;
+        }
+
+        Resolver resolver = new Resolver();
+        resolver.resolve(statements);
+        if (errors.hadError) {
+            return;
+        }
+        new TypeInference().infer(statements);
+
+        interpreter.interpret(statements);
+    }
+
+    static ErrorReporter reporter() {
+        return reporter.get();
+    }
+
+    // Installs the error state used by the current thread.
+    static void setReporter(ErrorReporter errors) {
+        reporter.set(errors);
+    }
+
+    static void clearReporter() {
+        reporter.remove();
+    }
+
     // Report error at a given line
     static void error(int line, String message) {
-        report(line, "", message);
+        reporter().error(line, message);
     }
 
     static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
-        hadRuntimeError = true;
-    }
-    // Prints the line number and error message of said error
-    private static void report(int line, String where, String message) {
-        System.err.println(
-                "[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+        reporter().runtimeError(error);
     }
 
     // Reports error at a given token
     static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, "at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
-        }
+        reporter().error(token, message);
     }
 
 }
@@ -0,0 +1,151 @@
+package loxlang;
+
+import java.util.Arrays;
+
+// Fixed length array of numbers. Elements live in a double[], eight bytes
+// each, where a list of Lox values would hold a reference to a boxed Double
+// per element. Storing a number unboxes it in place, nothing is allocated.
+//
+// The bulk operations are plain loops over the double[] that never touch a
+// Lox value, so the JIT can unroll and vectorize them.
+class LoxArray {
+    final double[] values;
+
+    LoxArray(int length) {
+        this.values = new double[length];
+    }
+
+    private LoxArray(double[] values) {
+        this.values = values;
+    }
+
+    double get(Object index, Token bracket) {
+        return values[index(index, bracket)];
+    }
+
+    void set(Object index, Object value, Token bracket) {
+        int i = index(index, bracket);
+        if (!(value instanceof Double)) {
+            throw new RuntimeError(bracket, "Array elements must be numbers.");
+        }
+        values[i] = (double)value;
+    }
+
+    void set(Object index, double value, Token bracket) {
+        values[index(index, bracket)] = value;
+    }
+
+    private int index(Object index, Token bracket) {
+        if (!(index instanceof Double)) {
+            throw new RuntimeError(bracket, "Array index must be a number.");
+        }
+        double value = (double)index;
+        int i = (int)value;
+        if (i != value) {
+            throw new RuntimeError(bracket, "Array index must be a whole number.");
+        }
+        if (i < 0 || i >= values.length) {
+            throw new RuntimeError(bracket, "Array index " + i + " out of bounds for length "
+                    + values.length + ".");
+        }
+        return i;
+    }
+
+    double sum() {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    // New array with the operator applied to every element and the operand.
+    // Picking the loop once keeps the operator switch out of it.
+    LoxArray map(String operator, double operand, Token paren) {
+        double[] result = new double[values.length];
+        switch (operator) {
+            case "+":
+                for (int i = 0; i < values.length; i++) {
+                    result[i] = values[i] + operand;
+                }
+                break;
+            case "-":
+                for (int i = 0; i < values.length; i++) {
+                    result[i] = values[i] - operand;
+                }
+                break;
+            case "*":
+                for (int i = 0; i < values.length; i++) {
+                    result[i] = values[i] * operand;
+                }
+                break;
+            case "/":
+                if (operand == 0) {
+                    throw new RuntimeError(paren, "Cannot divide by zero");
+                }
+                for (int i = 0; i < values.length; i++) {
+                    result[i] = values[i] / operand;
+                }
+                break;
+            default:
+                throw new RuntimeError(paren, "Operator must be one of \"+\", \"-\", \"*\" or \"/\".");
+        }
+        return new LoxArray(result);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(Interpreter.stringify(values[i]));
+        }
+        return builder.append("]").toString();
+    }
+
+    // array(length), length(array), fill(array, value), sum(array) and
+    // map(array, operator, operand).
+    static void define(Globals globals) {
+        globals.define("array", new NativeFunction("array", 1, (interpreter, paren, arguments) -> {
+            Object length = interpreter.argument(arguments, 0);
+            if (!(length instanceof Double) || (double)length < 0
+                    || (double)length != Math.floor((double)length) || (double)length > Integer.MAX_VALUE - 8) {
+                throw new RuntimeError(paren, "Array length must be a whole number that isn't negative.");
+            }
+            return new LoxArray((int)(double)length);
+        }));
+        globals.define("length", new NativeFunction("length", 1, (interpreter, paren, arguments) ->
+                (double)array(interpreter.argument(arguments, 0), paren).values.length));
+        globals.define("fill", new NativeFunction("fill", 2, (interpreter, paren, arguments) -> {
+            LoxArray array = array(interpreter.argument(arguments, 0), paren);
+            Arrays.fill(array.values, number(interpreter.argument(arguments, 1), paren));
+            return array;
+        }));
+        globals.define("sum", new NativeFunction("sum", 1, (interpreter, paren, arguments) ->
+                array(interpreter.argument(arguments, 0), paren).sum()));
+        globals.define("map", new NativeFunction("map", 3, (interpreter, paren, arguments) -> {
+            LoxArray array = array(interpreter.argument(arguments, 0), paren);
+            Object operator = interpreter.argument(arguments, 1);
+            if (!(operator instanceof String)) {
+                throw new RuntimeError(paren, "Operator must be one of \"+\", \"-\", \"*\" or \"/\".");
+            }
+            return array.map((String)operator, number(interpreter.argument(arguments, 2), paren), paren);
+        }));
+    }
+
+    private static LoxArray array(Object value, Token token) {
+        if (!(value instanceof LoxArray)) {
+            throw new RuntimeError(token, "Expected an array.");
+        }
+        return (LoxArray)value;
+    }
+
+    private static double number(Object value, Token paren) {
+        if (!(value instanceof Double)) {
+            throw new RuntimeError(paren, "Expected a number.");
+        }
+        return (double)value;
+    }
+}
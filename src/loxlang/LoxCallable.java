@@ -0,0 +1,10 @@
+package loxlang;
+
+// Anything a Lox call expression can call.
+interface LoxCallable {
+    int arity();
+
+    // The arguments are on the interpreter's value stack, see Interpreter.argument().
+    // paren is the call's closing parenthesis, for errors.
+    Object call(Interpreter interpreter, Token paren, int arguments);
+}
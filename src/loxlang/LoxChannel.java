@@ -0,0 +1,69 @@
+package loxlang;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Bounded channel for passing values between spawned tasks. send() blocks
+// while the channel is full and receive() while it is empty, which parks a
+// virtual thread instead of holding on to its carrier. A value sent on a
+// channel is safe to use by the task that receives it.
+class LoxChannel {
+    // The queue can't hold null
+    private static final Object NIL = new Object();
+
+    private final BlockingQueue<Object> queue;
+
+    LoxChannel(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    void send(Object value, Token paren) {
+        try {
+            queue.put(value == null ? NIL : value);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError(paren, "Interrupted while sending.");
+        }
+    }
+
+    Object receive(Token paren) {
+        try {
+            Object value = queue.take();
+            return value == NIL ? null : value;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError(paren, "Interrupted while receiving.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+
+    // channel(capacity), send(channel, value) and receive(channel).
+    static void define(Globals globals) {
+        globals.define("channel", new NativeFunction("channel", 1, (interpreter, paren, arguments) -> {
+            Object capacity = interpreter.argument(arguments, 0);
+            if (!(capacity instanceof Double) || (double)capacity < 1
+                    || (double)capacity != Math.floor((double)capacity)) {
+                throw new RuntimeError(paren, "Channel capacity must be a positive whole number.");
+            }
+            return new LoxChannel((int)Math.min((double)capacity, Integer.MAX_VALUE));
+        }));
+        globals.define("send", new NativeFunction("send", 2, (interpreter, paren, arguments) -> {
+            Object value = interpreter.argument(arguments, 1);
+            channel(interpreter.argument(arguments, 0), paren).send(value, paren);
+            return value;
+        }));
+        globals.define("receive", new NativeFunction("receive", 1, (interpreter, paren, arguments) ->
+                channel(interpreter.argument(arguments, 0), paren).receive(paren)));
+    }
+
+    private static LoxChannel channel(Object value, Token paren) {
+        if (!(value instanceof LoxChannel)) {
+            throw new RuntimeError(paren, "Expected a channel.");
+        }
+        return (LoxChannel)value;
+    }
+}
@@ -0,0 +1,49 @@
+package loxlang;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class LoxClass implements LoxCallable {
+    final String name;
+    final LoxClass superclass;
+    // Own methods over the inherited ones, so a lookup is one map access.
+    private final Map<String, LoxFunction> methods;
+    // Shape of a new instance, see Shape
+    final Shape root = new Shape();
+
+    LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+        this.name = name;
+        this.superclass = superclass;
+        Map<String, LoxFunction> all = new HashMap<>();
+        if (superclass != null) {
+            all.putAll(superclass.methods);
+        }
+        all.putAll(methods);
+        this.methods = all;
+    }
+
+    LoxFunction findMethod(String name) {
+        return methods.get(name);
+    }
+
+    @Override
+    public int arity() {
+        LoxFunction initializer = findMethod("init");
+        return initializer == null ? 0 : initializer.arity();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Token paren, int arguments) {
+        LoxInstance instance = new LoxInstance(this);
+        LoxFunction initializer = findMethod("init");
+        if (initializer != null) {
+            interpreter.callFunction(initializer, instance, arguments);
+        }
+        return instance;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,50 @@
+package loxlang;
+
+// A function declaration together with what it closed over: the Environment
+// it was declared in and the boxes of the frame variables it captured. A
+// method bound to an instance has it as receiver, and a function declared in
+// a method keeps the method's receiver for its 'this'.
+class LoxFunction implements LoxCallable {
+    // Frame variable shared between a frame and the functions that capture it
+    static final class Box {
+        Object value;
+
+        Box(Object value) {
+            this.value = value;
+        }
+    }
+
+    final Stmt.Function declaration;
+    final Environment closure;
+    final Box[] upvalues;
+    final Object receiver;
+    final boolean isInitializer;
+
+    LoxFunction(Stmt.Function declaration, Environment closure, Box[] upvalues,
+                Object receiver, boolean isInitializer) {
+        this.declaration = declaration;
+        this.closure = closure;
+        this.upvalues = upvalues;
+        this.receiver = receiver;
+        this.isInitializer = isInitializer;
+    }
+
+    LoxFunction bind(LoxInstance instance) {
+        return new LoxFunction(declaration, closure, upvalues, instance, isInitializer);
+    }
+
+    @Override
+    public int arity() {
+        return declaration.params.size();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Token paren, int arguments) {
+        return interpreter.callFunction(this, receiver, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + declaration.name.lexeme + ">";
+    }
+}
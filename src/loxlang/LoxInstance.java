@@ -0,0 +1,31 @@
+package loxlang;
+
+import java.util.Arrays;
+
+// Fields are in slots of an array, laid out by the instance's Shape.
+class LoxInstance {
+    final LoxClass klass;
+    Shape shape;
+    Object[] fields;
+
+    private static final Object[] NO_FIELDS = new Object[0];
+
+    LoxInstance(LoxClass klass) {
+        this.klass = klass;
+        this.shape = klass.root;
+        this.fields = NO_FIELDS;
+    }
+
+    // Moves the instance to a shape with more fields.
+    void grow(Shape next) {
+        if (next.size > fields.length) {
+            fields = Arrays.copyOf(fields, Math.max(next.size, fields.length * 2));
+        }
+        shape = next;
+    }
+
+    @Override
+    public String toString() {
+        return klass.name + " instance";
+    }
+}
@@ -0,0 +1,231 @@
+package loxlang;
+
+import java.util.function.BiConsumer;
+
+// Hash map from Lox values to Lox values, with open addressing and linear
+// probing over a flat array instead of a node per entry. A key and its value
+// sit next to each other, so a lookup that finds its key has the value in
+// the same cache line. Keys compare like
+// Interpreter.isEqual(): numbers by value the way Double.equals() does it,
+// nil only to nil, everything else with equals().
+//
+// Number keys aren't kept as Doubles. The key slot holds a marker and the
+// number sits unboxed in a parallel double[], which only exists once the map
+// has a number key. Probing for a number compares bits, probing for a string
+// uses its cached hash and equals().
+//
+// Removing an entry shifts the later entries of its probe run back, so there
+// are no tombstones and lookups never slow down after removals.
+class LoxMap {
+    // Key slot markers: the key is in numbers[], and the key is nil
+    private static final Object NUMBER = new Object();
+    private static final Object NIL = new Object();
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Key of slot i at 2 * i and its value at 2 * i + 1, a null key is an
+    // empty slot
+    private Object[] entries;
+    private double[] numbers;
+    private int mask;
+    private int size = 0;
+
+    LoxMap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    // Sized for the given number of entries.
+    LoxMap(int expected) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity * 3 / 4 < expected) {
+            capacity *= 2;
+        }
+        entries = new Object[2 * capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // nil if the key isn't there.
+    Object get(Object key) {
+        int slot = slot(key);
+        return entries[2 * slot] == null ? null : entries[2 * slot + 1];
+    }
+
+    boolean contains(Object key) {
+        return entries[2 * slot(key)] != null;
+    }
+
+    void put(Object key, Object value) {
+        int slot = slot(key);
+        if (entries[2 * slot] == null) {
+            // Keep at least a quarter of the slots empty so probe runs stay short.
+            if (size + 1 > (mask + 1) * 3 / 4) {
+                grow();
+                slot = slot(key);
+            }
+            if (key instanceof Double) {
+                if (numbers == null) {
+                    numbers = new double[mask + 1];
+                }
+                entries[2 * slot] = NUMBER;
+                numbers[slot] = (double)key;
+            } else {
+                entries[2 * slot] = key == null ? NIL : key;
+            }
+            size++;
+        }
+        entries[2 * slot + 1] = value;
+    }
+
+    boolean remove(Object key) {
+        int hole = slot(key);
+        if (entries[2 * hole] == null) {
+            return false;
+        }
+        // An entry further along the run moves into the hole unless its
+        // home slot lies between the hole and where it sits now.
+        for (int slot = (hole + 1) & mask; entries[2 * slot] != null; slot = (slot + 1) & mask) {
+            int home = hash(slot) & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                entries[2 * hole] = entries[2 * slot];
+                entries[2 * hole + 1] = entries[2 * slot + 1];
+                if (numbers != null) {
+                    numbers[hole] = numbers[slot];
+                }
+                hole = slot;
+            }
+        }
+        entries[2 * hole] = null;
+        entries[2 * hole + 1] = null;
+        size--;
+        return true;
+    }
+
+    // Slot holding the key, or the empty slot that ends its probe run.
+    private int slot(Object key) {
+        if (key instanceof Double) {
+            long bits = Double.doubleToLongBits((double)key);
+            int slot = mix(bits) & mask;
+            for (Object stored; (stored = entries[2 * slot]) != null; slot = (slot + 1) & mask) {
+                if (stored == NUMBER && Double.doubleToLongBits(numbers[slot]) == bits) {
+                    return slot;
+                }
+            }
+            return slot;
+        }
+
+        Object wanted = key == null ? NIL : key;
+        int slot = mix(wanted.hashCode()) & mask;
+        for (Object stored; (stored = entries[2 * slot]) != null; slot = (slot + 1) & mask) {
+            if (stored == wanted || (stored != NUMBER && stored.equals(wanted))) {
+                return slot;
+            }
+        }
+        return slot;
+    }
+
+    // Hash of the key in an occupied slot, the same one slot() probes with.
+    private int hash(int slot) {
+        if (entries[2 * slot] == NUMBER) {
+            return mix(Double.doubleToLongBits(numbers[slot]));
+        }
+        return mix(entries[2 * slot].hashCode());
+    }
+
+    // Linear probing needs the low bits of a hash to be well spread, which
+    // neither whole numbers nor String.hashCode() give. These are the
+    // MurmurHash3 finalizers.
+    private static int mix(long bits) {
+        bits ^= bits >>> 33;
+        bits *= 0xff51afd7ed558ccdL;
+        bits ^= bits >>> 33;
+        bits *= 0xc4ceb9fe1a85ec53L;
+        bits ^= bits >>> 33;
+        return (int)bits;
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private void grow() {
+        Object[] oldEntries = entries;
+        double[] oldNumbers = numbers;
+
+        entries = new Object[2 * oldEntries.length];
+        numbers = oldNumbers == null ? null : new double[oldEntries.length];
+        mask = oldEntries.length - 1;
+        for (int i = 0; i < oldEntries.length / 2; i++) {
+            Object key = oldEntries[2 * i];
+            if (key == null) {
+                continue;
+            }
+            int slot;
+            if (key == NUMBER) {
+                slot = mix(Double.doubleToLongBits(oldNumbers[i])) & mask;
+            } else {
+                slot = mix(key.hashCode()) & mask;
+            }
+            // Every key is new to the table, the first empty slot is its own.
+            while (entries[2 * slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            entries[2 * slot] = key;
+            entries[2 * slot + 1] = oldEntries[2 * i + 1];
+            if (key == NUMBER) {
+                numbers[slot] = oldNumbers[i];
+            }
+        }
+    }
+
+    // Calls action with every key and its value, in no particular order.
+    void forEach(BiConsumer<Object, Object> action) {
+        for (int slot = 0; slot <= mask; slot++) {
+            Object key = entries[2 * slot];
+            if (key != null) {
+                action.accept(key == NUMBER ? numbers[slot] : key == NIL ? null : key, entries[2 * slot + 1]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int slot = 0; slot <= mask; slot++) {
+            Object key = entries[2 * slot];
+            if (key == null) {
+                continue;
+            }
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            key = key == NUMBER ? numbers[slot] : key == NIL ? null : key;
+            builder.append(Interpreter.stringify(key)).append(": ").append(Interpreter.stringify(entries[2 * slot + 1]));
+        }
+        return builder.append("}").toString();
+    }
+
+    // size(map), has(map, key) and remove(map, key).
+    static void define(Globals globals) {
+        globals.define("size", new NativeFunction("size", 1, (interpreter, paren, arguments) ->
+                (double)map(interpreter.argument(arguments, 0), paren).size()));
+        globals.define("has", new NativeFunction("has", 2, (interpreter, paren, arguments) ->
+                map(interpreter.argument(arguments, 0), paren).contains(interpreter.argument(arguments, 1))));
+        globals.define("remove", new NativeFunction("remove", 2, (interpreter, paren, arguments) ->
+                map(interpreter.argument(arguments, 0), paren).remove(interpreter.argument(arguments, 1))));
+    }
+
+    private static LoxMap map(Object value, Token paren) {
+        if (!(value instanceof LoxMap)) {
+            throw new RuntimeError(paren, "Expected a map.");
+        }
+        return (LoxMap)value;
+    }
+}
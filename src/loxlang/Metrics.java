@@ -0,0 +1,133 @@
+package loxlang;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and histograms for the scan, parse and execute phases, for a host
+// process to poll. Off by default; while off nothing is recorded.
+public final class Metrics {
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    // Histogram with power of two buckets: bucket i counts values in [2^(i-1), 2^i).
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        void record(long value) {
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(0, value)));
+            count.increment();
+            sum.add(value);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long sum() {
+            return sum.sum();
+        }
+
+        // Upper bound of the bucket holding the given percentile (0-100).
+        public long percentile(double percentile) {
+            long total = count();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100.0 * total);
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += buckets.get(i);
+                if (seen >= Math.max(1, rank)) {
+                    return i == 0 ? 0 : (i == 63 ? Long.MAX_VALUE : 1L << i);
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        void reset() {
+            for (int i = 0; i < 64; i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            sum.reset();
+        }
+    }
+
+    private static volatile boolean enabled = false;
+
+    public static final Counter scripts = new Counter();
+    public static final Counter sourceBytes = new Counter();
+    public static final Counter tokens = new Counter();
+    public static final Counter nodes = new Counter();
+    public static final Counter statements = new Counter();
+    public static final Counter allocatedBytes = new Counter();
+    public static final Counter syntaxErrors = new Counter();
+    public static final Counter runtimeErrors = new Counter();
+
+    public static final Histogram scanNanos = new Histogram();
+    public static final Histogram parseNanos = new Histogram();
+    public static final Histogram executeNanos = new Histogram();
+    public static final Histogram scriptNanos = new Histogram();
+
+    private Metrics() {}
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void reset() {
+        for (Counter counter : new Counter[] {scripts, sourceBytes, tokens, nodes,
+                statements, allocatedBytes, syntaxErrors, runtimeErrors}) {
+            counter.value.reset();
+        }
+        for (Histogram histogram : new Histogram[] {scanNanos, parseNanos, executeNanos, scriptNanos}) {
+            histogram.reset();
+        }
+    }
+
+    // Current values by name. Histograms appear as name.count, name.sum, name.p50 and name.p99.
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("scripts", scripts.get());
+        values.put("sourceBytes", sourceBytes.get());
+        values.put("tokens", tokens.get());
+        values.put("nodes", nodes.get());
+        values.put("statements", statements.get());
+        values.put("allocatedBytes", allocatedBytes.get());
+        values.put("syntaxErrors", syntaxErrors.get());
+        values.put("runtimeErrors", runtimeErrors.get());
+        putHistogram(values, "scanNanos", scanNanos);
+        putHistogram(values, "parseNanos", parseNanos);
+        putHistogram(values, "executeNanos", executeNanos);
+        putHistogram(values, "scriptNanos", scriptNanos);
+        return values;
+    }
+
+    private static void putHistogram(Map<String, Long> values, String name, Histogram histogram) {
+        values.put(name + ".count", histogram.count());
+        values.put(name + ".sum", histogram.sum());
+        values.put(name + ".p50", histogram.percentile(50));
+        values.put(name + ".p99", histogram.percentile(99));
+    }
+}
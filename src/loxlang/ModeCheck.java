@@ -0,0 +1,265 @@
+package loxlang;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Runs small scripts through every way jlox can run a script and checks that
+// each way prints and exits the same as the default one. Every run is a
+// separate JVM with a timeout, so a mode that hangs is caught too. Before
+// that, ByteScanner is checked against Scanner on non-ASCII sources.
+//
+// Run with: java [--add-modules jdk.incubator.vector] loxlang.ModeCheck
+// Exits with 1 if any mode differed.
+class ModeCheck {
+    private static final long TIMEOUT_SECONDS = 20;
+    // Modes taking a script path, "" is the default one
+    private static final String[] MODES = {
+            "", "--flat", "--lazy", "--mmap", "--parallel-scan", "--share", "--trace", "--stream", "--pipeline"};
+    // Stands for the REPL, fed the script a line at a time on stdin
+    private static final String REPL = "<repl>";
+
+    private static final class Case {
+        final String name;
+        final String source;
+        // Tasks printing concurrently may interleave their lines either way
+        final boolean ordered;
+        // The REPL scans each line on its own, so a block comment there can't
+        // swallow the start of the next line as it does in a file.
+        final boolean repl;
+        // What the default mode must print, null to only compare the modes
+        final String expected;
+
+        Case(String name, String source, boolean ordered, boolean repl) {
+            this(name, source, ordered, repl, null);
+        }
+
+        Case(String name, String source, boolean ordered, boolean repl, String expected) {
+            this.name = name;
+            this.source = source;
+            this.ordered = ordered;
+            this.repl = repl;
+            this.expected = expected;
+        }
+    }
+
+    private static final Case[] CASES = {
+            // A task waiting on a channel fed by a later top-level statement.
+            new Case("spawn before send",
+                    "var ch = channel(1);\n"
+                    + "spawn { print receive(ch); }\n"
+                    + "send(ch, 42);\n"
+                    + "print \"done\";\n", false, true),
+            // Block comments before multi-byte chars, --mmap scans bytes.
+            new Case("non-ASCII",
+                    "/* a comment */ print \"h\u00e9llo \u4e16\u754c \ud83d\ude00\";\n"
+                    + "/* runs to the end of the line\n\u00fcprint 1;\n"
+                    + "// \u00fc\n"
+                    + "print \"\u00fc\" + \"\u00e9\";\n", true, false),
+            // A closure keeps the block variable it saw, whatever its own
+            // block declares later.
+            new Case("block scopes",
+                    "{\n"
+                    + "    var a = \"outer\";\n"
+                    + "    {\n"
+                    + "        fun show() { print a; }\n"
+                    + "        show();\n"
+                    + "        var a = \"inner\";\n"
+                    + "        show();\n"
+                    + "    }\n"
+                    + "    var b = 1;\n"
+                    + "    while (b < 3) {\n"
+                    + "        fun step() { b = b + 1; }\n"
+                    + "        var b = \"loop\";\n"
+                    + "        step();\n"
+                    + "    }\n"
+                    + "    print b;\n"
+                    + "}\n", true, false, "outer\nouter\n3\n"),
+            // --lazy still reports it, though the block never runs.
+            new Case("syntax error in a skipped block",
+                    "if (false) { print 1 }\n"
+                    + "print \"ran\";\n", true, false, ""),
+            new Case("spawn reply",
+                    "var ch = channel(1);\n"
+                    + "var back = channel(1);\n"
+                    + "spawn { send(back, receive(ch) + 1); }\n"
+                    + "send(ch, 41);\n"
+                    + "print receive(back);\n", true, true),
+    };
+
+    // Sources ByteScanner must scan exactly as Scanner does.
+    private static final String[] SCANNED = {
+            "print \"\u00e9\u4e16\ud83d\ude00\";",
+            "/* c */\u00fc = 1;",
+            "/* c\n\u00fc = 1;",
+            "/* c\n\u4e16 = 1;",
+            "/* c\n\ud83d\ude00 = 1;",
+            "/* a /* b */ \u00e9 */ x",
+            "/* c\n",
+            "/* c",
+            "\u00e9 \ud83d\ude00 var x;",
+            "// \u00fc\n\u00fc",
+            "\"\u00fc\n\u00e9",
+    };
+
+    private static final class Result {
+        final String out;
+        final String err;
+        final int exitCode;
+
+        Result(String out, String err, int exitCode) {
+            this.out = out;
+            this.err = err;
+            this.exitCode = exitCode;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> failures = new ArrayList<>();
+        for (String source : SCANNED) {
+            String expected = scan(source, false);
+            String actual = scan(source, true);
+            if (!expected.equals(actual)) {
+                failures.add("ByteScanner on " + source + ":\n" + actual + "instead of\n" + expected);
+            }
+        }
+
+        Path directory = Files.createTempDirectory("lox-modes");
+        for (Case check : CASES) {
+            Path script = directory.resolve("script.lox");
+            Files.writeString(script, check.source);
+            Result expected = run("", script, check.source);
+            if (expected != null && check.expected != null && !expected.out.equals(check.expected)) {
+                failures.add(check.name + ": printed\n" + expected.out + "instead of\n" + check.expected);
+            }
+
+            for (String mode : MODES) {
+                if (mode.isEmpty()) {
+                    continue;
+                }
+                compare(check, mode, expected, run(mode, script, check.source), failures);
+            }
+            if (check.repl) {
+                compare(check, REPL, expected, run(REPL, script, check.source), failures);
+            }
+            Files.delete(script);
+        }
+        Files.delete(directory);
+
+        for (String failure : failures) {
+            System.out.println(failure);
+        }
+        System.out.println(failures.isEmpty() ? "all modes agree" : failures.size() + " failures");
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    private static void compare(Case check, String mode, Result expected, Result actual, List<String> failures) {
+        String where = check.name + " " + mode + ": ";
+        if (actual == null) {
+            failures.add(where + "timed out");
+            return;
+        }
+        if (expected == null) {
+            failures.add(check.name + ": timed out in the default mode");
+            return;
+        }
+        if (!lines(expected.out, check.ordered, false).equals(lines(actual.out, check.ordered, mode.equals(REPL)))) {
+            failures.add(where + "printed\n" + actual.out + "instead of\n" + expected.out);
+        }
+        // The REPL reports errors and keeps going, --trace adds its own lines.
+        if (mode.equals(REPL) || mode.equals("--trace")) {
+            return;
+        }
+        if (!expected.err.equals(actual.err)) {
+            failures.add(where + "reported\n" + actual.err + "instead of\n" + expected.err);
+        }
+        if (expected.exitCode != actual.exitCode) {
+            failures.add(where + "exited with " + actual.exitCode + " instead of " + expected.exitCode);
+        }
+    }
+
+    private static List<String> lines(String output, boolean ordered, boolean prompts) {
+        List<String> lines = new ArrayList<>(Arrays.asList(output.split("\n", -1)));
+        if (prompts) {
+            lines.removeIf(line -> line.equals("> "));
+        }
+        if (!ordered) {
+            lines.sort(null);
+        }
+        return lines;
+    }
+
+    // Tokens and errors of source, offsets left out as they count bytes in ByteScanner.
+    private static String scan(String source, boolean bytes) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        Lox.setReporter(new ErrorReporter(new PrintStream(errors, true)));
+        List<Token> tokens;
+        try {
+            tokens = bytes
+                    ? new ByteScanner(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8))).scanTokens()
+                    : new Scanner(source).scanTokens();
+        } finally {
+            Lox.clearReporter();
+        }
+        StringBuilder scanned = new StringBuilder();
+        for (Token token : tokens) {
+            scanned.append(token.type).append(' ').append(token.lexeme).append(' ')
+                    .append(token.literal).append(' ').append(token.line).append('\n');
+        }
+        return scanned.append(errors.toString(StandardCharsets.UTF_8)).toString();
+    }
+
+    // Runs jlox in a JVM started the way this one was, null if it timed out.
+    private static Result run(String mode, Path script, String source) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Lox.class.getName());
+        if (!mode.equals(REPL)) {
+            if (!mode.isEmpty()) {
+                command.add(mode);
+            }
+            command.add(script.toString());
+        }
+
+        Process process = new ProcessBuilder(command).start();
+        CompletableFuture<String> out = drain(process.getInputStream());
+        CompletableFuture<String> err = drain(process.getErrorStream());
+        try (OutputStream in = process.getOutputStream()) {
+            if (mode.equals(REPL)) {
+                in.write(source.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            return null;
+        }
+        return new Result(out.join(), err.join(), process.exitValue());
+    }
+
+    private static CompletableFuture<String> drain(InputStream stream) {
+        return CompletableFuture.supplyAsync(() -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                stream.transferTo(bytes);
+            } catch (IOException e) {
+                // The process was killed, what came so far is all there is.
+            }
+            return bytes.toString(StandardCharsets.UTF_8);
+        });
+    }
+}
@@ -0,0 +1,121 @@
+package loxlang;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Process-wide cache of imported modules. A module is scanned, parsed,
+// resolved and inferred the first time any interpreter imports it, and every
+// interpreter importing it after that runs the same statements. Nothing in
+// the tree is tied to one interpreter, slots caching a global cell check
+// which globals it belongs to, as for BatchRunner's shared programs.
+//
+// An entry remembers the modification time and size the file had before it
+// was read. Every import checks them against the file, and a module whose file
+// changed is parsed again, by whichever caller sees the change first.
+class Modules {
+    static final class Module {
+        final List<Stmt> statements;
+        // Syntax errors reported while parsing, replayed at every import
+        final String errors;
+        final boolean hadError;
+        private final FileTime modified;
+        private final long size;
+
+        Module(List<Stmt> statements, String errors, boolean hadError, FileTime modified, long size) {
+            this.statements = statements;
+            this.errors = errors;
+            this.hadError = hadError;
+            this.modified = modified;
+            this.size = size;
+        }
+
+        private boolean isCurrent(BasicFileAttributes attributes) {
+            return modified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+        }
+    }
+
+    private static final ConcurrentHashMap<Path, FutureTask<Module>> cache = new ConcurrentHashMap<>();
+    private static final AtomicInteger parses = new AtomicInteger();
+
+    // The parsed module at an absolute, normalized path. Callers asking for a
+    // module that is being parsed wait for that parse.
+    static Module load(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        while (true) {
+            FutureTask<Module> cached = cache.get(path);
+            if (cached != null) {
+                Module module = get(path, cached);
+                if (module.isCurrent(attributes)) {
+                    return module;
+                }
+            }
+
+            FutureTask<Module> task = new FutureTask<>(() -> parse(path));
+            boolean installed = cached == null
+                    ? cache.putIfAbsent(path, task) == null
+                    : cache.replace(path, cached, task);
+            // Someone else got there first, use what they installed.
+            if (installed) {
+                task.run();
+                return get(path, task);
+            }
+        }
+    }
+
+    // How many times a module was parsed, for the benchmark.
+    static int parses() {
+        return parses.get();
+    }
+
+    private static Module get(Path path, FutureTask<Module> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + path + ".");
+        } catch (ExecutionException e) {
+            // Don't keep a failed read around, the next import tries again.
+            cache.remove(path, task);
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static Module parse(Path path) throws IOException {
+        parses.incrementAndGet();
+        // Read before the contents, a change after this gets noticed next time.
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String source = new String(Files.readAllBytes(path), Charset.defaultCharset());
+
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        ErrorReporter errors = new ErrorReporter(new PrintStream(err, true));
+        ErrorReporter previous = Lox.reporter();
+        Lox.setReporter(errors);
+        try {
+            List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+            if (!errors.hadError) {
+                new Resolver().resolve(statements);
+            }
+            if (!errors.hadError) {
+                new TypeInference().infer(statements);
+            }
+            return new Module(statements, err.toString(), errors.hadError,
+                    attributes.lastModifiedTime(), attributes.size());
+        } finally {
+            Lox.setReporter(previous);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package loxlang;
+
+// Function implemented in Java and predefined as a global.
+class NativeFunction implements LoxCallable {
+    interface Body {
+        Object call(Interpreter interpreter, Token paren, int arguments);
+    }
+
+    final String name;
+    private final int arity;
+    private final Body body;
+
+    NativeFunction(String name, int arity, Body body) {
+        this.name = name;
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Token paren, int arguments) {
+        return body.call(interpreter, paren, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
@@ -0,0 +1,172 @@
+package loxlang;
+
+import java.util.List;
+
+// Counts the Expr and Stmt nodes of a syntax tree.
+final class NodeCounter implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+  private static final NodeCounter counter = new NodeCounter();
+
+  static int count(Expr expr) {
+    return expr == null ? 0 : expr.accept(counter);
+  }
+
+  static int count(Stmt stmt) {
+    return stmt == null ? 0 : stmt.accept(counter);
+  }
+
+  static int count(List<?> nodes) {
+    // Unparsed lazy block bodies have no nodes yet, don't force them.
+    if (nodes instanceof LazyStatements && !((LazyStatements)nodes).isParsed()) {
+      return 0;
+    }
+    int count = 0;
+    for (Object node : nodes) {
+      if (node instanceof Expr) {
+        count += count((Expr)node);
+      } else if (node instanceof Stmt) {
+        count += count((Stmt)node);
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public Integer visitAssignExpr(Expr.Assign expr) {
+    return 1 + count(expr.value);
+  }
+
+  @Override
+  public Integer visitBinaryExpr(Expr.Binary expr) {
+    return 1 + count(expr.left) + count(expr.right);
+  }
+
+  @Override
+  public Integer visitCallExpr(Expr.Call expr) {
+    return 1 + count(expr.callee) + count(expr.arguments);
+  }
+
+  @Override
+  public Integer visitErrorExpr(Expr.Error expr) {
+    return 1;
+  }
+
+  @Override
+  public Integer visitGetExpr(Expr.Get expr) {
+    return 1 + count(expr.object);
+  }
+
+  @Override
+  public Integer visitGroupingExpr(Expr.Grouping expr) {
+    return 1 + count(expr.expression);
+  }
+
+  @Override
+  public Integer visitIndexExpr(Expr.Index expr) {
+    return 1 + count(expr.object) + count(expr.index);
+  }
+
+  @Override
+  public Integer visitLiteralExpr(Expr.Literal expr) {
+    return 1;
+  }
+
+  @Override
+  public Integer visitLogicalExpr(Expr.Logical expr) {
+    return 1 + count(expr.left) + count(expr.right);
+  }
+
+  @Override
+  public Integer visitMapLiteralExpr(Expr.MapLiteral expr) {
+    return 1 + count(expr.keys) + count(expr.values);
+  }
+
+  @Override
+  public Integer visitSetExpr(Expr.Set expr) {
+    return 1 + count(expr.object) + count(expr.value);
+  }
+
+  @Override
+  public Integer visitSetIndexExpr(Expr.SetIndex expr) {
+    return 1 + count(expr.object) + count(expr.index) + count(expr.value);
+  }
+
+  @Override
+  public Integer visitSuperExpr(Expr.Super expr) {
+    return 1;
+  }
+
+  @Override
+  public Integer visitThisExpr(Expr.This expr) {
+    return 1;
+  }
+
+  @Override
+  public Integer visitUnaryExpr(Expr.Unary expr) {
+    return 1 + count(expr.right);
+  }
+
+  @Override
+  public Integer visitVariableExpr(Expr.Variable expr) {
+    return 1;
+  }
+
+  @Override
+  public Integer visitBlockStmt(Stmt.Block stmt) {
+    return 1 + count(stmt.statements);
+  }
+
+  @Override
+  public Integer visitClassStmt(Stmt.Class stmt) {
+    return 1 + count((Expr)stmt.superclass) + count(stmt.methods);
+  }
+
+  @Override
+  public Integer visitErrorStmt(Stmt.Error stmt) {
+    return 1 + count(stmt.partial);
+  }
+
+  @Override
+  public Integer visitExpressionStmt(Stmt.Expression stmt) {
+    return 1 + count(stmt.expression);
+  }
+
+  @Override
+  public Integer visitFunctionStmt(Stmt.Function stmt) {
+    return 1 + count((Stmt)stmt.body);
+  }
+
+  @Override
+  public Integer visitIfStmt(Stmt.If stmt) {
+    return 1 + count(stmt.condition) + count(stmt.thenBranch) + count(stmt.elseBranch);
+  }
+
+  @Override
+  public Integer visitImportStmt(Stmt.Import stmt) {
+    return 1;
+  }
+
+  @Override
+  public Integer visitPrintStmt(Stmt.Print stmt) {
+    return 1 + count(stmt.expression);
+  }
+
+  @Override
+  public Integer visitReturnStmt(Stmt.Return stmt) {
+    return 1 + count(stmt.value);
+  }
+
+  @Override
+  public Integer visitSpawnStmt(Stmt.Spawn stmt) {
+    return 1 + count(stmt.body);
+  }
+
+  @Override
+  public Integer visitVarStmt(Stmt.Var stmt) {
+    return 1 + count(stmt.initializer);
+  }
+
+  @Override
+  public Integer visitWhileStmt(Stmt.While stmt) {
+    return 1 + count(stmt.condition) + count(stmt.body) + count(stmt.increment);
+  }
+}
@@ -0,0 +1,154 @@
+package loxlang;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import static loxlang.TokenType.EOF;
+
+// Scans a large source on several threads and produces exactly the tokens and
+// errors Scanner would.
+//
+// The source is split into chunks at line starts. Every chunk is scanned
+// speculatively, as if no token, string or comment were open at its start,
+// with its first line number guessed from the newlines before it. The chunks
+// are then stitched in order: if the scan of the previous chunk stopped
+// exactly at the chunk start, the speculation matches what a sequential scan
+// would have done, apart from a possibly different line number, which is
+// fixed up. Otherwise something ran over the boundary (a multi-line string or
+// comment) and the chunk is scanned again from where the previous one stopped.
+class ParallelScanner {
+    // Below this a chunk isn't worth a task
+    private static final int MIN_CHUNK = 1 << 16;
+
+    private final String source;
+    private final int parallelism;
+    private final Executor executor;
+    private final ScanSkipper skipper = ScanSkipper.vectorized();
+
+    private static final class Chunk {
+        final int from;
+        final int to;
+        // Guessed line number at from
+        int line;
+        List<Token> tokens;
+        List<Diagnostic> diagnostics;
+        // Where and on which line the speculative scan stopped
+        int position;
+        int endLine;
+
+        Chunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    ParallelScanner(String source) {
+        this(source, Runtime.getRuntime().availableProcessors(), ForkJoinPool.commonPool());
+    }
+
+    ParallelScanner(String source, int parallelism, Executor executor) {
+        this.source = source;
+        this.parallelism = parallelism;
+        this.executor = executor;
+    }
+
+    List<Token> scanTokens() {
+        if (parallelism < 2 || source.length() < 2 * MIN_CHUNK) {
+            return new Scanner(source).scanTokens();
+        }
+
+        Probe probe = Probe.start(new Events.Scan());
+        char[] chars = skipper != null ? source.toCharArray() : null;
+        List<Chunk> chunks = split();
+
+        // First pass counts newlines per chunk to guess each chunk's first line.
+        List<CompletableFuture<Integer>> counts = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            counts.add(CompletableFuture.supplyAsync(() -> countNewlines(chunk), executor));
+        }
+        int line = 1;
+        for (int i = 0; i < chunks.size(); i++) {
+            chunks.get(i).line = line;
+            line += counts.get(i).join();
+        }
+
+        List<CompletableFuture<Void>> scans = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            scans.add(CompletableFuture.runAsync(() -> scan(chunk, chars), executor));
+        }
+
+        List<Token> tokens = new ArrayList<>();
+        int position = 0;
+        line = 1;
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            scans.get(i).join();
+
+            if (position > chunk.from) {
+                // Speculation is wrong, rescan what is left of the chunk.
+                if (position >= chunk.to) {
+                    continue;
+                }
+                Chunk rest = new Chunk(position, chunk.to);
+                rest.line = line;
+                scan(rest, chars);
+                chunk = rest;
+            }
+
+            // Lines are off if a comment swallowed a newline before the chunk.
+            int delta = line - chunk.line;
+            for (Diagnostic diagnostic : chunk.diagnostics) {
+                Lox.error(diagnostic.line + delta, diagnostic.message);
+            }
+            if (delta == 0) {
+                tokens.addAll(chunk.tokens);
+            } else {
+                for (Token token : chunk.tokens) {
+                    tokens.add(new Token(token.type, token.lexeme, token.literal,
+                            token.line + delta, token.offset));
+                }
+            }
+            position = chunk.position;
+            line = chunk.endLine + delta;
+        }
+
+        tokens.add(new Token(EOF, "", null, line, position));
+        probe.scanned(source.length(), tokens.size());
+        return tokens;
+    }
+
+    // Chunks of roughly equal size, each starting right after a newline.
+    private List<Chunk> split() {
+        int size = Math.max(MIN_CHUNK, source.length() / (parallelism * 4));
+        List<Chunk> chunks = new ArrayList<>();
+        int from = 0;
+        while (from < source.length()) {
+            int to = source.indexOf('\n', Math.min(from + size, source.length()));
+            to = to < 0 ? source.length() : to + 1;
+            chunks.add(new Chunk(from, to));
+            from = to;
+        }
+        return chunks;
+    }
+
+    private int countNewlines(Chunk chunk) {
+        int count = 0;
+        for (int i = source.indexOf('\n', chunk.from); i >= 0 && i < chunk.to;
+                i = source.indexOf('\n', i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private void scan(Chunk chunk, char[] chars) {
+        chunk.diagnostics = new ArrayList<>();
+        Scanner scanner = new Scanner(source, skipper, chars, chunk.from, chunk.to,
+                chunk.line, chunk.diagnostics);
+        chunk.tokens = scanner.scanChunk();
+        chunk.position = scanner.position();
+        chunk.endLine = scanner.line();
+    }
+}
@@ -8,32 +8,123 @@ class Parser {
     private static class ParseError extends RuntimeException{}
     private final List<Token> tokens;
     private int current = 0;
+    // Index of the token that ends this parse, normally EOF.
+    private final int end;
+    // In lazy mode block bodies are only checked here and parsed for good
+    // the first time they run, see LazyStatements.
+    private final boolean lazy;
+    // Parsing a lazy body only to report its syntax errors
+    private boolean checking = false;
+    // These tokens were already checked, lazy bodies need no checking
+    private boolean checked = false;
+    private boolean hadError = false;
+    // Shares identical constant subtrees when set, see ExprInterner.
+    // Lazy block bodies are parsed later, possibly on other threads, and don't share.
+    private ExprInterner interner;
+    // Function bodies are resolved to frame slots up front, so they and the
+    // blocks inside them are never lazy.
+    private int functionDepth = 0;
+    // Set in recovery mode. Syntax errors go here instead of to Lox.error()
+    // and nothing is thrown, see panic().
+    private final List<Diagnostic> diagnostics;
+    // A syntax error abandoned the current declaration. Nothing is consumed
+    // until declaration() recovers, so the parse unwinds to it the way a
+    // ParseError would.
+    private boolean panicking = false;
+    // Set when the tokens are streamed, see next().
+    private final StreamScanner stream;
 
     Parser(List<Token> tokens) {
+        this(tokens, false);
+    }
+
+    Parser(List<Token> tokens, boolean lazy) {
+        this(tokens, 0, tokens.size() - 1, lazy, null);
+    }
+
+    Parser(List<Token> tokens, boolean lazy, ExprInterner interner) {
+        this(tokens, lazy);
+        this.interner = interner;
+    }
+
+    // Parses only the tokens in [start, end), the body of a lazy block that
+    // was already checked, see lazyBlock().
+    Parser(List<Token> tokens, int start, int end, boolean lazy) {
+        this(tokens, start, end, lazy, null);
+        this.checked = true;
+    }
+
+    // Recovery mode for tools that want every error and whatever could be
+    // parsed around them. A declaration with a syntax error comes back as a
+    // Stmt.Error holding the part that was parsed, with Expr.Error where an
+    // expression was missing. No ParseError is ever thrown and filled in.
+    Parser(List<Token> tokens, List<Diagnostic> diagnostics) {
+        this(tokens, 0, tokens.size() - 1, false, diagnostics);
+    }
+
+    // Parses a stream one top-level declaration at a time, see next(). The
+    // stream has no end index, EOF ends it.
+    Parser(StreamScanner stream) {
+        this(stream, 0, Integer.MAX_VALUE, false, null, stream);
+    }
+
+    private Parser(List<Token> tokens, int start, int end, boolean lazy, List<Diagnostic> diagnostics) {
+        this(tokens, start, end, lazy, diagnostics, null);
+    }
+
+    private Parser(List<Token> tokens, int start, int end, boolean lazy, List<Diagnostic> diagnostics,
+                   StreamScanner stream) {
         this.tokens = tokens;
+        this.current = start;
+        this.end = end;
+        this.lazy = lazy;
+        this.diagnostics = diagnostics;
+        this.stream = stream;
     }
 
     List<Stmt> parse() {
+        Probe probe = Probe.start(new Events.Parse());
+        int start = current;
         List<Stmt> statements = new ArrayList<>();
         while (!isAtEnd()) {
             statements.add(declaration());
         }
 
+        probe.parsed(current - start, statements);
         return statements;
     }
 
+    // Is there another top-level declaration for next()?
+    boolean hasNext() {
+        return !isAtEnd();
+    }
+
+    // Parses the next top-level declaration, null if it had a syntax error.
+    // Nothing looks further back than the last token of the declaration, so
+    // a stream can forget the ones before it.
+    Stmt next() {
+        Stmt stmt = declaration();
+        if (stream != null) {
+            stream.discard(current - 1);
+        }
+        return stmt;
+    }
+
+    // Did parsing report any syntax errors?
+    boolean hadError() {
+        return hadError;
+    }
+
     private Expr expression() {
         return assignment();
     }
 
     private Stmt declaration() {
-        // Look for a variable declaration
-        // If not bubble up the ladder to look for a higher precedence statement.
+        if (diagnostics != null) {
+            return recoveringDeclaration();
+        }
         try {
-            if (match(VAR)) {
-                return varDeclaration();
-            }
-            return statement();
+            return declarationOrStatement();
         }
         // If an error occurs do some recovery stuff and try to get to the next declaration/statement
         catch (ParseError error) {
@@ -42,10 +133,56 @@ class Parser {
         }
     }
 
+    // Same recovery without the exception: the declaration unwinds on its own
+    // once panicking, and is wrapped so nobody mistakes it for a good one.
+    private Stmt recoveringDeclaration() {
+        Token start = peek();
+        Stmt stmt = declarationOrStatement();
+        if (!panicking) {
+            return stmt;
+        }
+        panicking = false;
+        synchronize();
+        return new Stmt.Error(start, stmt);
+    }
+
+    private Stmt declarationOrStatement() {
+        // Look for a variable declaration
+        // If not bubble up the ladder to look for a higher precedence statement.
+        if (match(CLASS)) {
+            return classDeclaration();
+        }
+        if (match(FUN)) {
+            return function("function");
+        }
+        if (match(VAR)) {
+            return varDeclaration();
+        }
+        return statement();
+    }
+
     private Stmt statement() {
+        if (match(FOR)) {
+            return forStatement();
+        }
+        if (match(IF)) {
+            return ifStatement();
+        }
+        if (match(IMPORT)) {
+            return importStatement();
+        }
         if (match(PRINT)) {
             return printStatement();
         }
+        if (match(RETURN)) {
+            return returnStatement();
+        }
+        if (match(SPAWN)) {
+            return spawnStatement();
+        }
+        if (match(WHILE)) {
+            return whileStatement();
+        }
         if(match(LEFT_BRACE)) {
             return new Stmt.Block(block());
         }
@@ -53,12 +190,149 @@ class Parser {
         return expressionStatement();
     }
 
+    // Desugars to a while loop that runs the increment itself, so the body
+    // doesn't get wrapped in a block with it. Only an initializer needs a
+    // block around the loop, it runs once and scopes a var to the loop.
+    private Stmt forStatement() {
+        consume(LEFT_PAREN, "Expect '(' after 'for'.");
+
+        Stmt initializer;
+        if (match(SEMICOLON)) {
+            initializer = null;
+        } else if (match(VAR)) {
+            initializer = varDeclaration();
+        } else {
+            initializer = expressionStatement();
+        }
+
+        Expr condition = null;
+        if (!check(SEMICOLON)) {
+            condition = expression();
+        }
+        consume(SEMICOLON, "Expect ';' after loop condition.");
+
+        Expr increment = null;
+        if (!check(RIGHT_PAREN)) {
+            increment = expression();
+        }
+        consume(RIGHT_PAREN, "Expect ')' after for clauses.");
+        Stmt body = statement();
+
+        if (condition == null) {
+            condition = share(new Expr.Literal(true));
+        }
+        Stmt loop = new Stmt.While(condition, body, increment);
+
+        if (initializer != null) {
+            List<Stmt> statements = new ArrayList<>();
+            statements.add(initializer);
+            statements.add(loop);
+            return new Stmt.Block(statements);
+        }
+        return loop;
+    }
+
+    private Stmt ifStatement() {
+        consume(LEFT_PAREN, "Expect '(' after 'if'.");
+        Expr condition = expression();
+        consume(RIGHT_PAREN, "Expect ')' after if condition.");
+
+        Stmt thenBranch = statement();
+        Stmt elseBranch = null;
+        if (match(ELSE)) {
+            elseBranch = statement();
+        }
+
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    private Stmt whileStatement() {
+        consume(LEFT_PAREN, "Expect '(' after 'while'.");
+        Expr condition = expression();
+        consume(RIGHT_PAREN, "Expect ')' after condition.");
+        Stmt body = statement();
+
+        return new Stmt.While(condition, body, null);
+    }
+
+    private Stmt importStatement() {
+        Token keyword = previous();
+        Token path = consume(STRING, "Expect module path after 'import'.");
+        consume(SEMICOLON, "Expect ';' after module path.");
+        return new Stmt.Import(keyword, path);
+    }
+
     private Stmt printStatement() {
         Expr expr = expression();
         consume(SEMICOLON, "Expect ';' after expression.");
         return new Stmt.Print(expr);
     }
 
+    private Stmt returnStatement() {
+        Token keyword = previous();
+        Expr value = null;
+        if (!check(SEMICOLON)) {
+            value = expression();
+        }
+
+        consume(SEMICOLON, "Expect ';' after return value.");
+        return new Stmt.Return(keyword, value);
+    }
+
+    private Stmt classDeclaration() {
+        Token name = consume(IDENTIFIER, "Expect class name.");
+
+        Expr.Variable superclass = null;
+        if (match(LESS)) {
+            consume(IDENTIFIER, "Expect superclass name.");
+            superclass = new Expr.Variable(previous());
+        }
+
+        consume(LEFT_BRACE, "Expect '{' before class body.");
+
+        List<Stmt.Function> methods = new ArrayList<>();
+        while (!check(RIGHT_BRACE) && !isAtEnd() && !panicking) {
+            methods.add(function("method"));
+        }
+
+        consume(RIGHT_BRACE, "Expect '}' after class body.");
+        return new Stmt.Class(name, superclass, methods);
+    }
+
+    // The body is resolved to frame slots like a function body, so it can't be lazy.
+    private Stmt spawnStatement() {
+        Token keyword = previous();
+        functionDepth++;
+        try {
+            return new Stmt.Spawn(keyword, statement());
+        } finally {
+            functionDepth--;
+        }
+    }
+
+    private Stmt.Function function(String kind) {
+        Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
+        consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
+        List<Token> parameters = new ArrayList<>();
+        if (!check(RIGHT_PAREN)) {
+            do {
+                if (parameters.size() >= 255) {
+                    error(peek(), "Can't have more than 255 parameters.");
+                }
+                parameters.add(consume(IDENTIFIER, "Expect parameter name."));
+            } while (match(COMMA));
+        }
+        consume(RIGHT_PAREN, "Expect ')' after parameters.");
+
+        consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
+        functionDepth++;
+        try {
+            return new Stmt.Function(name, parameters, new Stmt.Block(block()));
+        } finally {
+            functionDepth--;
+        }
+    }
+
     private Stmt varDeclaration() {
         // Consume the identifier token for the variabl
         Token name = consume(IDENTIFIER, "Expect variable name.");
@@ -81,9 +355,12 @@ class Parser {
     }
 
     private List<Stmt> block() {
+        if (lazy && functionDepth == 0 && !checking) {
+            return lazyBlock();
+        }
         List<Stmt> statements = new ArrayList<>();
 
-        while (!check(RIGHT_BRACE) && !isAtEnd()) {
+        while (!check(RIGHT_BRACE) && !isAtEnd() && !panicking) {
             statements.add(declaration());
         }
 
@@ -91,8 +368,39 @@ class Parser {
         return statements;
     }
 
+    // Records the token range of the body to be parsed when it first runs.
+    // The body is parsed once now too, blocks inside it included, and the
+    // tree thrown away, so its syntax errors are reported and recovered from
+    // just as without --lazy. Bodies of a block that was checked that way
+    // only need their closing brace found.
+    private List<Stmt> lazyBlock() {
+        Token brace = previous();
+        int start = current;
+
+        if (checked) {
+            int depth = 1;
+            while (!isAtEnd()) {
+                if (check(LEFT_BRACE)) {
+                    depth++;
+                } else if (check(RIGHT_BRACE) && --depth == 0) {
+                    break;
+                }
+                advance();
+            }
+            consume((RIGHT_BRACE), "expect '}' after block.");
+        } else {
+            checking = true;
+            try {
+                block();
+            } finally {
+                checking = false;
+            }
+        }
+        return new LazyStatements(tokens, start, current - 1, brace);
+    }
+
     private Expr assignment() {
-        Expr expr = equality();
+        Expr expr = or();
 
         if (match(EQUAL)) {
             Token equals = previous();
@@ -101,6 +409,12 @@ class Parser {
             if (expr instanceof Expr.Variable) {
                 Token name = ((Expr.Variable)expr).name;
                 return new Expr.Assign(name, value);
+            } else if (expr instanceof Expr.Get) {
+                Expr.Get get = (Expr.Get)expr;
+                return new Expr.Set(get.object, get.name, value);
+            } else if (expr instanceof Expr.Index) {
+                Expr.Index index = (Expr.Index)expr;
+                return new Expr.SetIndex(index.object, index.bracket, index.index, value);
             }
 
             error(equals, "Invalid assignment target.");
@@ -109,6 +423,30 @@ class Parser {
         return expr;
     }
 
+    private Expr or() {
+        Expr expr = and();
+
+        while (match(OR)) {
+            Token operator = previous();
+            Expr right = and();
+            expr = new Expr.Logical(expr, operator, right);
+        }
+
+        return expr;
+    }
+
+    private Expr and() {
+        Expr expr = equality();
+
+        while (match(AND)) {
+            Token operator = previous();
+            Expr right = equality();
+            expr = new Expr.Logical(expr, operator, right);
+        }
+
+        return expr;
+    }
+
     private Expr equality() {
         // Store the first call to comparison() in a local variable.
         Expr expr = comparison();
@@ -126,7 +464,7 @@ class Parser {
             // And then loop around.
             // Each iteration we store the resulting expression in the same variable
             // Creating a left-associative tree of binary operators.
-            expr = new Expr.Binary(expr, operator, right);
+            expr = share(new Expr.Binary(expr, operator, right));
         }
 
         // Returns the expression, if an equality operator is never found
@@ -140,7 +478,7 @@ class Parser {
         while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
             Token operator = previous();
             Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
+            expr = share(new Expr.Binary(expr, operator, right));
 
         }
 
@@ -153,7 +491,7 @@ class Parser {
         while (match(MINUS, PLUS)) {
             Token operator = previous();
             Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
+            expr = share(new Expr.Binary(expr, operator, right));
         }
         return expr;
     }
@@ -164,7 +502,7 @@ class Parser {
         while (match(SLASH, STAR)) {
             Token operator = previous();
             Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+            expr = share(new Expr.Binary(expr, operator, right));
         }
 
         return expr;
@@ -174,25 +512,72 @@ class Parser {
         if (match(BANG, MINUS)) {
             Token operator = previous();
             Expr right = unary();
-            return new Expr.Unary(operator, right);
+            return share(new Expr.Unary(operator, right));
         }
 
-        return primary();
+        return call();
+    }
+
+    private Expr call() {
+        Expr expr = primary();
+
+        while (true) {
+            if (match(LEFT_PAREN)) {
+                expr = finishCall(expr);
+            } else if (match(DOT)) {
+                Token name = consume(IDENTIFIER, "Expect property name after '.'.");
+                expr = new Expr.Get(expr, name);
+            } else if (match(LEFT_BRACKET)) {
+                Expr index = expression();
+                Token bracket = consume(RIGHT_BRACKET, "Expect ']' after index.");
+                expr = new Expr.Index(expr, bracket, index);
+            } else {
+                break;
+            }
+        }
+
+        return expr;
+    }
+
+    private Expr finishCall(Expr callee) {
+        List<Expr> arguments = new ArrayList<>();
+        if (!check(RIGHT_PAREN)) {
+            do {
+                if (arguments.size() >= 255) {
+                    error(peek(), "Can't have more than 255 arguments.");
+                }
+                arguments.add(expression());
+            } while (match(COMMA));
+        }
+
+        Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
+        return new Expr.Call(callee, paren, arguments);
     }
 
     private Expr primary() {
         if (match(FALSE)) {
-            return new Expr.Literal(false);
+            return share(new Expr.Literal(false));
         }
         if (match(TRUE)) {
-            return new Expr.Literal(true);
+            return share(new Expr.Literal(true));
         }
         if (match(NIL)) {
-            return new Expr.Literal(null);
+            return share(new Expr.Literal(null));
         }
 
         if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
+            return share(new Expr.Literal(previous().literal));
+        }
+
+        if (match(SUPER)) {
+            Token keyword = previous();
+            consume(DOT, "Expect '.' after 'super'.");
+            Token method = consume(IDENTIFIER, "Expect superclass method name.");
+            return new Expr.Super(keyword, method);
+        }
+
+        if (match(THIS)) {
+            return new Expr.This(previous());
         }
 
         if (match(IDENTIFIER)) {
@@ -202,10 +587,36 @@ class Parser {
         if (match(LEFT_PAREN)) {
             Expr expr = expression();
             consume(RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
+            return share(new Expr.Grouping(expr));
         }
 
-        throw error(peek(), "Expect expression.");
+        if (match(LEFT_BRACE)) {
+            return mapLiteral();
+        }
+
+        panic(peek(), "Expect expression.");
+        return new Expr.Error(peek());
+    }
+
+    // { key: value, ... }, a '{' where a statement starts is still a block.
+    private Expr mapLiteral() {
+        Token brace = previous();
+        List<Expr> keys = new ArrayList<>();
+        List<Expr> values = new ArrayList<>();
+        if (!check(RIGHT_BRACE)) {
+            do {
+                keys.add(expression());
+                consume(COLON, "Expect ':' after map key.");
+                values.add(expression());
+            } while (match(COMMA));
+        }
+        consume(RIGHT_BRACE, "Expect '}' after map entries.");
+        return new Expr.MapLiteral(brace, keys, values);
+    }
+
+    // Nothing is shared from a tree that is only parsed to check it.
+    private Expr share(Expr expr) {
+        return interner == null || checking ? expr : interner.intern(expr);
     }
 
     // Checks if the current token has any of the given types.
@@ -226,13 +637,16 @@ class Parser {
         if (check(type)) {
             return advance();
         }
-        throw error(peek(), message);
+        panic(peek(), message);
+        // Only reached while recovering, the current token stands in for the
+        // missing one.
+        return peek();
     }
 
     // Returns true if the current token is of the given type
     // Does not consume the token, only gazes at it creepily from a distance
     private boolean check(TokenType type) {
-        if (isAtEnd()) {
+        if (isAtEnd() || panicking) {
             return false;
         }
 
@@ -250,7 +664,7 @@ class Parser {
 
     // Checks if we have run out of tokens to parse
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return current >= end || peek().type == EOF;
     }
 
     // Returns the current token we have yet to consume.
@@ -264,10 +678,33 @@ class Parser {
     }
 
     private ParseError error(Token token, String message) {
+        hadError = true;
+        if (diagnostics != null) {
+            diagnostics.add(new Diagnostic(token.line, where(token), message));
+            return null;
+        }
         Lox.error(token, message);
         return new ParseError();
     }
 
+    // An error that abandons the current declaration. Throws a ParseError,
+    // unless recovering, where only the first error of the declaration is
+    // kept and the parse goes on without consuming anything.
+    private void panic(Token token, String message) {
+        if (diagnostics == null) {
+            throw error(token, message);
+        }
+        if (!panicking) {
+            error(token, message);
+            panicking = true;
+        }
+    }
+
+    // Same as ErrorReporter.error() puts it.
+    private static String where(Token token) {
+        return token.type == EOF ? "at end" : " at '" + token.lexeme + "'";
+    }
+
     private void synchronize() {
         advance();
 
@@ -282,9 +719,11 @@ class Parser {
                 case VAR:
                 case FOR:
                 case IF:
+                case IMPORT:
                 case WHILE:
                 case PRINT:
                 case RETURN:
+                case SPAWN:
                     return;
             }
 
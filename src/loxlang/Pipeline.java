@@ -0,0 +1,212 @@
+package loxlang;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Runs a script with scanning, parsing and executing on three threads. Each
+// stage hands batches to the next through a bounded queue, so a stage that
+// gets ahead waits instead of filling the heap.
+//
+// The scanner thread reads and scans chunks with a ReaderScanner. The parser
+// thread parses them a top-level declaration at a time, as --stream does,
+// and hands the statements on in batches. The calling thread resolves, infers
+// and runs them.
+//
+// Syntax errors are captured on the parser thread and travel behind the
+// statements before them, so whatever the timing of the threads, the same
+// statements run and the same errors are reported as with --stream. A
+// runtime error stops the other threads.
+class Pipeline {
+    // Batches waiting between two stages
+    private static final int QUEUED = 4;
+    // Statements handed to the interpreter at a time
+    private static final int STATEMENTS = 256;
+
+    // Statements for the interpreter, and in the last batch the syntax errors
+    // reported while parsing.
+    private static final class Batch {
+        final List<Stmt> statements;
+        final String errors;
+        final boolean hadError;
+        final boolean last;
+
+        Batch(List<Stmt> statements, String errors, boolean hadError, boolean last) {
+            this.statements = statements;
+            this.errors = errors;
+            this.hadError = hadError;
+            this.last = last;
+        }
+    }
+
+    // Thrown on the parser thread when it is told to stop, no stack trace.
+    private static final class Cancelled extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Cancelled() {
+            super(null, null, false, false);
+        }
+    }
+
+    // Handed on by a stage that failed, failure says why
+    private static final ReaderScanner.Batch SCAN_FAILED = new ReaderScanner.Batch(List.of(), List.of());
+    private static final Batch PARSE_FAILED = new Batch(List.of(), "", false, true);
+
+    private final Reader reader;
+    private final Interpreter interpreter;
+    private final BlockingQueue<ReaderScanner.Batch> tokens = new ArrayBlockingQueue<>(QUEUED);
+    private final BlockingQueue<Batch> statements = new ArrayBlockingQueue<>(QUEUED);
+    private volatile boolean cancelled = false;
+    private volatile Throwable failure;
+
+    Pipeline(Reader reader, Interpreter interpreter) {
+        this.reader = reader;
+        this.interpreter = interpreter;
+    }
+
+    // Runs the script on the calling thread, errors go to its reporter. An
+    // IOException reading the script is rethrown here.
+    void run() throws IOException {
+        Thread scanner = new Thread(this::scan, "lox-scanner");
+        Thread parser = new Thread(this::parse, "lox-parser");
+        scanner.setDaemon(true);
+        parser.setDaemon(true);
+        scanner.start();
+        parser.start();
+
+        ErrorReporter errors = Lox.reporter();
+        Resolver resolver = new Resolver();
+        TypeInference types = new TypeInference();
+        try {
+            while (!errors.hadRuntimeError) {
+                Batch batch = statements.take();
+                if (batch == PARSE_FAILED) {
+                    rethrow(failure);
+                }
+                for (Stmt stmt : batch.statements) {
+                    if (errors.hadError || errors.hadRuntimeError) {
+                        break;
+                    }
+                    List<Stmt> statement = Collections.singletonList(stmt);
+                    resolver.resolve(statement);
+                    if (!errors.hadError) {
+                        types.infer(statement);
+                        interpreter.interpret(statement);
+                    }
+                }
+                // --stream wouldn't have parsed past a runtime error either.
+                if (!errors.hadRuntimeError) {
+                    errors.replay(batch.errors, batch.hadError);
+                }
+                if (batch.last) {
+                    break;
+                }
+            }
+            // Before the caller looks at the errors, a task may still report one.
+            interpreter.awaitTasks();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Nothing to do if they already finished.
+            cancelled = true;
+            scanner.interrupt();
+            parser.interrupt();
+        }
+    }
+
+    private void scan() {
+        try {
+            ReaderScanner scanner = new ReaderScanner(reader);
+            ReaderScanner.Batch batch;
+            do {
+                batch = scanner.next();
+                tokens.put(batch);
+            } while (!batch.isLast());
+        } catch (InterruptedException e) {
+            // Cancelled
+        } catch (RuntimeException | Error e) {
+            if (!cancelled) {
+                fail(e);
+                try {
+                    tokens.put(SCAN_FAILED);
+                } catch (InterruptedException cancel) {
+                    // Cancelled
+                }
+            }
+        }
+    }
+
+    private void parse() {
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        ErrorReporter errors = new ErrorReporter(new PrintStream(captured, true));
+        Lox.setReporter(errors);
+        try {
+            Parser parser = new Parser(new StreamScanner(this::take));
+            List<Stmt> batch = new ArrayList<>();
+            while (parser.hasNext()) {
+                Stmt stmt = parser.next();
+                // The rest is only parsed for its syntax errors, as with --stream.
+                if (errors.hadError) {
+                    continue;
+                }
+                batch.add(stmt);
+                if (batch.size() == STATEMENTS) {
+                    statements.put(new Batch(batch, "", false, false));
+                    batch = new ArrayList<>();
+                }
+            }
+            statements.put(new Batch(batch, captured.toString(), errors.hadError, true));
+        } catch (InterruptedException | Cancelled e) {
+            // Cancelled
+        } catch (RuntimeException | Error e) {
+            if (!cancelled) {
+                fail(e);
+                try {
+                    statements.put(PARSE_FAILED);
+                } catch (InterruptedException cancel) {
+                    // Cancelled
+                }
+            }
+        } finally {
+            Lox.clearReporter();
+        }
+    }
+
+    // Next batch of tokens for the parser's StreamScanner.
+    private ReaderScanner.Batch take() {
+        try {
+            ReaderScanner.Batch batch = tokens.take();
+            if (batch == SCAN_FAILED) {
+                throw new IllegalStateException("The scanner thread failed.", failure);
+            }
+            return batch;
+        } catch (InterruptedException e) {
+            throw new Cancelled();
+        }
+    }
+
+    // The first failure is the one that counts, a later stage only fails
+    // because of it.
+    private synchronized void fail(Throwable e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    private static void rethrow(Throwable failure) throws IOException {
+        if (failure instanceof UncheckedIOException) {
+            throw ((UncheckedIOException)failure).getCause();
+        }
+        if (failure instanceof Error) {
+            throw (Error)failure;
+        }
+        throw (RuntimeException)failure;
+    }
+}
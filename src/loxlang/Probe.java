@@ -0,0 +1,139 @@
+package loxlang;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import jdk.jfr.Event;
+
+// Measures one phase for its JFR event and for Metrics.
+// When neither is switched on, start() hands out a shared inactive probe and
+// every method returns straight away, so instrumented code pays almost nothing.
+final class Probe {
+    private static final Probe OFF = new Probe(null, false);
+    private static final com.sun.management.ThreadMXBean threads = threadBean();
+
+    private final Event event;
+    private final boolean metrics;
+    private final long startNanos;
+    private final long startAllocated;
+
+    private Probe(Event event, boolean metrics) {
+        this.event = event;
+        this.metrics = metrics;
+        this.startNanos = metrics ? System.nanoTime() : 0;
+        this.startAllocated = event != null ? allocatedBytes() : 0;
+    }
+
+    static Probe start(Event event) {
+        boolean metrics = Metrics.isEnabled();
+        if (!metrics && !event.isEnabled()) {
+            return OFF;
+        }
+        Probe probe = new Probe(event, metrics);
+        event.begin();
+        return probe;
+    }
+
+    void scanned(int bytes, int tokens) {
+        if (this == OFF) {
+            return;
+        }
+        long allocated = allocated();
+        if (metrics) {
+            Metrics.scanNanos.record(elapsed());
+            Metrics.sourceBytes.add(bytes);
+            Metrics.tokens.add(tokens);
+            Metrics.allocatedBytes.add(allocated);
+        }
+        Events.Scan scan = (Events.Scan) event;
+        if (scan.shouldCommit()) {
+            scan.bytes = bytes;
+            scan.tokens = tokens;
+            scan.allocated = allocated;
+            scan.commit();
+        }
+    }
+
+    void parsed(int tokens, List<Stmt> statements) {
+        if (this == OFF) {
+            return;
+        }
+        long allocated = allocated();
+        int nodes = NodeCounter.count(statements);
+        if (metrics) {
+            Metrics.parseNanos.record(elapsed());
+            Metrics.nodes.add(nodes);
+            Metrics.allocatedBytes.add(allocated);
+        }
+        Events.Parse parse = (Events.Parse) event;
+        if (parse.shouldCommit()) {
+            parse.tokens = tokens;
+            parse.nodes = nodes;
+            parse.allocated = allocated;
+            parse.commit();
+        }
+    }
+
+    void executed(List<Stmt> statements) {
+        if (this == OFF) {
+            return;
+        }
+        long allocated = allocated();
+        if (metrics) {
+            Metrics.executeNanos.record(elapsed());
+            Metrics.statements.add(statements.size());
+            Metrics.allocatedBytes.add(allocated);
+        }
+        Events.Execute execute = (Events.Execute) event;
+        if (execute.shouldCommit()) {
+            execute.statements = statements.size();
+            execute.nodes = NodeCounter.count(statements);
+            execute.allocated = allocated;
+            execute.commit();
+        }
+    }
+
+    void finished(String script, int bytes, ErrorReporter errors) {
+        if (this == OFF) {
+            return;
+        }
+        int exitCode = errors.hadError ? 65 : errors.hadRuntimeError ? 70 : 0;
+        if (metrics) {
+            Metrics.scriptNanos.record(elapsed());
+            Metrics.scripts.add(1);
+            if (errors.hadError) {
+                Metrics.syntaxErrors.add(1);
+            } else if (errors.hadRuntimeError) {
+                Metrics.runtimeErrors.add(1);
+            }
+        }
+        Events.Script event = (Events.Script) this.event;
+        if (event.shouldCommit()) {
+            event.script = script;
+            event.bytes = bytes;
+            event.exitCode = exitCode;
+            event.allocated = allocated();
+            event.commit();
+        }
+    }
+
+    private long elapsed() {
+        return System.nanoTime() - startNanos;
+    }
+
+    // Bytes allocated by this thread since the probe started.
+    private long allocated() {
+        return allocatedBytes() - startAllocated;
+    }
+
+    private static long allocatedBytes() {
+        return threads != null ? threads.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            return (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,168 @@
+package loxlang;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Generates random Lox programs that scan, parse and run without errors, for
+// stress testing and benchmarks. Covers the statements and expressions of
+// GenerateAst's node types as the Parser accepts them.
+//
+// Programs stay valid by tracking which variables are in scope and whether they
+// hold a number or a string: arithmetic only sees numbers, division only
+// divides by non-zero literals, and + on strings only sees strings.
+//
+// Run with: java loxlang.ProgramGenerator [--seed n] [--size n] [--depth n]
+//                                         [--mix print=1,var=1,assign=1,block=1]
+class ProgramGenerator {
+    // Relative weights of the statement kinds
+    int printWeight = 3;
+    int varWeight = 3;
+    int assignWeight = 3;
+    int blockWeight = 1;
+    // Number of top-level statements
+    int size = 100;
+    // Deepest nesting of blocks and expressions
+    int depth = 4;
+
+    private final Random random;
+    // Names in scope per block, innermost last. Numbers and strings are kept apart.
+    private final List<List<String>> numbers = new ArrayList<>();
+    private final List<List<String>> strings = new ArrayList<>();
+    private int nextName = 0;
+    private StringBuilder out;
+
+    ProgramGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) {
+        ProgramGenerator generator = new ProgramGenerator(
+                Long.parseLong(option(args, "--seed", "1")));
+        generator.size = Integer.parseInt(option(args, "--size", "100"));
+        generator.depth = Integer.parseInt(option(args, "--depth", "4"));
+        generator.mix(option(args, "--mix", ""));
+        System.out.print(generator.generate());
+    }
+
+    private static String option(String[] args, String name, String fallback) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return fallback;
+    }
+
+    // Sets weights from e.g. "print=1,block=5", unknown names are ignored.
+    void mix(String weights) {
+        for (String weight : weights.split(",")) {
+            String[] parts = weight.split("=");
+            if (parts.length != 2) {
+                continue;
+            }
+            int value = Integer.parseInt(parts[1].trim());
+            switch (parts[0].trim()) {
+                case "print": printWeight = value; break;
+                case "var": varWeight = value; break;
+                case "assign": assignWeight = value; break;
+                case "block": blockWeight = value; break;
+            }
+        }
+    }
+
+    String generate() {
+        out = new StringBuilder();
+        numbers.clear();
+        strings.clear();
+        enterScope();
+        // Something to work with from the start
+        out.append("var n0 = 1;\nvar s0 = \"s\";\n");
+        numbers.get(0).add("n0");
+        strings.get(0).add("s0");
+
+        for (int i = 0; i < size; i++) {
+            statement(0);
+        }
+        return out.toString();
+    }
+
+    private void statement(int level) {
+        int total = printWeight + varWeight + assignWeight + (level < depth ? blockWeight : 0);
+        int pick = random.nextInt(Math.max(1, total));
+
+        if ((pick -= printWeight) < 0) {
+            out.append("print ").append(random.nextBoolean() ? number(0) : string(0)).append(";\n");
+        } else if ((pick -= varWeight) < 0) {
+            String name;
+            if (random.nextBoolean()) {
+                name = "n" + ++nextName;
+                out.append("var ").append(name).append(" = ").append(number(0)).append(";\n");
+                numbers.get(numbers.size() - 1).add(name);
+            } else {
+                name = "s" + ++nextName;
+                out.append("var ").append(name).append(" = ").append(string(0)).append(";\n");
+                strings.get(strings.size() - 1).add(name);
+            }
+        } else if ((pick -= assignWeight) < 0) {
+            if (random.nextBoolean()) {
+                out.append(pick(numbers)).append(" = ").append(number(0)).append(";\n");
+            } else {
+                out.append(pick(strings)).append(" = ").append(string(0)).append(";\n");
+            }
+        } else {
+            out.append("{\n");
+            enterScope();
+            int count = 1 + random.nextInt(5);
+            for (int i = 0; i < count; i++) {
+                statement(level + 1);
+            }
+            exitScope();
+            out.append("}\n");
+        }
+    }
+
+    // An expression that evaluates to a number.
+    private String number(int level) {
+        int choice = level >= depth ? random.nextInt(2) : random.nextInt(6);
+        switch (choice) {
+            case 0: return String.valueOf(random.nextInt(100));
+            case 1: return pick(numbers);
+            case 2: return "(" + number(level + 1) + ")";
+            case 3: return "-" + number(level + 1);
+            case 4:
+                String operator = new String[] {" + ", " - ", " * "}[random.nextInt(3)];
+                return number(level + 1) + operator + number(level + 1);
+            default:
+                return number(level + 1) + " / " + (1 + random.nextInt(9));
+        }
+    }
+
+    // An expression that evaluates to a string.
+    private String string(int level) {
+        int choice = level >= depth ? random.nextInt(2) : random.nextInt(3);
+        switch (choice) {
+            case 0: return "\"str" + random.nextInt(100) + "\"";
+            case 1: return pick(strings);
+            default: return string(level + 1) + " + " + string(level + 1);
+        }
+    }
+
+    private String pick(List<List<String>> scopes) {
+        List<String> visible = new ArrayList<>();
+        for (List<String> scope : scopes) {
+            visible.addAll(scope);
+        }
+        return visible.get(random.nextInt(visible.size()));
+    }
+
+    private void enterScope() {
+        numbers.add(new ArrayList<>());
+        strings.add(new ArrayList<>());
+    }
+
+    private void exitScope() {
+        numbers.remove(numbers.size() - 1);
+        strings.remove(strings.size() - 1);
+    }
+}
@@ -0,0 +1,98 @@
+package loxlang;
+
+// Inline cache of one property get or set site. It remembers, for the last few
+// shapes seen at the site, where the property is: a field slot or a method,
+// and for a set that adds the field, the shape the instance moves to. A hit
+// is a reference compare per entry instead of a map lookup.
+//
+// After LIMIT different shapes the site is megamorphic and stops caching,
+// every access does the full lookup. Entries are immutable and the array is
+// replaced rather than changed. Both fields are volatile, so a thread reading
+// the array another one stored sees its entries filled in. Two threads adding
+// at once can still lose one's entry, or cache one after the site went
+// megamorphic, but every cached entry is right for its shape, so a race only
+// costs a later miss.
+final class PropertyCache {
+    static final int LIMIT = 4;
+
+    static final class Entry {
+        final Shape shape;
+        // Field slot, -1 if the property is the method
+        final int slot;
+        final LoxFunction method;
+        // Shape after a set, the same shape unless the set adds the field
+        final Shape next;
+
+        Entry(Shape shape, int slot, LoxFunction method, Shape next) {
+            this.shape = shape;
+            this.slot = slot;
+            this.method = method;
+            this.next = next;
+        }
+    }
+
+    private volatile Entry[] entries = new Entry[0];
+    private volatile boolean megamorphic = false;
+
+    // Where a get finds the property on the instance, null if it has none.
+    Entry get(LoxInstance instance, String name) {
+        Shape shape = instance.shape;
+        Entry[] cached = entries;
+        for (Entry entry : cached) {
+            if (entry.shape == shape) {
+                return entry;
+            }
+        }
+
+        int slot = shape.slot(name);
+        Entry entry;
+        if (slot >= 0) {
+            entry = new Entry(shape, slot, null, shape);
+        } else {
+            LoxFunction method = instance.klass.findMethod(name);
+            if (method == null) {
+                return null;
+            }
+            entry = new Entry(shape, -1, method, shape);
+        }
+        remember(cached, entry);
+        return entry;
+    }
+
+    // Where a set stores the field, and the shape the instance has after it.
+    Entry set(LoxInstance instance, String name) {
+        Shape shape = instance.shape;
+        Entry[] cached = entries;
+        for (Entry entry : cached) {
+            if (entry.shape == shape) {
+                return entry;
+            }
+        }
+
+        int slot = shape.slot(name);
+        Entry entry = slot >= 0
+                ? new Entry(shape, slot, null, shape)
+                : new Entry(shape, shape.size, null, shape.with(name));
+        remember(cached, entry);
+        return entry;
+    }
+
+    private void remember(Entry[] cached, Entry entry) {
+        if (megamorphic) {
+            return;
+        }
+        if (cached.length == LIMIT) {
+            megamorphic = true;
+            entries = new Entry[0];
+            return;
+        }
+        Entry[] grown = new Entry[cached.length + 1];
+        System.arraycopy(cached, 0, grown, 0, cached.length);
+        grown[cached.length] = entry;
+        entries = grown;
+    }
+
+    boolean isMegamorphic() {
+        return megamorphic;
+    }
+}
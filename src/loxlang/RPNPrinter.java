@@ -5,21 +5,86 @@ public class RPNPrinter implements Expr.Visitor<String> {
         return expr.accept(this);
     }
 
+    // Prints an expression node of a flat encoded program.
+    String print(FlatAst ast, int node) {
+        return print(ast.expr(node));
+    }
+
     @Override
     public String visitBinaryExpr(Expr.Binary expr) {
         return expr.left.accept(this) + " " + expr.right.accept(this) + " " + expr.operator.lexeme;
     }
 
+    @Override
+    public String visitCallExpr(Expr.Call expr) {
+        StringBuilder builder = new StringBuilder();
+        for (Expr argument : expr.arguments) {
+            builder.append(argument.accept(this)).append(" ");
+        }
+        return builder.append(expr.callee.accept(this)).append(" call").toString();
+    }
+
+    @Override
+    public String visitErrorExpr(Expr.Error expr) {
+        return "error";
+    }
+
+    @Override
+    public String visitGetExpr(Expr.Get expr) {
+        return expr.object.accept(this) + " ." + expr.name.lexeme;
+    }
+
     @Override
     public String visitGroupingExpr(Expr.Grouping expr) {
         return expr.expression.accept(this);
     }
 
+    @Override
+    public String visitIndexExpr(Expr.Index expr) {
+        return expr.object.accept(this) + " " + expr.index.accept(this) + " []";
+    }
+
     @Override
     public String visitLiteralExpr(Expr.Literal expr) {
         return expr.value.toString();
     }
 
+    @Override
+    public String visitLogicalExpr(Expr.Logical expr) {
+        return expr.left.accept(this) + " " + expr.right.accept(this) + " " + expr.operator.lexeme;
+    }
+
+    @Override
+    public String visitMapLiteralExpr(Expr.MapLiteral expr) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < expr.keys.size(); i++) {
+            builder.append(expr.keys.get(i).accept(this)).append(" ")
+                    .append(expr.values.get(i).accept(this)).append(" ");
+        }
+        return builder.append("{").append(expr.keys.size()).append("}").toString();
+    }
+
+    @Override
+    public String visitSetExpr(Expr.Set expr) {
+        return expr.object.accept(this) + " " + expr.value.accept(this) + " =." + expr.name.lexeme;
+    }
+
+    @Override
+    public String visitSetIndexExpr(Expr.SetIndex expr) {
+        return expr.object.accept(this) + " " + expr.index.accept(this) + " "
+                + expr.value.accept(this) + " =[]";
+    }
+
+    @Override
+    public String visitSuperExpr(Expr.Super expr) {
+        return "super." + expr.method.lexeme;
+    }
+
+    @Override
+    public String visitThisExpr(Expr.This expr) {
+        return "this";
+    }
+
     @Override
     public String visitUnaryExpr(Expr.Unary expr) {
         String operator = expr.operator.lexeme;
@@ -0,0 +1,103 @@
+package loxlang;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static loxlang.TokenType.EOF;
+
+// Scans a Reader a chunk of whole lines at a time, for StreamScanner and the
+// scanner thread of Pipeline.
+//
+// Each chunk is scanned by a plain Scanner, as ParallelScanner does with its
+// chunks. Only a string can run over the end of a line, and one that runs to
+// the end of what was read may go on past it, so then more is read and the
+// chunk is scanned again.
+//
+// Token offsets are into the chunk the token came from, nothing reading them
+// (FlatAst) runs on a stream.
+class ReaderScanner {
+    // Characters per chunk, a chunk runs on to the end of its last line
+    private static final int CHUNK = 1 << 16;
+
+    // Tokens of one chunk and the errors scanning them found, not reported
+    // yet. The last batch ends with EOF.
+    static final class Batch {
+        final List<Token> tokens;
+        final List<Diagnostic> diagnostics;
+
+        Batch(List<Token> tokens, List<Diagnostic> diagnostics) {
+            this.tokens = tokens;
+            this.diagnostics = diagnostics;
+        }
+
+        boolean isLast() {
+            return !tokens.isEmpty() && tokens.get(tokens.size() - 1).type == EOF;
+        }
+    }
+
+    private final Reader reader;
+    private final ScanSkipper skipper = ScanSkipper.vectorized();
+    private final char[] buffer = new char[CHUNK];
+    // Read but not scanned yet
+    private final StringBuilder pending = new StringBuilder();
+    private boolean drained = false;
+    private int line = 1;
+
+    ReaderScanner(Reader reader) {
+        this.reader = reader;
+    }
+
+    // Scans the next chunk. Not to be called again after the last batch.
+    Batch next() {
+        int wanted = CHUNK;
+        while (true) {
+            fill(wanted);
+            String text = pending.toString();
+            // Keep the last line back even if it is complete, so only a
+            // string that really ran over reaches the end of the text.
+            int cut = drained ? text.length() : text.lastIndexOf('\n', text.length() - 2) + 1;
+            if (cut == 0 && !drained) {
+                // A line longer than the chunk, read until it ends.
+                wanted = text.length() + CHUNK;
+                continue;
+            }
+
+            List<Diagnostic> diagnostics = new ArrayList<>();
+            Scanner scanner = new Scanner(text, skipper, skipper != null ? text.toCharArray() : null,
+                    0, cut, line, diagnostics);
+            List<Token> tokens = scanner.scanChunk();
+            int position = scanner.position();
+            if (position >= text.length() && !drained) {
+                // A string ran to the end of what was read, it may not end there.
+                wanted = text.length() + CHUNK;
+                continue;
+            }
+
+            line = scanner.line();
+            pending.delete(0, Math.min(position, text.length()));
+            if (drained && pending.length() == 0) {
+                tokens.add(new Token(EOF, "", null, line, position));
+            }
+            return new Batch(tokens, diagnostics);
+        }
+    }
+
+    // Reads until at least wanted characters are pending or the reader ends.
+    private void fill(int wanted) {
+        try {
+            while (!drained && pending.length() < wanted) {
+                int read = reader.read(buffer);
+                if (read < 0) {
+                    drained = true;
+                } else {
+                    pending.append(buffer, 0, read);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
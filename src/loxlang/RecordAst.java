@@ -0,0 +1,173 @@
+package loxlang;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Converts the class form of a syntax tree into its record form.
+final class RecordAst implements Expr.Visitor<ExprRecord>, Stmt.Visitor<StmtRecord> {
+  private static final RecordAst converter = new RecordAst();
+
+  static ExprRecord of(Expr expr) {
+    return expr == null ? null : expr.accept(converter);
+  }
+
+  static StmtRecord of(Stmt stmt) {
+    return stmt == null ? null : stmt.accept(converter);
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> List<T> of(List<?> nodes) {
+    if (nodes == null) return null;
+    List<T> result = new ArrayList<>(nodes.size());
+    for (Object node : nodes) {
+      if (node instanceof Expr) {
+        result.add((T)of((Expr)node));
+      } else if (node instanceof Stmt) {
+        result.add((T)of((Stmt)node));
+      } else {
+        result.add((T)node);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public ExprRecord visitAssignExpr(Expr.Assign expr) {
+    return new ExprRecord.Assign(expr.name, of(expr.value));
+  }
+
+  @Override
+  public ExprRecord visitBinaryExpr(Expr.Binary expr) {
+    return new ExprRecord.Binary(of(expr.left), expr.operator, of(expr.right));
+  }
+
+  @Override
+  public ExprRecord visitCallExpr(Expr.Call expr) {
+    return new ExprRecord.Call(of(expr.callee), expr.paren, of(expr.arguments));
+  }
+
+  @Override
+  public ExprRecord visitErrorExpr(Expr.Error expr) {
+    return new ExprRecord.Error(expr.token);
+  }
+
+  @Override
+  public ExprRecord visitGetExpr(Expr.Get expr) {
+    return new ExprRecord.Get(of(expr.object), expr.name);
+  }
+
+  @Override
+  public ExprRecord visitGroupingExpr(Expr.Grouping expr) {
+    return new ExprRecord.Grouping(of(expr.expression));
+  }
+
+  @Override
+  public ExprRecord visitIndexExpr(Expr.Index expr) {
+    return new ExprRecord.Index(of(expr.object), expr.bracket, of(expr.index));
+  }
+
+  @Override
+  public ExprRecord visitLiteralExpr(Expr.Literal expr) {
+    return new ExprRecord.Literal(expr.value);
+  }
+
+  @Override
+  public ExprRecord visitLogicalExpr(Expr.Logical expr) {
+    return new ExprRecord.Logical(of(expr.left), expr.operator, of(expr.right));
+  }
+
+  @Override
+  public ExprRecord visitMapLiteralExpr(Expr.MapLiteral expr) {
+    return new ExprRecord.MapLiteral(expr.brace, of(expr.keys), of(expr.values));
+  }
+
+  @Override
+  public ExprRecord visitSetExpr(Expr.Set expr) {
+    return new ExprRecord.Set(of(expr.object), expr.name, of(expr.value));
+  }
+
+  @Override
+  public ExprRecord visitSetIndexExpr(Expr.SetIndex expr) {
+    return new ExprRecord.SetIndex(of(expr.object), expr.bracket, of(expr.index), of(expr.value));
+  }
+
+  @Override
+  public ExprRecord visitSuperExpr(Expr.Super expr) {
+    return new ExprRecord.Super(expr.keyword, expr.method);
+  }
+
+  @Override
+  public ExprRecord visitThisExpr(Expr.This expr) {
+    return new ExprRecord.This(expr.keyword);
+  }
+
+  @Override
+  public ExprRecord visitUnaryExpr(Expr.Unary expr) {
+    return new ExprRecord.Unary(expr.operator, of(expr.right));
+  }
+
+  @Override
+  public ExprRecord visitVariableExpr(Expr.Variable expr) {
+    return new ExprRecord.Variable(expr.name);
+  }
+
+  @Override
+  public StmtRecord visitBlockStmt(Stmt.Block stmt) {
+    return new StmtRecord.Block(of(stmt.statements));
+  }
+
+  @Override
+  public StmtRecord visitClassStmt(Stmt.Class stmt) {
+    return new StmtRecord.Class(stmt.name, (ExprRecord.Variable)of(stmt.superclass), of(stmt.methods));
+  }
+
+  @Override
+  public StmtRecord visitErrorStmt(Stmt.Error stmt) {
+    return new StmtRecord.Error(stmt.token, of(stmt.partial));
+  }
+
+  @Override
+  public StmtRecord visitExpressionStmt(Stmt.Expression stmt) {
+    return new StmtRecord.Expression(of(stmt.expression));
+  }
+
+  @Override
+  public StmtRecord visitFunctionStmt(Stmt.Function stmt) {
+    return new StmtRecord.Function(stmt.name, of(stmt.params), (StmtRecord.Block)of(stmt.body));
+  }
+
+  @Override
+  public StmtRecord visitIfStmt(Stmt.If stmt) {
+    return new StmtRecord.If(of(stmt.condition), of(stmt.thenBranch), of(stmt.elseBranch));
+  }
+
+  @Override
+  public StmtRecord visitImportStmt(Stmt.Import stmt) {
+    throw new IllegalArgumentException("Import statements have no record form.");
+  }
+
+  @Override
+  public StmtRecord visitPrintStmt(Stmt.Print stmt) {
+    return new StmtRecord.Print(of(stmt.expression));
+  }
+
+  @Override
+  public StmtRecord visitReturnStmt(Stmt.Return stmt) {
+    return new StmtRecord.Return(stmt.keyword, of(stmt.value));
+  }
+
+  @Override
+  public StmtRecord visitSpawnStmt(Stmt.Spawn stmt) {
+    throw new IllegalArgumentException("Spawn statements have no record form.");
+  }
+
+  @Override
+  public StmtRecord visitVarStmt(Stmt.Var stmt) {
+    return new StmtRecord.Var(stmt.name, of(stmt.initializer));
+  }
+
+  @Override
+  public StmtRecord visitWhileStmt(Stmt.While stmt) {
+    return new StmtRecord.While(of(stmt.condition), of(stmt.body), of(stmt.increment));
+  }
+}
@@ -0,0 +1,529 @@
+package loxlang;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+// Static pass run between the parser and the interpreter.
+// Marks every variable site that can only ever refer to a global, so the
+// interpreter can go straight to the global slot table for it.
+//
+// Variables declared inside a function live in slots of the function's call
+// frame instead of an Environment. A frame variable that a nested function
+// uses is boxed, its slot holds a LoxFunction.Box that the nested function
+// captures when it is created and reaches as an upvalue. Variables of blocks
+// outside any function stay in Environments, a block's in one of its own.
+// A site reaches them by how many Environments out the declaring block is,
+// so a closure keeps the variable it saw even if its own block declares one
+// of the same name later.
+//
+// Methods are functions too. 'this' isn't a variable, a call hands the
+// receiver to the method, while 'super' is a variable around the methods of a
+// subclass that they capture like any other.
+//
+// The Environment of a loop body outside functions can be reused for every
+// iteration if no function declared in it can hold on to it, those bodies
+// are marked reusable.
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    // How a site reaches a variable that isn't global
+    static final int ENVIRONMENT = 0;
+    static final int FRAME = 1;
+    static final int BOX = 2;
+    static final int UPVALUE = 3;
+
+    private static final class Local {
+        // Function whose frame holds the variable, null for an Environment variable
+        final FunctionScope function;
+        // Frame slot, or for an Environment variable the number of
+        // Environments out to and including its block's
+        final int slot;
+        boolean captured;
+        // Sites to switch to BOX if the variable turns out to be captured
+        final List<Runnable> sites = new ArrayList<>();
+
+        Local(FunctionScope function, int slot) {
+            this.function = function;
+            this.slot = slot;
+        }
+
+        void capture() {
+            if (!captured) {
+                captured = true;
+                for (Runnable site : sites) {
+                    site.run();
+                }
+                sites.clear();
+            }
+        }
+    }
+
+    // Frame layout of the function being resolved.
+    private static final class FunctionScope {
+        final FunctionScope enclosing;
+        final boolean initializer;
+        int nextSlot = 0;
+        int frameSize = 0;
+        // Captured variables in upvalue order, with where to capture them from:
+        // a slot of the enclosing frame, or -(index + 1) for its own upvalues.
+        final Map<Local, Integer> upvalues = new HashMap<>();
+        final List<Integer> captures = new ArrayList<>();
+
+        FunctionScope(FunctionScope enclosing, boolean initializer) {
+            this.enclosing = enclosing;
+            this.initializer = initializer;
+        }
+
+        int upvalue(Local local) {
+            Integer index = upvalues.get(local);
+            if (index != null) {
+                return index;
+            }
+            captures.add(local.function == enclosing ? local.slot : -(enclosing.upvalue(local) + 1));
+            upvalues.put(local, captures.size() - 1);
+            return captures.size() - 1;
+        }
+    }
+
+    // Variables per enclosing block, innermost on top.
+    private final Stack<Map<String, Local>> scopes = new Stack<>();
+    private FunctionScope function = null;
+    private enum ClassType { NONE, CLASS, SUBCLASS }
+    private ClassType currentClass = ClassType.NONE;
+    // First free frame slot when each block began
+    private final Stack<Integer> marks = new Stack<>();
+    // Function declarations resolved so far
+    private int closures = 0;
+    // Enclosing blocks that have an Environment at run time
+    private int environments = 0;
+
+    // Resolves the body of a lazily parsed block, enclosing are the names each
+    // surrounding block had declared when the block was passed over, the
+    // outermost first. Lazy blocks are never inside a function, so each of
+    // those blocks has an Environment.
+    void resolveBlock(List<Set<String>> enclosing, List<Stmt> statements) {
+        for (Set<String> names : enclosing) {
+            Map<String, Local> scope = new HashMap<>();
+            for (String name : names) {
+                scope.put(name, new Local(null, scopes.size() + 1));
+            }
+            scopes.push(scope);
+        }
+        environments = enclosing.size();
+        beginScope();
+        resolve(statements);
+        endScope();
+    }
+
+    void resolve(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    private void resolve(Stmt stmt) {
+        // The parser leaves a null behind for statements it could not parse.
+        if (stmt != null) {
+            stmt.accept(this);
+        }
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    // A name is global if no enclosing block has declared it before this point.
+    private Local lookUp(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Local local = scopes.get(i).get(name.lexeme);
+            if (local != null) {
+                return local;
+            }
+        }
+        return null;
+    }
+
+    private List<Set<String>> declaredNames() {
+        List<Set<String>> names = new ArrayList<>();
+        for (Map<String, Local> scope : scopes) {
+            names.add(new HashSet<>(scope.keySet()));
+        }
+        return names;
+    }
+
+    // Declares a variable in the innermost block, null at the top level.
+    private Local declare(Token name) {
+        if (scopes.isEmpty()) {
+            return null;
+        }
+        Local local;
+        if (function == null) {
+            local = new Local(null, environments);
+        } else {
+            local = new Local(function, function.nextSlot++);
+            function.frameSize = Math.max(function.frameSize, function.nextSlot);
+        }
+        scopes.peek().put(name.lexeme, local);
+        return local;
+    }
+
+    // Access for a use of the variable from the current function.
+    private int access(Local local, Runnable boxed) {
+        if (local.function == null) {
+            return ENVIRONMENT;
+        }
+        if (local.function != function) {
+            local.capture();
+            return UPVALUE;
+        }
+        if (local.captured) {
+            return BOX;
+        }
+        local.sites.add(boxed);
+        return FRAME;
+    }
+
+    // Where a site reaches the variable: its frame slot, its upvalue index,
+    // or how many Environments out it is.
+    private int slot(Local local, int access) {
+        switch (access) {
+            case UPVALUE: return function.upvalue(local);
+            case ENVIRONMENT: return environments - local.slot;
+            default: return local.slot;
+        }
+    }
+
+    private void beginScope() {
+        scopes.push(new HashMap<>());
+        marks.push(function != null ? function.nextSlot : 0);
+        if (function == null) {
+            environments++;
+        }
+    }
+
+    // Frame slots of the block's variables are free again after it.
+    private void endScope() {
+        scopes.pop();
+        int mark = marks.pop();
+        if (function != null) {
+            function.nextSlot = mark;
+        } else {
+            environments--;
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        // Don't force parsing of a lazy body, resolve it when it gets parsed.
+        if (stmt.statements instanceof LazyStatements
+                && !((LazyStatements)stmt.statements).isParsed()) {
+            ((LazyStatements)stmt.statements).resolveLater(declaredNames());
+            return null;
+        }
+
+        // Inside a function the block's variables are in the frame.
+        stmt.framed = function != null;
+        beginScope();
+        resolve(stmt.statements);
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        ClassType enclosingClass = currentClass;
+        currentClass = ClassType.CLASS;
+
+        Local local = declare(stmt.name);
+        if (local != null) {
+            stmt.slot = local.slot;
+            stmt.access = access(local, () -> stmt.access = BOX);
+        }
+
+        if (stmt.superclass != null) {
+            if (stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
+                Lox.error(stmt.superclass.name, "A class can't inherit from itself.");
+            }
+            currentClass = ClassType.SUBCLASS;
+            resolve(stmt.superclass);
+
+            // The methods see the superclass as 'super' in a scope of their own.
+            beginScope();
+            Token keyword = new Token(TokenType.SUPER, "super", null, stmt.name.line);
+            Local superclass = declare(keyword);
+            stmt.superSlot = superclass.slot;
+            stmt.superAccess = access(superclass, () -> stmt.superAccess = BOX);
+        }
+
+        for (Stmt.Function method : stmt.methods) {
+            closures++;
+            resolveFunction(method, method.name.lexeme.equals("init"));
+        }
+
+        if (stmt.superclass != null) {
+            endScope();
+        }
+        currentClass = enclosingClass;
+        return null;
+    }
+
+    // Only the recovering parser makes these, and what it returns doesn't run.
+    @Override
+    public Void visitErrorStmt(Stmt.Error stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        closures++;
+        // Declared before the body so the function can call itself.
+        Local local = declare(stmt.name);
+        if (local != null) {
+            stmt.slot = local.slot;
+            stmt.access = access(local, () -> stmt.access = BOX);
+        }
+        resolveFunction(stmt, false);
+        return null;
+    }
+
+    private void resolveFunction(Stmt.Function stmt, boolean initializer) {
+        FunctionScope enclosing = function;
+        function = new FunctionScope(enclosing, initializer);
+        beginScope();
+        stmt.boxedParams = new boolean[stmt.params.size()];
+        for (int i = 0; i < stmt.params.size(); i++) {
+            int index = i;
+            Local param = declare(stmt.params.get(i));
+            // Parameters arrive in the first slots, boxed on entry if captured.
+            access(param, () -> stmt.boxedParams[index] = true);
+        }
+        resolve(stmt.body);
+        endScope();
+
+        stmt.frameSize = function.frameSize;
+        stmt.captures = function.captures.stream().mapToInt(Integer::intValue).toArray();
+        function = enclosing;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.thenBranch);
+        resolve(stmt.elseBranch);
+        return null;
+    }
+
+    // A module defines globals, so it can only be imported where they are.
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        if (function != null || !scopes.isEmpty()) {
+            Lox.error(stmt.keyword, "Can only import at the top level.");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (function == null) {
+            Lox.error(stmt.keyword, "Can't return from top-level code.");
+        }
+        if (stmt.value != null) {
+            if (function != null && function.initializer) {
+                Lox.error(stmt.keyword, "Can't return a value from an initializer.");
+            }
+            resolve(stmt.value);
+        }
+        return null;
+    }
+
+    // A spawned body runs in a frame of its own, captured variables are copied
+    // into it when the task starts.
+    @Override
+    public Void visitSpawnStmt(Stmt.Spawn stmt) {
+        FunctionScope enclosing = function;
+        function = new FunctionScope(enclosing, false);
+        beginScope();
+        resolve(stmt.body);
+        endScope();
+        stmt.frameSize = function.frameSize;
+        stmt.captures = function.captures.stream().mapToInt(Integer::intValue).toArray();
+        function = enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+        // Declared after the initializer, `var a = a;` reads the outer 'a'.
+        Local local = declare(stmt.name);
+        if (local != null) {
+            stmt.slot = local.slot;
+            stmt.access = access(local, () -> stmt.access = BOX);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        resolve(stmt.condition);
+        int before = closures;
+        resolve(stmt.body);
+        if (stmt.body instanceof Stmt.Block) {
+            Stmt.Block body = (Stmt.Block)stmt.body;
+            // An unparsed lazy body could declare anything.
+            boolean parsed = !(body.statements instanceof LazyStatements)
+                    || ((LazyStatements)body.statements).isParsed();
+            body.reusable = !body.framed && parsed && closures == before;
+        }
+        if (stmt.increment != null) {
+            resolve(stmt.increment);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+        Local local = lookUp(expr.name);
+        expr.global = local == null;
+        if (local != null) {
+            expr.access = access(local, () -> expr.access = BOX);
+            expr.slot = slot(local, expr.access);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        resolve(expr.callee);
+        for (Expr argument : expr.arguments) {
+            resolve(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitErrorExpr(Expr.Error expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        resolve(expr.object);
+        expr.cache = new PropertyCache();
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        resolve(expr.object);
+        resolve(expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitMapLiteralExpr(Expr.MapLiteral expr) {
+        for (int i = 0; i < expr.keys.size(); i++) {
+            resolve(expr.keys.get(i));
+            resolve(expr.values.get(i));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        resolve(expr.value);
+        resolve(expr.object);
+        expr.cache = new PropertyCache();
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+        resolve(expr.value);
+        resolve(expr.object);
+        resolve(expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        if (currentClass == ClassType.NONE) {
+            Lox.error(expr.keyword, "Can't use 'super' outside of a class.");
+        } else if (currentClass != ClassType.SUBCLASS) {
+            Lox.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
+        } else {
+            Local local = lookUp(expr.keyword);
+            expr.access = access(local, () -> expr.access = BOX);
+            expr.slot = slot(local, expr.access);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        if (currentClass == ClassType.NONE) {
+            Lox.error(expr.keyword, "Can't use 'this' outside of a class.");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        Local local = lookUp(expr.name);
+        expr.global = local == null;
+        if (local != null) {
+            expr.access = access(local, () -> expr.access = BOX);
+            expr.slot = slot(local, expr.access);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,39 @@
+package loxlang;
+
+// Finds the end of long runs of uninteresting characters for the Scanner:
+// whitespace, the rest of a // comment and string bodies.
+//
+// The SIMD version needs the incubating Vector API, which is only there when
+// the JVM runs with --add-modules jdk.incubator.vector. Without it, or with
+// -Dlox.vector=false, vectorized() returns null and the Scanner keeps its
+// plain one char at a time loop.
+abstract class ScanSkipper {
+    private static final ScanSkipper vectorized = load();
+
+    static ScanSkipper vectorized() {
+        return vectorized;
+    }
+
+    // Index of the first char in [from, to) that isn't ' ', '\r', '\t' or '\n', or to.
+    abstract int skipWhitespace(char[] source, int from, int to);
+
+    // Index of the first c in [from, to), or to.
+    abstract int indexOf(char[] source, char c, int from, int to);
+
+    // Number of '\n' in [from, to).
+    abstract int countNewlines(char[] source, int from, int to);
+
+    private static ScanSkipper load() {
+        if (!Boolean.parseBoolean(System.getProperty("lox.vector", "true"))
+                || !ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return null;
+        }
+        // Loaded by name so nothing links against the Vector API unless it's there.
+        try {
+            return (ScanSkipper) Class.forName("loxlang.VectorScanSkipper")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -10,18 +10,45 @@ import static loxlang.TokenType.*;
 public class Scanner {
     // Raw source code stored as a string
     private final String source;
-    // Reserved keywords
-    private static final Map<String, TokenType> keywords;
+    // Reserved keywords, ByteScanner uses them too
+    static final Map<String, TokenType> keywords;
     // List used to store generated tokens
     private final List<Token> tokens = new ArrayList<>();
     // Start and current fields are offsets in the string
     private int start = 0;
     private int current = 0;
     private int line = 1;
+    // SIMD fast paths for whitespace, comments and strings, null when unavailable.
+    private final ScanSkipper skipper;
+    // The source as chars, only needed by the skipper
+    private final char[] chars;
+    // No token starts at or after this offset, less than the source length
+    // when scanning one chunk for ParallelScanner.
+    private final int end;
+    // Where errors go in chunk mode instead of Lox.error
+    private final List<Diagnostic> diagnostics;
 
     // Constructor
     Scanner (String source) {
+        this(source, ScanSkipper.vectorized());
+    }
+
+    Scanner (String source, ScanSkipper skipper) {
+        this(source, skipper, skipper != null ? source.toCharArray() : null,
+                0, source.length(), 1, null);
+    }
+
+    // Scans the tokens starting in [from, to) with the given line number at from,
+    // collecting errors instead of reporting them. chars is shared between chunks.
+    Scanner (String source, ScanSkipper skipper, char[] chars, int from, int to, int line,
+             List<Diagnostic> diagnostics) {
         this.source = source;
+        this.skipper = skipper;
+        this.chars = chars;
+        this.current = from;
+        this.end = to;
+        this.line = line;
+        this.diagnostics = diagnostics;
     }
 
     static {
@@ -33,10 +60,12 @@ public class Scanner {
         keywords.put("for",    FOR);
         keywords.put("fun",    FUN);
         keywords.put("if",     IF);
+        keywords.put("import", IMPORT);
         keywords.put("nil",    NIL);
         keywords.put("or",     OR);
         keywords.put("print",  PRINT);
         keywords.put("return", RETURN);
+        keywords.put("spawn",  SPAWN);
         keywords.put("super",  SUPER);
         keywords.put("this",   THIS);
         keywords.put("true",   TRUE);
@@ -46,19 +75,45 @@ public class Scanner {
     }
 
     List<Token> scanTokens() {
+        Probe probe = Probe.start(new Events.Scan());
+        scanChunk();
+        // Add one final "end of file" token
+        // Not needed but it makes the parser a little cleaner
+        tokens.add(new Token(EOF, "", null, line, current));
+        probe.scanned(source.length(), tokens.size());
+        return tokens;
+    }
+
+    // Scans every token starting before end, without the final EOF.
+    List<Token> scanChunk() {
         // Loop until we have reached the end of the source code
-        while (!isAtEnd()) {
+        while (current < end) {
             // Beginning of the next lexeme
             start = current;
             // Scan for next token
             scanToken();
         }
-        // Add one final "end of file" token
-        // Not needed but it makes the parser a little cleaner
-        tokens.add(new Token(EOF, "", null, line));
         return tokens;
     }
 
+    // Where the next token would start, can be past the chunk end when the
+    // last token, string or comment ran over it.
+    int position() {
+        return current;
+    }
+
+    int line() {
+        return line;
+    }
+
+    private void error(int line, String message) {
+        if (diagnostics != null) {
+            diagnostics.add(new Diagnostic(line, "", message));
+        } else {
+            Lox.error(line, message);
+        }
+    }
+
     private void scanToken() {
         char c = advance();
         switch (c) {
@@ -66,6 +121,9 @@ public class Scanner {
             case ')': addToken(RIGHT_PAREN); break;
             case '{': addToken(LEFT_BRACE); break;
             case '}': addToken(RIGHT_BRACE); break;
+            case '[': addToken(LEFT_BRACKET); break;
+            case ']': addToken(RIGHT_BRACKET); break;
+            case ':': addToken(COLON); break;
             case ',': addToken(COMMA); break;
             case '.': addToken(DOT); break;
             case '-': addToken(MINUS); break;
@@ -79,6 +137,10 @@ public class Scanner {
             case '/':
                 if (match('/')) {
                     // A comment goes until the end of the line.
+                    if (skipper != null) {
+                        current = skipper.indexOf(chars, '\n', current, chars.length);
+                        break;
+                    }
                     while (peek() != '\n' && !isAtEnd()) {
                         advance();
                     }
@@ -93,10 +155,19 @@ public class Scanner {
             case ' ':
             case '\r':
             case '\t':
-                // Ignore whitespace
-                break;
             case '\n':
-                line++;
+                if (skipper != null && isWhitespace(peek())) {
+                    // Skip the whole run of whitespace at once, single spaces
+                    // between tokens are cheaper on the plain path.
+                    int end = skipper.skipWhitespace(chars, current, chars.length);
+                    line += skipper.countNewlines(chars, current - 1, end);
+                    current = end;
+                    break;
+                }
+                if (c == '\n') {
+                    line++;
+                }
+                // Ignore whitespace
                 break;
             case '"': string(); break;
             default:
@@ -105,7 +176,7 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character.");
+                    error(line, "Unexpected character.");
                     break;
                 }
         }
@@ -145,6 +216,11 @@ public class Scanner {
 
     // Searches for the ending '"' value and ads the resulting string to a token
     private void string() {
+        if (skipper != null) {
+            int end = skipper.indexOf(chars, '"', current, chars.length);
+            line += skipper.countNewlines(chars, current, end);
+            current = end;
+        }
         // Peek until the second " is found
         while (peek() != '"' && !isAtEnd()) {
             // increment line if a newline is reached before reaching the end of the string.
@@ -155,7 +231,7 @@ public class Scanner {
         }
         // If the end of file is reached before finding a second ", throw an error.
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated String");
+            error(line, "Unterminated String");
             return;
         }
 
@@ -223,6 +299,10 @@ public class Scanner {
         return source.charAt(current + 1);
     }
 
+    private boolean isWhitespace(char c) {
+        return c == ' ' || c == '\r' || c == '\t' || c == '\n';
+    }
+
     private boolean isDigit(char c) {
         return c >= '0' && c <= '9';
     }
@@ -255,7 +335,7 @@ public class Scanner {
     // Grabs the text of the current lexeme and creates a token for it.
     private void addToken(TokenType type, Object literal) {
         String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        tokens.add(new Token(type, text, literal, line, start));
     }
 
 
@@ -0,0 +1,43 @@
+package loxlang;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Hidden class of an instance: which field is in which slot of its fields
+// array. Instances that got the same fields in the same order share a shape,
+// so a shape can stand in for the whole layout and a cache only has to
+// compare one reference.
+//
+// Every class has its own root shape, so a shape also tells the class, and
+// with it the methods. Adding a field moves an instance along a transition to
+// the shape with one more slot, transitions are shared by all instances.
+final class Shape {
+    private final Map<String, Integer> slots;
+    // Field count, the length instances of this shape need
+    final int size;
+    private final Map<String, Shape> transitions = new ConcurrentHashMap<>();
+
+    Shape() {
+        this.slots = Map.of();
+        this.size = 0;
+    }
+
+    private Shape(Shape parent, String field) {
+        Map<String, Integer> slots = new HashMap<>(parent.slots);
+        slots.put(field, parent.size);
+        this.slots = slots;
+        this.size = parent.size + 1;
+    }
+
+    // Slot of the field, -1 if instances of this shape don't have it.
+    int slot(String field) {
+        Integer slot = slots.get(field);
+        return slot == null ? -1 : slot;
+    }
+
+    // Shape after adding the field to an instance of this one.
+    Shape with(String field) {
+        return transitions.computeIfAbsent(field, name -> new Shape(this, name));
+    }
+}
@@ -0,0 +1,194 @@
+package loxlang;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Saves the global variables of an interpreter to a compact binary file and
+// restores them later, so a prelude of definitions only has to run once.
+//
+// Layout: magic, version, global count, then for each global its name and a
+// tagged value. Only nil, booleans, numbers, strings, arrays and maps of
+// those can be saved, an array as its length and elements, a map as its size
+// and keys each followed by its value. A map reached twice is saved twice and
+// restored as two maps. Native functions are left out, every interpreter
+// defines them itself. A global holding anything else, such as a function or
+// a class, fails the save before anything is written.
+class Snapshot {
+    private static final int MAGIC = 0x4c4f5853; // "LOXS"
+    private static final int VERSION = 1;
+
+    private static final byte NIL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte NUMBER = 3;
+    private static final byte STRING = 4;
+    private static final byte ARRAY = 5;
+    private static final byte MAP = 6;
+
+    // Every global is checked before anything is written, and the file is
+    // written next to path and only moved there once complete, so a global
+    // that can't be saved leaves no file or the old one behind.
+    static void save(Globals globals, Path path) throws IOException {
+        List<Globals.Cell> cells = new ArrayList<>();
+        for (int slot = 0; slot < globals.size(); slot++) {
+            Globals.Cell cell = globals.cellAt(slot);
+            if (!(cell.value instanceof NativeFunction)) {
+                check(cell.name, cell.value, new ArrayList<>());
+                cells.add(cell);
+            }
+        }
+
+        Path absolute = path.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream file = Files.newOutputStream(temporary);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(cells.size());
+                for (Globals.Cell cell : cells) {
+                    writeString(out, cell.name);
+                    writeValue(out, cell.value);
+                }
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Defines every saved global in the given globals, the file is read in one go.
+    static void load(Globals globals, Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            throw new IOException("No snapshot at " + path + ".");
+        }
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Files.readAllBytes(path)));
+
+        if (in.available() < 8 || in.readInt() != MAGIC) {
+            throw new IOException("Not a Lox snapshot: " + path);
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ".");
+        }
+
+        try {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = readString(in);
+                globals.define(name, readValue(in));
+            }
+        } catch (EOFException e) {
+            throw new IOException("Corrupt snapshot, it ends too early: " + path + ".");
+        }
+    }
+
+    // enclosing holds the maps value is inside of.
+    private static void check(String name, Object value, List<LoxMap> enclosing) throws IOException {
+        if (value instanceof LoxMap) {
+            LoxMap map = (LoxMap)value;
+            for (LoxMap outer : enclosing) {
+                if (outer == map) {
+                    throw new IOException("Cannot snapshot global '" + name + "', a map in it contains itself.");
+                }
+            }
+            enclosing.add(map);
+            for (Object entry : entries(map)) {
+                check(name, entry, enclosing);
+            }
+            enclosing.remove(enclosing.size() - 1);
+        } else if (value != null && !(value instanceof Boolean) && !(value instanceof Double)
+                && !(value instanceof String) && !(value instanceof LoxArray)) {
+            throw new IOException("Cannot snapshot the value of global '" + name + "'.");
+        }
+    }
+
+    // Keys and values of map, each key followed by its value.
+    private static List<Object> entries(LoxMap map) {
+        List<Object> entries = new ArrayList<>(2 * map.size());
+        map.forEach((key, value) -> {
+            entries.add(key);
+            entries.add(value);
+        });
+        return entries;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NIL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean)value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(NUMBER);
+            out.writeDouble((Double)value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String)value);
+        } else if (value instanceof LoxMap) {
+            LoxMap map = (LoxMap)value;
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for (Object entry : entries(map)) {
+                writeValue(out, entry);
+            }
+        } else {
+            double[] values = ((LoxArray)value).values;
+            out.writeByte(ARRAY);
+            out.writeInt(values.length);
+            for (double element : values) {
+                out.writeDouble(element);
+            }
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NIL: return null;
+            case FALSE: return false;
+            case TRUE: return true;
+            case NUMBER: return in.readDouble();
+            case STRING: return readString(in);
+            case ARRAY:
+                LoxArray array = new LoxArray(in.readInt());
+                for (int i = 0; i < array.values.length; i++) {
+                    array.values[i] = in.readDouble();
+                }
+                return array;
+            case MAP:
+                int size = in.readInt();
+                LoxMap map = new LoxMap(size);
+                for (int i = 0; i < size; i++) {
+                    Object key = readValue(in);
+                    map.put(key, readValue(in));
+                }
+                return map;
+        }
+        throw new IOException("Corrupt snapshot, unknown value tag " + tag + ".");
+    }
+
+    // Length prefixed UTF-8, unlike writeUTF this has no 64K limit.
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,13 +1,50 @@
 package loxlang;
 
 import java.util.List;
+import java.util.Objects;
 
 abstract class Stmt {
   interface Visitor<R> {
     R visitBlockStmt(Block stmt);
+    R visitClassStmt(Class stmt);
+    R visitErrorStmt(Error stmt);
     R visitExpressionStmt(Expression stmt);
+    R visitFunctionStmt(Function stmt);
+    R visitIfStmt(If stmt);
+    R visitImportStmt(Import stmt);
     R visitPrintStmt(Print stmt);
+    R visitReturnStmt(Return stmt);
+    R visitSpawnStmt(Spawn stmt);
     R visitVarStmt(Var stmt);
+    R visitWhileStmt(While stmt);
+  }
+
+  static boolean sameToken(Token a, Token b) {
+    if (a == b) return true;
+    if (a == null || b == null) return false;
+    return a.type == b.type && a.lexeme.equals(b.lexeme);
+  }
+
+  static int tokenHash(Token token) {
+    return token == null ? 0 : Objects.hash(token.type, token.lexeme);
+  }
+
+  static boolean sameTokens(List<Token> a, List<Token> b) {
+    if (a == b) return true;
+    if (a == null || b == null || a.size() != b.size()) return false;
+    for (int i = 0; i < a.size(); i++) {
+      if (!sameToken(a.get(i), b.get(i))) return false;
+    }
+    return true;
+  }
+
+  static int tokensHash(List<Token> tokens) {
+    if (tokens == null) return 0;
+    int hash = 1;
+    for (Token token : tokens) {
+      hash = 31 * hash + tokenHash(token);
+    }
+    return hash;
   }
  static class Block extends Stmt {
     Block(List<Stmt> statements) {
@@ -20,6 +57,84 @@ abstract class Stmt {
 }
 
     final List<Stmt> statements;
+    int executions;
+    int deopts;
+    Tier.Code compiled;
+    boolean framed;
+    boolean reusable;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Block)) return false;
+      Block other = (Block)object;
+      return Objects.equals(statements, other.statements);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Block", statements);
+    }
+  }
+ static class Class extends Stmt {
+    Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
+    this.name = name;
+    this.superclass = superclass;
+    this.methods = methods;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitClassStmt(this);
+}
+
+    final Token name;
+    final Expr.Variable superclass;
+    final List<Stmt.Function> methods;
+    int access;
+    int slot;
+    int superAccess;
+    int superSlot;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Class)) return false;
+      Class other = (Class)object;
+      return sameToken(name, other.name) && Objects.equals(superclass, other.superclass) && Objects.equals(methods, other.methods);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Class", tokenHash(name), superclass, methods);
+    }
+  }
+ static class Error extends Stmt {
+    Error(Token token, Stmt partial) {
+    this.token = token;
+    this.partial = partial;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitErrorStmt(this);
+}
+
+    final Token token;
+    final Stmt partial;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Error)) return false;
+      Error other = (Error)object;
+      return sameToken(token, other.token) && Objects.equals(partial, other.partial);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Error", tokenHash(token), partial);
+    }
   }
  static class Expression extends Stmt {
     Expression(Expr expression) {
@@ -32,6 +147,109 @@ abstract class Stmt {
 }
 
     final Expr expression;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Expression)) return false;
+      Expression other = (Expression)object;
+      return Objects.equals(expression, other.expression);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Expression", expression);
+    }
+  }
+ static class Function extends Stmt {
+    Function(Token name, List<Token> params, Stmt.Block body) {
+    this.name = name;
+    this.params = params;
+    this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitFunctionStmt(this);
+}
+
+    final Token name;
+    final List<Token> params;
+    final Stmt.Block body;
+    int access;
+    int slot;
+    int frameSize;
+    boolean[] boxedParams;
+    int[] captures;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Function)) return false;
+      Function other = (Function)object;
+      return sameToken(name, other.name) && sameTokens(params, other.params) && Objects.equals(body, other.body);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Function", tokenHash(name), tokensHash(params), body);
+    }
+  }
+ static class If extends Stmt {
+    If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+    this.condition = condition;
+    this.thenBranch = thenBranch;
+    this.elseBranch = elseBranch;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitIfStmt(this);
+}
+
+    final Expr condition;
+    final Stmt thenBranch;
+    final Stmt elseBranch;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof If)) return false;
+      If other = (If)object;
+      return Objects.equals(condition, other.condition) && Objects.equals(thenBranch, other.thenBranch) && Objects.equals(elseBranch, other.elseBranch);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("If", condition, thenBranch, elseBranch);
+    }
+  }
+ static class Import extends Stmt {
+    Import(Token keyword, Token path) {
+    this.keyword = keyword;
+    this.path = path;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitImportStmt(this);
+}
+
+    final Token keyword;
+    final Token path;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Import)) return false;
+      Import other = (Import)object;
+      return sameToken(keyword, other.keyword) && sameToken(path, other.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Import", tokenHash(keyword), tokenHash(path));
+    }
   }
  static class Print extends Stmt {
     Print(Expr expression) {
@@ -44,6 +262,75 @@ abstract class Stmt {
 }
 
     final Expr expression;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Print)) return false;
+      Print other = (Print)object;
+      return Objects.equals(expression, other.expression);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Print", expression);
+    }
+  }
+ static class Return extends Stmt {
+    Return(Token keyword, Expr value) {
+    this.keyword = keyword;
+    this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitReturnStmt(this);
+}
+
+    final Token keyword;
+    final Expr value;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Return)) return false;
+      Return other = (Return)object;
+      return sameToken(keyword, other.keyword) && Objects.equals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Return", tokenHash(keyword), value);
+    }
+  }
+ static class Spawn extends Stmt {
+    Spawn(Token keyword, Stmt body) {
+    this.keyword = keyword;
+    this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitSpawnStmt(this);
+}
+
+    final Token keyword;
+    final Stmt body;
+    int frameSize;
+    int[] captures;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Spawn)) return false;
+      Spawn other = (Spawn)object;
+      return sameToken(keyword, other.keyword) && Objects.equals(body, other.body);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Spawn", tokenHash(keyword), body);
+    }
   }
  static class Var extends Stmt {
     Var(Token name, Expr initializer) {
@@ -58,6 +345,50 @@ abstract class Stmt {
 
     final Token name;
     final Expr initializer;
+    int access;
+    int slot;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof Var)) return false;
+      Var other = (Var)object;
+      return sameToken(name, other.name) && Objects.equals(initializer, other.initializer);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("Var", tokenHash(name), initializer);
+    }
+  }
+ static class While extends Stmt {
+    While(Expr condition, Stmt body, Expr increment) {
+    this.condition = condition;
+    this.body = body;
+    this.increment = increment;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitWhileStmt(this);
+}
+
+    final Expr condition;
+    final Stmt body;
+    final Expr increment;
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) return true;
+      if (!(object instanceof While)) return false;
+      While other = (While)object;
+      return Objects.equals(condition, other.condition) && Objects.equals(body, other.body) && Objects.equals(increment, other.increment);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash("While", condition, body, increment);
+    }
   }
 
     abstract <R> R accept(Visitor<R> visitor);
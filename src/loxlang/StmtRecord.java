@@ -0,0 +1,16 @@
+package loxlang;
+
+import java.util.List;
+
+sealed interface StmtRecord {
+  record Block(List<StmtRecord> statements) implements StmtRecord {}
+  record Class(Token name, ExprRecord.Variable superclass, List<StmtRecord.Function> methods) implements StmtRecord {}
+  record Error(Token token, StmtRecord partial) implements StmtRecord {}
+  record Expression(ExprRecord expression) implements StmtRecord {}
+  record Function(Token name, List<Token> params, StmtRecord.Block body) implements StmtRecord {}
+  record If(ExprRecord condition, StmtRecord thenBranch, StmtRecord elseBranch) implements StmtRecord {}
+  record Print(ExprRecord expression) implements StmtRecord {}
+  record Return(Token keyword, ExprRecord value) implements StmtRecord {}
+  record Var(Token name, ExprRecord initializer) implements StmtRecord {}
+  record While(ExprRecord condition, StmtRecord body, ExprRecord increment) implements StmtRecord {}
+}
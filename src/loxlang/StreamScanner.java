@@ -0,0 +1,69 @@
+package loxlang;
+
+import java.io.Reader;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Tokens of a Reader, scanned as the parser asks for them and forgotten once
+// it says it is done with them, so a script of any size is scanned in a
+// bounded amount of memory. The scanning is done by ReaderScanner, here or on
+// another thread, see Pipeline.
+//
+// The list only holds the tokens from the first one not discarded to the last
+// one scanned, get() takes more batches as needed. Errors found scanning a
+// batch are reported when it is taken, on the parser's thread.
+class StreamScanner extends AbstractList<Token> {
+    private final Supplier<ReaderScanner.Batch> batches;
+
+    // Tokens from index base on
+    private final List<Token> window = new ArrayList<>();
+    private int base = 0;
+    private boolean ended = false;
+
+    StreamScanner(Reader reader) {
+        this(new ReaderScanner(reader)::next);
+    }
+
+    StreamScanner(Supplier<ReaderScanner.Batch> batches) {
+        this.batches = batches;
+    }
+
+    @Override
+    public Token get(int index) {
+        if (index < base) {
+            throw new IndexOutOfBoundsException("Token " + index + " was already discarded.");
+        }
+        while (index >= base + window.size()) {
+            if (ended) {
+                // Past the end is the end, the parser never gets further than EOF.
+                return window.get(window.size() - 1);
+            }
+            ReaderScanner.Batch batch = batches.get();
+            for (Diagnostic diagnostic : batch.diagnostics) {
+                Lox.error(diagnostic.line, diagnostic.message);
+            }
+            window.addAll(batch.tokens);
+            ended = batch.isLast();
+        }
+        return window.get(index - base);
+    }
+
+    // Tokens taken so far, including the discarded ones.
+    @Override
+    public int size() {
+        return base + window.size();
+    }
+
+    // Nothing will ask for a token before index again.
+    void discard(int index) {
+        // Shifting the window down only once half of it is dead keeps this
+        // linear in the number of tokens overall.
+        int dead = Math.min(index, size()) - base;
+        if (dead > 0 && dead >= window.size() / 2) {
+            window.subList(0, dead).clear();
+            base += dead;
+        }
+    }
+}
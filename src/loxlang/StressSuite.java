@@ -0,0 +1,274 @@
+package loxlang;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+// Feeds random and pathological programs of growing size through scan, parse
+// and execute, and checks that each phase takes time proportional to the input.
+// A phase is flagged when it grows faster than that, when it overflows the
+// stack, or when it got slower per unit than in a stored baseline.
+//
+// Run with: java -Xms1g -Xmx1g loxlang.StressSuite [--baseline file]
+//                [--save-baseline file] [--tolerance 1.5] [shape...]
+// Exits with 1 if anything was flagged. Give it a fixed heap, otherwise the heap
+// growing between sizes shows up as superlinear scanning.
+class StressSuite {
+    // Every shape runs at base, 2 * base, 4 * base and 8 * base.
+    private static final int[] SCALES = {1, 2, 4, 8};
+    private static final int WARMUP = 10;
+    private static final int RUNS = 5;
+    // Growth exponent over which a phase counts as superlinear, loose enough for
+    // timer noise but well short of quadratic
+    private static final double LINEAR = 1.4;
+    private static final double QUADRATIC = 2.4;
+    // Runs faster than this are too noisy to judge growth on
+    private static final long MIN_NANOS = 2_000_000;
+    // Deep nesting recurses in the scanner, parser, resolver and interpreter alike.
+    private static final long STACK = 1L << 30;
+
+    private static final String[] PHASES = {"scan", "parse", "execute"};
+
+    private static final class Shape {
+        final String name;
+        final int base;
+        final IntFunction<String> source;
+        // Growth exponent allowed for execute, above 1 where the language demands it
+        final double execute;
+
+        Shape(String name, int base, IntFunction<String> source, double execute) {
+            this.name = name;
+            this.base = base;
+            this.source = source;
+            this.execute = execute;
+        }
+    }
+
+    private final List<String> flags = new ArrayList<>();
+    // "shape phase" to nanoseconds per unit of size at the largest scale
+    private final Map<String, Double> results = new LinkedHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        String baseline = null;
+        String save = null;
+        double tolerance = 1.5;
+        List<String> only = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--baseline": baseline = args[++i]; break;
+                case "--save-baseline": save = args[++i]; break;
+                case "--tolerance": tolerance = Double.parseDouble(args[++i]); break;
+                default: only.add(args[i]);
+            }
+        }
+
+        StressSuite suite = new StressSuite();
+        Thread thread = new Thread(null, () -> suite.run(only), "stress", STACK);
+        thread.start();
+        thread.join();
+
+        if (baseline != null) {
+            suite.compare(load(Paths.get(baseline)), tolerance);
+        }
+        if (save != null) {
+            suite.save(Paths.get(save));
+        }
+
+        if (suite.flags.isEmpty()) {
+            System.out.println("stress: ok");
+        } else {
+            System.out.println("stress: " + suite.flags.size() + " flagged");
+            for (String flag : suite.flags) {
+                System.out.println("  " + flag);
+            }
+            System.exit(1);
+        }
+    }
+
+    static List<Shape> shapes() {
+        List<Shape> shapes = new ArrayList<>();
+        shapes.add(new Shape("random", 2000, n -> {
+            ProgramGenerator generator = new ProgramGenerator(n);
+            generator.size = n;
+            return generator.generate();
+        }, LINEAR));
+        shapes.add(new Shape("nested-comments", 2000,
+                n -> "/* ".repeat(n) + "x" + " */".repeat(n) + "\nprint 1;\n", LINEAR));
+        shapes.add(new Shape("number-chain", 5000,
+                n -> "print 1" + " + 1".repeat(n) + ";\n", LINEAR));
+        // Every + copies the string built so far, quadratic is the best it can do.
+        shapes.add(new Shape("string-chain", 2000,
+                n -> "print \"a\"" + " + \"a\"".repeat(n) + ";\n", QUADRATIC));
+        shapes.add(new Shape("deep-parens", 2000,
+                n -> "print " + "(".repeat(n) + "1" + ")".repeat(n) + ";\n", LINEAR));
+        shapes.add(new Shape("deep-blocks", 2000,
+                n -> "{ ".repeat(n) + "print 1;" + " }".repeat(n) + "\n", LINEAR));
+        shapes.add(new Shape("huge-block", 5000, n -> {
+            StringBuilder source = new StringBuilder("{\n");
+            for (int i = 0; i < n; i++) {
+                source.append("var x").append(i).append(" = ").append(i).append(";\n");
+            }
+            return source.append("print x0;\n}\n").toString();
+        }, LINEAR));
+        shapes.add(new Shape("many-globals", 5000, n -> {
+            StringBuilder source = new StringBuilder();
+            for (int i = 0; i < n; i++) {
+                source.append("var g").append(i).append(" = ").append(i).append(";\n");
+            }
+            return source.toString();
+        }, LINEAR));
+        shapes.add(new Shape("long-string", 200_000,
+                n -> "print \"" + "a".repeat(n) + "\";\n", LINEAR));
+        shapes.add(new Shape("long-comment", 200_000,
+                n -> "// " + "a".repeat(n) + "\nprint 1;\n", LINEAR));
+        return shapes;
+    }
+
+    private void run(List<String> only) {
+        for (Shape shape : shapes()) {
+            if (!only.isEmpty() && !only.contains(shape.name)) {
+                continue;
+            }
+            try {
+                run(shape);
+            } catch (StackOverflowError e) {
+                flags.add(shape.name + ": stack overflow");
+                System.out.println(shape.name + ": stack overflow");
+            }
+        }
+    }
+
+    private void run(Shape shape) {
+        // Warm up on the largest input, so the small ones aren't timed in the interpreter.
+        int last = SCALES.length - 1;
+        if (measure(shape.name, shape.source.apply(shape.base * SCALES[last]), WARMUP) == null) {
+            return;
+        }
+
+        long[][] nanos = new long[PHASES.length][SCALES.length];
+        for (int s = 0; s < SCALES.length; s++) {
+            int size = shape.base * SCALES[s];
+            String source = shape.source.apply(size);
+            long[] times = measure(shape.name, source, RUNS);
+            if (times == null) {
+                return;
+            }
+            for (int p = 0; p < PHASES.length; p++) {
+                nanos[p][s] = times[p];
+            }
+        }
+
+        for (int p = 0; p < PHASES.length; p++) {
+            double exponent = growth(nanos[p]);
+            double perUnit = (double) nanos[p][last] / (shape.base * SCALES[last]);
+            double allowed = PHASES[p].equals("execute") ? shape.execute : LINEAR;
+            boolean superlinear = exponent > allowed && nanos[p][last] >= MIN_NANOS;
+
+            results.put(shape.name + " " + PHASES[p], perUnit);
+            System.out.println(String.format("%-16s %-8s %10.3f ms  %8.1f ns/unit  growth n^%.2f%s",
+                    shape.name, PHASES[p], nanos[p][last] / 1e6, perUnit, exponent,
+                    superlinear ? "  SUPERLINEAR" : ""));
+            if (superlinear) {
+                flags.add(String.format("%s %s: grows as n^%.2f", shape.name, PHASES[p], exponent));
+            }
+        }
+    }
+
+    // Slope of the least squares line through log(time) against log(size), so one
+    // noisy run doesn't decide the verdict.
+    private static double growth(long[] nanos) {
+        double sumX = 0, sumY = 0, sumXY = 0, sumXX = 0;
+        int n = SCALES.length;
+        for (int s = 0; s < n; s++) {
+            double x = Math.log(SCALES[s]);
+            double y = Math.log(Math.max(1, nanos[s]));
+            sumX += x;
+            sumY += y;
+            sumXY += x * y;
+            sumXX += x * x;
+        }
+        return (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+    }
+
+    // Best of runs times for each phase, or null if the source doesn't run cleanly.
+    private long[] measure(String name, String source, int runs) {
+        PrintStream out = Benchmark.nullOut;
+        ErrorReporter errors = new ErrorReporter(out);
+        Lox.setReporter(errors);
+        try {
+            long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+            for (int i = 0; i < runs; i++) {
+                // Don't charge one run for the garbage of the last.
+                System.gc();
+                long start = System.nanoTime();
+                List<Token> tokens = new Scanner(source).scanTokens();
+                long scanned = System.nanoTime();
+                List<Stmt> statements = new Parser(tokens).parse();
+                if (!errors.hadError) {
+                    new Resolver().resolve(statements);
+                    new TypeInference().infer(statements);
+                }
+                long parsed = System.nanoTime();
+                if (!errors.hadError) {
+                    new Interpreter(out).interpret(statements);
+                }
+                long executed = System.nanoTime();
+
+                if (errors.hadError || errors.hadRuntimeError) {
+                    flags.add(name + ": program failed to run");
+                    System.out.println(name + ": program failed to run");
+                    return null;
+                }
+                best[0] = Math.min(best[0], scanned - start);
+                best[1] = Math.min(best[1], parsed - scanned);
+                best[2] = Math.min(best[2], executed - parsed);
+            }
+            return best;
+        } finally {
+            Lox.clearReporter();
+        }
+    }
+
+    private void compare(Map<String, Double> baseline, double tolerance) {
+        for (Map.Entry<String, Double> entry : results.entrySet()) {
+            Double before = baseline.get(entry.getKey());
+            // Tiny per-unit times are mostly noise.
+            if (before == null || before < 1) {
+                continue;
+            }
+            double ratio = entry.getValue() / before;
+            if (ratio > tolerance) {
+                flags.add(String.format("%s: %.1f ns/unit, baseline %.1f (%.2fx)",
+                        entry.getKey(), entry.getValue(), before, ratio));
+            }
+        }
+    }
+
+    // One "shape phase nanosPerUnit" line per measurement.
+    private static Map<String, Double> load(Path path) throws IOException {
+        Map<String, Double> baseline = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(path)) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length == 3 && !parts[0].startsWith("#")) {
+                baseline.put(parts[0] + " " + parts[1], Double.parseDouble(parts[2]));
+            }
+        }
+        return baseline;
+    }
+
+    private void save(Path path) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# StressSuite baseline: shape phase ns/unit at the largest size");
+        for (Map.Entry<String, Double> entry : results.entrySet()) {
+            lines.add(entry.getKey() + " " + String.format("%.3f", entry.getValue()));
+        }
+        Files.write(path, lines);
+    }
+}
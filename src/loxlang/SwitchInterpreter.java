@@ -0,0 +1,462 @@
+package loxlang;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Interpreter over the record form of the syntax tree. Instead of a visitor it
+// dispatches with an exhaustive switch on the node type, so adding a node type
+// without handling it here is a compile error.
+// Operator semantics come from Interpreter, only the tree walking differs.
+// Records carry no resolver slots, so functions here are plain closures over
+// an Environment, with a return flag like the Interpreter's. resolve() works
+// out how many Environments out each local variable is, so a closure sees the
+// same variable the Interpreter's would even when its block declares the name
+// again later. Classes are plain too, fields in a map instead of the shapes
+// and property caches the Interpreter uses. Spawned tasks and imports run
+// class form trees, so the record form has no nodes for them and RecordAst
+// refuses scripts that use them. Arrays come from natives this one doesn't
+// define, but map literals and indexing work.
+class SwitchInterpreter {
+    final Globals globals = new Globals();
+    private Environment environment = globals;
+    // Environment distance of each local variable use, keyed by identity as
+    // equal records can be different uses. Globals aren't in it.
+    private final Map<ExprRecord, Integer> locals = new IdentityHashMap<>();
+    // Names declared in each scope resolve() is in, innermost last
+    private final List<Set<String>> scopes = new ArrayList<>();
+    private boolean returning = false;
+    private Object returnValue;
+
+    private record Closure(StmtRecord.Function declaration, Environment closure, boolean initializer) {
+        Closure bind(Instance instance) {
+            Environment environment = new Environment(closure);
+            environment.define("this", instance);
+            return new Closure(declaration, environment, initializer);
+        }
+
+        @Override
+        public String toString() {
+            return "<fn " + declaration.name().lexeme + ">";
+        }
+    }
+    private record Klass(String name, Klass superclass, Map<String, Closure> methods) {
+        Closure findMethod(String name) {
+            Closure method = methods.get(name);
+            if (method == null && superclass != null) {
+                return superclass.findMethod(name);
+            }
+            return method;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private record Instance(Klass klass, Map<String, Object> fields) {
+        @Override
+        public String toString() {
+            return klass.name() + " instance";
+        }
+    }
+
+    // Where print statements go
+    private final PrintStream out;
+
+    SwitchInterpreter() {
+        this(System.out);
+    }
+
+    SwitchInterpreter(PrintStream out) {
+        this.out = out;
+    }
+
+    // Must run over the statements before interpret() does.
+    void resolve(List<StmtRecord> statements) {
+        for (StmtRecord statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    // Scopes follow the Environments execute() makes: one for each block, and
+    // one for a function's parameters and body statements together. A
+    // variable is declared after its initializer, a function before its body.
+    private void resolve(StmtRecord stmt) {
+        switch (stmt) {
+            case StmtRecord.Class klass -> {
+                declare(klass.name());
+                if (klass.superclass() != null) {
+                    resolve(klass.superclass());
+                    scopes.add(new HashSet<>(Set.of("super")));
+                }
+                scopes.add(new HashSet<>(Set.of("this")));
+                for (StmtRecord.Function method : klass.methods()) {
+                    resolveFunction(method);
+                }
+                scopes.remove(scopes.size() - 1);
+                if (klass.superclass() != null) {
+                    scopes.remove(scopes.size() - 1);
+                }
+            }
+            case StmtRecord.Error error -> {
+                if (error.partial() != null) {
+                    resolve(error.partial());
+                }
+            }
+            case StmtRecord.Block block -> {
+                scopes.add(new HashSet<>());
+                resolve(block.statements());
+                scopes.remove(scopes.size() - 1);
+            }
+            case StmtRecord.Expression expression -> resolve(expression.expression());
+            case StmtRecord.Function function -> {
+                declare(function.name());
+                resolveFunction(function);
+            }
+            case StmtRecord.If branch -> {
+                resolve(branch.condition());
+                resolve(branch.thenBranch());
+                if (branch.elseBranch() != null) {
+                    resolve(branch.elseBranch());
+                }
+            }
+            case StmtRecord.Print print -> resolve(print.expression());
+            case StmtRecord.Return ret -> {
+                if (ret.value() != null) {
+                    resolve(ret.value());
+                }
+            }
+            case StmtRecord.Var var -> {
+                if (var.initializer() != null) {
+                    resolve(var.initializer());
+                }
+                declare(var.name());
+            }
+            case StmtRecord.While loop -> {
+                resolve(loop.condition());
+                resolve(loop.body());
+                if (loop.increment() != null) {
+                    resolve(loop.increment());
+                }
+            }
+        }
+    }
+
+    private void resolve(ExprRecord expr) {
+        switch (expr) {
+            case ExprRecord.Assign assign -> {
+                resolve(assign.value());
+                resolveLocal(assign, assign.name());
+            }
+            case ExprRecord.Binary binary -> {
+                resolve(binary.left());
+                resolve(binary.right());
+            }
+            case ExprRecord.Call call -> {
+                resolve(call.callee());
+                for (ExprRecord argument : call.arguments()) {
+                    resolve(argument);
+                }
+            }
+            case ExprRecord.Error error -> { }
+            case ExprRecord.Get get -> resolve(get.object());
+            case ExprRecord.Set set -> {
+                resolve(set.object());
+                resolve(set.value());
+            }
+            case ExprRecord.Index index -> {
+                resolve(index.object());
+                resolve(index.index());
+            }
+            case ExprRecord.SetIndex index -> {
+                resolve(index.object());
+                resolve(index.index());
+                resolve(index.value());
+            }
+            case ExprRecord.MapLiteral literal -> {
+                for (int i = 0; i < literal.keys().size(); i++) {
+                    resolve(literal.keys().get(i));
+                    resolve(literal.values().get(i));
+                }
+            }
+            case ExprRecord.Super sup -> resolveLocal(sup, sup.keyword());
+            case ExprRecord.This self -> resolveLocal(self, self.keyword());
+            case ExprRecord.Grouping grouping -> resolve(grouping.expression());
+            case ExprRecord.Literal literal -> { }
+            case ExprRecord.Logical logical -> {
+                resolve(logical.left());
+                resolve(logical.right());
+            }
+            case ExprRecord.Unary unary -> resolve(unary.right());
+            case ExprRecord.Variable variable -> resolveLocal(variable, variable.name());
+        }
+    }
+
+    private void resolveFunction(StmtRecord.Function function) {
+        scopes.add(new HashSet<>());
+        for (Token param : function.params()) {
+            declare(param);
+        }
+        resolve(function.body().statements());
+        scopes.remove(scopes.size() - 1);
+    }
+
+    private void declare(Token name) {
+        if (!scopes.isEmpty()) {
+            scopes.get(scopes.size() - 1).add(name.lexeme);
+        }
+    }
+
+    private void resolveLocal(ExprRecord expr, Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            if (scopes.get(i).contains(name.lexeme)) {
+                locals.put(expr, scopes.size() - 1 - i);
+                return;
+            }
+        }
+    }
+
+    void interpret(List<StmtRecord> statements) {
+        try {
+            for (StmtRecord statement : statements) {
+                execute(statement);
+            }
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    private void execute(StmtRecord stmt) {
+        switch (stmt) {
+            case StmtRecord.Class klass -> executeClass(klass);
+            case StmtRecord.Error error -> throw new RuntimeError(error.token(), "Can't run code with syntax errors.");
+            case StmtRecord.Block block ->
+                    executeBlock(block.statements(), new Environment(environment));
+            case StmtRecord.Expression expression ->
+                    evaluate(expression.expression());
+            case StmtRecord.Function function ->
+                    environment.define(function.name().lexeme, new Closure(function, environment, false));
+            case StmtRecord.If branch -> {
+                if (Interpreter.isTruthy(evaluate(branch.condition()))) {
+                    execute(branch.thenBranch());
+                } else if (branch.elseBranch() != null) {
+                    execute(branch.elseBranch());
+                }
+            }
+            case StmtRecord.Print print ->
+                    out.println(Interpreter.stringify(evaluate(print.expression())));
+            case StmtRecord.Return ret -> {
+                returnValue = ret.value() != null ? evaluate(ret.value()) : null;
+                returning = true;
+            }
+            case StmtRecord.Var var -> {
+                Object value = null;
+                if (var.initializer() != null) {
+                    value = evaluate(var.initializer());
+                }
+                environment.define(var.name().lexeme, value);
+            }
+            case StmtRecord.While loop -> {
+                while (Interpreter.isTruthy(evaluate(loop.condition()))) {
+                    execute(loop.body());
+                    if (returning) {
+                        break;
+                    }
+                    if (loop.increment() != null) {
+                        evaluate(loop.increment());
+                    }
+                }
+            }
+        }
+    }
+
+    private void executeClass(StmtRecord.Class stmt) {
+        Klass superclass = null;
+        if (stmt.superclass() != null) {
+            Object value = evaluate(stmt.superclass());
+            if (!(value instanceof Klass)) {
+                throw new RuntimeError(stmt.superclass().name(), "Superclass must be a class.");
+            }
+            superclass = (Klass)value;
+        }
+
+        Environment previous = environment;
+        try {
+            if (superclass != null) {
+                environment = new Environment(environment);
+                environment.define("super", superclass);
+            }
+            Map<String, Closure> methods = new HashMap<>();
+            for (StmtRecord.Function method : stmt.methods()) {
+                String name = method.name().lexeme;
+                methods.put(name, new Closure(method, environment, name.equals("init")));
+            }
+            previous.define(stmt.name().lexeme, new Klass(stmt.name().lexeme, superclass, methods));
+        } finally {
+            environment = previous;
+        }
+    }
+
+    void executeBlock(List<StmtRecord> statements, Environment environment) {
+        Environment previous = this.environment;
+        try {
+            this.environment = environment;
+
+            for (StmtRecord statement : statements) {
+                execute(statement);
+                if (returning) {
+                    return;
+                }
+            }
+        } finally {
+            this.environment = previous;
+        }
+    }
+
+    private Object evaluate(ExprRecord expr) {
+        return switch (expr) {
+            case ExprRecord.Assign assign -> {
+                Object value = evaluate(assign.value());
+                Integer distance = locals.get(assign);
+                if (distance != null) {
+                    environment.assignAt(distance, assign.name(), value);
+                } else {
+                    globals.assign(assign.name(), value);
+                }
+                yield value;
+            }
+            case ExprRecord.Binary binary -> {
+                Object left = evaluate(binary.left());
+                Object right = evaluate(binary.right());
+                yield Interpreter.binary(binary.operator(), left, right);
+            }
+            case ExprRecord.Call call -> {
+                Object callee = evaluate(call.callee());
+                Object[] arguments = new Object[call.arguments().size()];
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = evaluate(call.arguments().get(i));
+                }
+                yield call(callee, call.paren(), arguments);
+            }
+            case ExprRecord.Error error -> throw new RuntimeError(error.token(), "Can't run code with syntax errors.");
+            case ExprRecord.Get get -> {
+                if (!(evaluate(get.object()) instanceof Instance instance)) {
+                    throw new RuntimeError(get.name(), "Only instances have properties.");
+                }
+                String name = get.name().lexeme;
+                if (instance.fields().containsKey(name)) {
+                    yield instance.fields().get(name);
+                }
+                Closure method = instance.klass().findMethod(name);
+                if (method == null) {
+                    throw new RuntimeError(get.name(), "Undefined property '" + name + "'.");
+                }
+                yield method.bind(instance);
+            }
+            case ExprRecord.Set set -> {
+                if (!(evaluate(set.object()) instanceof Instance instance)) {
+                    throw new RuntimeError(set.name(), "Only instances have fields.");
+                }
+                Object value = evaluate(set.value());
+                instance.fields().put(set.name().lexeme, value);
+                yield value;
+            }
+            case ExprRecord.Index index -> {
+                Object object = Interpreter.indexed(evaluate(index.object()), index.bracket());
+                yield Interpreter.index(object, evaluate(index.index()), index.bracket());
+            }
+            case ExprRecord.SetIndex index -> {
+                Object object = Interpreter.indexed(evaluate(index.object()), index.bracket());
+                Object key = evaluate(index.index());
+                Object value = evaluate(index.value());
+                Interpreter.store(object, key, value, index.bracket());
+                yield value;
+            }
+            case ExprRecord.MapLiteral literal -> {
+                LoxMap map = new LoxMap(literal.keys().size());
+                for (int i = 0; i < literal.keys().size(); i++) {
+                    Object key = evaluate(literal.keys().get(i));
+                    map.put(key, evaluate(literal.values().get(i)));
+                }
+                yield map;
+            }
+            case ExprRecord.Super sup -> {
+                int distance = locals.get(sup);
+                Klass superclass = (Klass)environment.getAt(distance, sup.keyword());
+                // "this" is always one Environment inside "super"
+                Instance instance = (Instance)environment.getAt(distance - 1, thisToken(sup.keyword()));
+                Closure method = superclass.findMethod(sup.method().lexeme);
+                if (method == null) {
+                    throw new RuntimeError(sup.method(),
+                            "Undefined property '" + sup.method().lexeme + "'.");
+                }
+                yield method.bind(instance);
+            }
+            case ExprRecord.This self -> environment.getAt(locals.get(self), self.keyword());
+            case ExprRecord.Grouping grouping -> evaluate(grouping.expression());
+            case ExprRecord.Literal literal -> literal.value();
+            case ExprRecord.Logical logical -> {
+                Object left = evaluate(logical.left());
+                boolean or = logical.operator().type == TokenType.OR;
+                yield Interpreter.isTruthy(left) == or ? left : evaluate(logical.right());
+            }
+            case ExprRecord.Unary unary -> Interpreter.unary(unary.operator(), evaluate(unary.right()));
+            // Records have no slot to cache a global cell in, so globals are looked up by name.
+            case ExprRecord.Variable variable -> {
+                Integer distance = locals.get(variable);
+                yield distance != null
+                        ? environment.getAt(distance, variable.name())
+                        : globals.get(variable.name());
+            }
+        };
+    }
+
+    private static Token thisToken(Token keyword) {
+        return new Token(TokenType.THIS, "this", null, keyword.line);
+    }
+
+    private Object call(Object callee, Token paren, Object[] arguments) {
+        if (callee instanceof Klass klass) {
+            Instance instance = new Instance(klass, new HashMap<>());
+            Closure initializer = klass.findMethod("init");
+            if (initializer != null) {
+                call(initializer.bind(instance), paren, arguments);
+            } else if (arguments.length != 0) {
+                throw new RuntimeError(paren, "Expected 0 arguments but got " + arguments.length + ".");
+            }
+            return instance;
+        }
+        if (!(callee instanceof Closure function)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+        List<Token> params = function.declaration().params();
+        if (arguments.length != params.size()) {
+            throw new RuntimeError(paren, "Expected " + params.size()
+                    + " arguments but got " + arguments.length + ".");
+        }
+
+        Environment environment = new Environment(function.closure());
+        for (int i = 0; i < arguments.length; i++) {
+            environment.define(params.get(i).lexeme, arguments[i]);
+        }
+        try {
+            executeBlock(function.declaration().body().statements(), environment);
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(paren, "Stack overflow.");
+        }
+        Object value = returning ? returnValue : null;
+        returning = false;
+        returnValue = null;
+        if (function.initializer()) {
+            return function.closure().getAt(0, thisToken(paren));
+        }
+        return value;
+    }
+}
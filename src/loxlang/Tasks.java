@@ -0,0 +1,45 @@
+package loxlang;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Tasks spawned by a program, including those spawned by its tasks. The
+// program isn't done until all of them are, virtual threads wouldn't keep
+// the JVM alive on their own.
+final class Tasks {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition done = lock.newCondition();
+    private long running = 0;
+
+    void started() {
+        lock.lock();
+        try {
+            running++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void finished() {
+        lock.lock();
+        try {
+            if (--running == 0) {
+                done.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits until no task is running.
+    void await() {
+        lock.lock();
+        try {
+            while (running > 0) {
+                done.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,645 @@
+package loxlang;
+
+import java.util.List;
+
+// Second execution tier. Every block counts how often it runs in the visitor,
+// and once it passes a threshold it is compiled into a tree of closures that
+// later executions of the block run instead.
+//
+// Compiled code skips the visitor dispatch and the Trace calls, and picks the
+// code for an operator once at compile time rather than switching on it every
+// time. Where TypeInference couldn't prove the operand types of +, the closure
+// speculates on numbers. If that turns out wrong it computes the result the
+// slow way and deoptimizes: the block goes back to the visitor and may be
+// compiled again later, unless it keeps deoptimizing.
+//
+// Conditions of if and while compile to Tests that produce a plain boolean,
+// so comparisons and and/or in them never box their result. Expressions proven
+// to be numbers compile to Nums that produce a plain double, so arithmetic is
+// only boxed where it becomes a Lox value, and stores into arrays not at all.
+//
+// Settings are system properties: lox.tier.threshold is the number of visitor
+// executions before a block is compiled, 0 turns the tier off, and
+// lox.tier.log=true prints every tier transition to stderr.
+class Tier {
+    static int threshold = Integer.getInteger("lox.tier.threshold", 1000);
+    static final boolean LOG = Boolean.getBoolean("lox.tier.log");
+    // Blocks that deoptimized this often stay in the visitor
+    private static final int MAX_DEOPTS = 3;
+
+    interface Code {
+        void run(Interpreter interpreter);
+    }
+
+    interface Value {
+        Object eval(Interpreter interpreter);
+    }
+
+    interface Test {
+        boolean test(Interpreter interpreter);
+    }
+
+    interface Num {
+        double eval(Interpreter interpreter);
+    }
+
+    // Runs the block as compiled code if it is hot enough, returns false if
+    // the visitor has to run it.
+    static boolean run(Interpreter interpreter, Stmt.Block block) {
+        Code code = block.compiled;
+        if (code == null) {
+            if (++block.executions < threshold || block.deopts >= MAX_DEOPTS) {
+                return false;
+            }
+            // A lazy body is parsed by its first run in the visitor.
+            if (block.statements instanceof LazyStatements
+                    && !((LazyStatements)block.statements).isParsed()) {
+                return false;
+            }
+            code = new Compiler(block).block(block);
+            block.compiled = code;
+            if (LOG) {
+                System.err.println("[tier] compiled block at line " + Trace.line(block)
+                        + " after " + block.executions + " executions");
+            }
+        }
+        // Hooks only see nodes the visitor runs.
+        if (Trace.isInstalled()) {
+            return false;
+        }
+        code.run(interpreter);
+        return true;
+    }
+
+    private static void deoptimize(Stmt.Block block, Token at, String reason) {
+        if (block.compiled == null) {
+            return;
+        }
+        block.compiled = null;
+        block.executions = 0;
+        block.deopts++;
+        if (LOG) {
+            System.err.println("[tier] deoptimized block at line " + Trace.line(block) + ": " + reason
+                    + " at line " + at.line + (block.deopts >= MAX_DEOPTS ? ", staying in the visitor" : ""));
+        }
+    }
+
+    // Compiles one hot block. Nested blocks are compiled into it.
+    private static final class Compiler implements Expr.Visitor<Value>, Stmt.Visitor<Code> {
+        // The unit being compiled, deoptimized as a whole
+        private final Stmt.Block unit;
+
+        Compiler(Stmt.Block unit) {
+            this.unit = unit;
+        }
+
+        private Code[] statements(List<Stmt> statements) {
+            Code[] body = new Code[statements.size()];
+            for (int i = 0; i < body.length; i++) {
+                body[i] = statements.get(i).accept(this);
+            }
+            return body;
+        }
+
+        Code block(Stmt.Block block) {
+            // A nested lazy body that never ran isn't worth parsing now.
+            if (block.statements instanceof LazyStatements
+                    && !((LazyStatements)block.statements).isParsed()) {
+                return interpreter -> block.accept(interpreter);
+            }
+            Code[] body = statements(block.statements);
+            // A reusable loop body runs in the scope its loop set up.
+            if (block.framed || block.reusable) {
+                return interpreter -> {
+                    for (Code statement : body) {
+                        statement.run(interpreter);
+                        if (interpreter.returning) {
+                            return;
+                        }
+                    }
+                };
+            }
+            return interpreter -> interpreter.executeCompiled(body, new Environment(interpreter.environment()));
+        }
+
+        @Override
+        public Code visitBlockStmt(Stmt.Block stmt) {
+            return block(stmt);
+        }
+
+        @Override
+        public Code visitClassStmt(Stmt.Class stmt) {
+            // Runs once per declaration, nothing to gain from compiling it.
+            return interpreter -> stmt.accept(interpreter);
+        }
+
+        @Override
+        public Code visitErrorStmt(Stmt.Error stmt) {
+            return interpreter -> stmt.accept(interpreter);
+        }
+
+        @Override
+        public Code visitExpressionStmt(Stmt.Expression stmt) {
+            // Nobody sees the value of the store, a number goes into an array unboxed.
+            if (stmt.expression instanceof Expr.SetIndex && ((Expr.SetIndex)stmt.expression).number) {
+                Expr.SetIndex store = (Expr.SetIndex)stmt.expression;
+                Value object = store.object.accept(this);
+                Value index = store.index.accept(this);
+                Num value = number(store.value);
+                Token bracket = store.bracket;
+                return interpreter -> {
+                    Object target = Interpreter.indexed(object.eval(interpreter), bracket);
+                    Object position = index.eval(interpreter);
+                    if (target instanceof LoxArray) {
+                        ((LoxArray)target).set(position, value.eval(interpreter), bracket);
+                    } else {
+                        ((LoxMap)target).put(position, value.eval(interpreter));
+                    }
+                };
+            }
+            Value expression = stmt.expression.accept(this);
+            return interpreter -> expression.eval(interpreter);
+        }
+
+        @Override
+        public Code visitFunctionStmt(Stmt.Function stmt) {
+            return interpreter -> interpreter.declareFunction(stmt);
+        }
+
+        @Override
+        public Code visitIfStmt(Stmt.If stmt) {
+            Test condition = test(stmt.condition);
+            Code thenBranch = stmt.thenBranch.accept(this);
+            if (stmt.elseBranch == null) {
+                return interpreter -> {
+                    if (condition.test(interpreter)) {
+                        thenBranch.run(interpreter);
+                    }
+                };
+            }
+            Code elseBranch = stmt.elseBranch.accept(this);
+            return interpreter -> {
+                if (condition.test(interpreter)) {
+                    thenBranch.run(interpreter);
+                } else {
+                    elseBranch.run(interpreter);
+                }
+            };
+        }
+
+        @Override
+        public Code visitImportStmt(Stmt.Import stmt) {
+            // Only at the top level, never in a block that gets compiled.
+            return interpreter -> stmt.accept(interpreter);
+        }
+
+        @Override
+        public Code visitPrintStmt(Stmt.Print stmt) {
+            Value expression = stmt.expression.accept(this);
+            return interpreter -> interpreter.print(expression.eval(interpreter));
+        }
+
+        @Override
+        public Code visitReturnStmt(Stmt.Return stmt) {
+            if (stmt.value == null) {
+                return interpreter -> interpreter.returnWith(null);
+            }
+            Value value = stmt.value.accept(this);
+            return interpreter -> interpreter.returnWith(value.eval(interpreter));
+        }
+
+        @Override
+        public Code visitSpawnStmt(Stmt.Spawn stmt) {
+            return interpreter -> interpreter.spawn(stmt);
+        }
+
+        @Override
+        public Code visitVarStmt(Stmt.Var stmt) {
+            String name = stmt.name.lexeme;
+            int slot = stmt.slot;
+            Value initializer = stmt.initializer != null ? stmt.initializer.accept(this) : interpreter -> null;
+            switch (stmt.access) {
+                case Resolver.FRAME:
+                    return interpreter -> interpreter.stack[interpreter.base + slot] = initializer.eval(interpreter);
+                case Resolver.BOX:
+                    return interpreter -> interpreter.stack[interpreter.base + slot]
+                            = new LoxFunction.Box(initializer.eval(interpreter));
+            }
+            return interpreter -> interpreter.environment().define(name, initializer.eval(interpreter));
+        }
+
+        @Override
+        public Code visitWhileStmt(Stmt.While stmt) {
+            Test condition = test(stmt.condition);
+            Value increment = stmt.increment != null ? stmt.increment.accept(this) : interpreter -> null;
+
+            // Reusable bodies are never lazy, the resolver saw all of them.
+            if (stmt.body instanceof Stmt.Block && ((Stmt.Block)stmt.body).reusable) {
+                Code[] body = statements(((Stmt.Block)stmt.body).statements);
+                return interpreter -> {
+                    Environment scope = new Environment(interpreter.environment());
+                    while (condition.test(interpreter)) {
+                        scope.clear();
+                        interpreter.executeCompiled(body, scope);
+                        if (interpreter.returning) {
+                            return;
+                        }
+                        increment.eval(interpreter);
+                    }
+                };
+            }
+
+            Code body = stmt.body.accept(this);
+            return interpreter -> {
+                while (condition.test(interpreter)) {
+                    body.run(interpreter);
+                    if (interpreter.returning) {
+                        return;
+                    }
+                    increment.eval(interpreter);
+                }
+            };
+        }
+
+        // Compiles a condition to a Test, without going through a boxed
+        // Boolean where the operand types are known.
+        private Test test(Expr condition) {
+            if (condition instanceof Expr.Grouping) {
+                return test(((Expr.Grouping)condition).expression);
+            }
+            if (condition instanceof Expr.Logical) {
+                Expr.Logical logical = (Expr.Logical)condition;
+                Test left = test(logical.left);
+                Test right = test(logical.right);
+                if (logical.operator.type == TokenType.OR) {
+                    return interpreter -> left.test(interpreter) || right.test(interpreter);
+                }
+                return interpreter -> left.test(interpreter) && right.test(interpreter);
+            }
+            if (condition instanceof Expr.Unary && ((Expr.Unary)condition).operator.type == TokenType.BANG) {
+                Test right = test(((Expr.Unary)condition).right);
+                return interpreter -> !right.test(interpreter);
+            }
+            if (condition instanceof Expr.Binary && ((Expr.Binary)condition).numbers) {
+                Expr.Binary binary = (Expr.Binary)condition;
+                Test comparison = comparison(binary.operator, binary.left, binary.right);
+                if (comparison != null) {
+                    return comparison;
+                }
+            }
+            Value value = condition.accept(this);
+            return interpreter -> Interpreter.isTruthy(value.eval(interpreter));
+        }
+
+        private Test comparison(Token operator, Expr leftOperand, Expr rightOperand) {
+            switch (operator.type) {
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                    break;
+                default:
+                    return null;
+            }
+            Num left = number(leftOperand);
+            Num right = number(rightOperand);
+            switch (operator.type) {
+                case GREATER:
+                    return interpreter -> left.eval(interpreter) > right.eval(interpreter);
+                case GREATER_EQUAL:
+                    return interpreter -> left.eval(interpreter) >= right.eval(interpreter);
+                case LESS:
+                    return interpreter -> left.eval(interpreter) < right.eval(interpreter);
+                default:
+                    return interpreter -> left.eval(interpreter) <= right.eval(interpreter);
+            }
+        }
+
+        // Compiles an expression proven to be a number to a Num. Nothing in
+        // it is boxed, only the caller boxes the result if it needs a value.
+        private Num number(Expr expr) {
+            if (expr instanceof Expr.Grouping) {
+                return number(((Expr.Grouping)expr).expression);
+            }
+            if (expr instanceof Expr.Literal) {
+                double value = (double)((Expr.Literal)expr).value;
+                return interpreter -> value;
+            }
+            if (expr instanceof Expr.Unary && ((Expr.Unary)expr).number) {
+                Num right = number(((Expr.Unary)expr).right);
+                return interpreter -> -right.eval(interpreter);
+            }
+            if (expr instanceof Expr.Binary && ((Expr.Binary)expr).numbers) {
+                Expr.Binary binary = (Expr.Binary)expr;
+                Token operator = binary.operator;
+                switch (operator.type) {
+                    case MINUS:
+                    case PLUS:
+                    case STAR:
+                    case SLASH:
+                        return arithmetic(operator, number(binary.left), number(binary.right));
+                }
+            }
+            Value value = expr.accept(this);
+            return interpreter -> (double)value.eval(interpreter);
+        }
+
+        private static Num arithmetic(Token operator, Num left, Num right) {
+            switch (operator.type) {
+                case MINUS:
+                    return interpreter -> left.eval(interpreter) - right.eval(interpreter);
+                case PLUS:
+                    return interpreter -> left.eval(interpreter) + right.eval(interpreter);
+                case STAR:
+                    return interpreter -> left.eval(interpreter) * right.eval(interpreter);
+                default:
+                    return interpreter -> {
+                        double dividend = left.eval(interpreter);
+                        double divisor = right.eval(interpreter);
+                        if (divisor == 0) {
+                            throw new RuntimeError(operator, "Cannot divide by zero");
+                        }
+                        return dividend / divisor;
+                    };
+            }
+        }
+
+        @Override
+        public Value visitAssignExpr(Expr.Assign expr) {
+            Value value = expr.value.accept(this);
+            Token name = expr.name;
+            if (expr.global) {
+                Global global = new Global(name);
+                return interpreter -> {
+                    Object result = value.eval(interpreter);
+                    global.cell(interpreter).value = result;
+                    return result;
+                };
+            }
+            int slot = expr.slot;
+            switch (expr.access) {
+                case Resolver.FRAME:
+                    return interpreter -> interpreter.stack[interpreter.base + slot] = value.eval(interpreter);
+                case Resolver.BOX:
+                    return interpreter -> {
+                        Object result = value.eval(interpreter);
+                        ((LoxFunction.Box)interpreter.stack[interpreter.base + slot]).value = result;
+                        return result;
+                    };
+                case Resolver.UPVALUE:
+                    return interpreter -> interpreter.upvalues[slot].value = value.eval(interpreter);
+            }
+            return interpreter -> {
+                Object result = value.eval(interpreter);
+                interpreter.environment().assignAt(slot, name, result);
+                return result;
+            };
+        }
+
+        @Override
+        public Value visitBinaryExpr(Expr.Binary expr) {
+            if (expr.numbers) {
+                return numbers(expr);
+            }
+            Value left = expr.left.accept(this);
+            Value right = expr.right.accept(this);
+            Token operator = expr.operator;
+
+            if (expr.strings) {
+                return interpreter -> (String)left.eval(interpreter) + (String)right.eval(interpreter);
+            }
+            if (operator.type == TokenType.PLUS) {
+                return interpreter -> {
+                    Object a = left.eval(interpreter);
+                    Object b = right.eval(interpreter);
+                    if (a instanceof Double && b instanceof Double) {
+                        return (double)a + (double)b;
+                    }
+                    deoptimize(unit, operator, "+ on operands that aren't both numbers");
+                    return Interpreter.binary(operator, a, b);
+                };
+            }
+            return interpreter -> Interpreter.binary(operator, left.eval(interpreter), right.eval(interpreter));
+        }
+
+        // Operands proven to be numbers, the result is boxed once.
+        private Value numbers(Expr.Binary expr) {
+            Token operator = expr.operator;
+            Test comparison = comparison(operator, expr.left, expr.right);
+            if (comparison != null) {
+                return interpreter -> comparison.test(interpreter);
+            }
+            if (operator.type == TokenType.BANG_EQUAL || operator.type == TokenType.EQUAL_EQUAL) {
+                Num left = number(expr.left);
+                Num right = number(expr.right);
+                return interpreter -> Interpreter.numbers(operator, left.eval(interpreter), right.eval(interpreter));
+            }
+            Num result = number(expr);
+            return interpreter -> result.eval(interpreter);
+        }
+
+        @Override
+        public Value visitCallExpr(Expr.Call expr) {
+            Value[] arguments = new Value[expr.arguments.size()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = expr.arguments.get(i).accept(this);
+            }
+            Token paren = expr.paren;
+            if (expr.callee instanceof Expr.Get) {
+                return invoke((Expr.Get)expr.callee, arguments, paren);
+            }
+
+            Value callee = expr.callee.accept(this);
+            return interpreter -> {
+                Object function = callee.eval(interpreter);
+                int base = interpreter.top;
+                for (Value argument : arguments) {
+                    interpreter.push(argument.eval(interpreter));
+                }
+                return interpreter.call(function, paren, base);
+            };
+        }
+
+        // A method call, without binding the method first.
+        private Value invoke(Expr.Get get, Value[] arguments, Token paren) {
+            Value object = get.object.accept(this);
+            Token name = get.name;
+            PropertyCache cache = get.cache;
+            return interpreter -> {
+                Object instance = object.eval(interpreter);
+                PropertyCache.Entry entry = interpreter.method(instance, name, cache);
+                Object field = entry.method == null ? ((LoxInstance)instance).fields[entry.slot] : null;
+                int base = interpreter.top;
+                for (Value argument : arguments) {
+                    interpreter.push(argument.eval(interpreter));
+                }
+                if (entry.method == null) {
+                    return interpreter.call(field, paren, base);
+                }
+                return interpreter.invoke(entry.method, (LoxInstance)instance, paren, base);
+            };
+        }
+
+        @Override
+        public Value visitErrorExpr(Expr.Error expr) {
+            return interpreter -> expr.accept(interpreter);
+        }
+
+        @Override
+        public Value visitGetExpr(Expr.Get expr) {
+            Value object = expr.object.accept(this);
+            Token name = expr.name;
+            PropertyCache cache = expr.cache;
+            return interpreter -> interpreter.getProperty(object.eval(interpreter), name, cache);
+        }
+
+        @Override
+        public Value visitGroupingExpr(Expr.Grouping expr) {
+            return expr.expression.accept(this);
+        }
+
+        @Override
+        public Value visitIndexExpr(Expr.Index expr) {
+            Value object = expr.object.accept(this);
+            Value index = expr.index.accept(this);
+            Token bracket = expr.bracket;
+            return interpreter -> {
+                Object target = Interpreter.indexed(object.eval(interpreter), bracket);
+                return Interpreter.index(target, index.eval(interpreter), bracket);
+            };
+        }
+
+        @Override
+        public Value visitLiteralExpr(Expr.Literal expr) {
+            Object value = expr.value;
+            return interpreter -> value;
+        }
+
+        @Override
+        public Value visitLogicalExpr(Expr.Logical expr) {
+            Value left = expr.left.accept(this);
+            Value right = expr.right.accept(this);
+            if (expr.operator.type == TokenType.OR) {
+                return interpreter -> {
+                    Object value = left.eval(interpreter);
+                    return Interpreter.isTruthy(value) ? value : right.eval(interpreter);
+                };
+            }
+            return interpreter -> {
+                Object value = left.eval(interpreter);
+                return Interpreter.isTruthy(value) ? right.eval(interpreter) : value;
+            };
+        }
+
+        @Override
+        public Value visitMapLiteralExpr(Expr.MapLiteral expr) {
+            Value[] keys = new Value[expr.keys.size()];
+            Value[] values = new Value[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = expr.keys.get(i).accept(this);
+                values[i] = expr.values.get(i).accept(this);
+            }
+            return interpreter -> {
+                LoxMap map = new LoxMap(keys.length);
+                for (int i = 0; i < keys.length; i++) {
+                    Object key = keys[i].eval(interpreter);
+                    map.put(key, values[i].eval(interpreter));
+                }
+                return map;
+            };
+        }
+
+        @Override
+        public Value visitSetExpr(Expr.Set expr) {
+            Value object = expr.object.accept(this);
+            Value value = expr.value.accept(this);
+            Token name = expr.name;
+            PropertyCache cache = expr.cache;
+            return interpreter -> {
+                Object instance = object.eval(interpreter);
+                if (!(instance instanceof LoxInstance)) {
+                    throw new RuntimeError(name, "Only instances have fields.");
+                }
+                return interpreter.setProperty((LoxInstance)instance, name, cache, value.eval(interpreter));
+            };
+        }
+
+        @Override
+        public Value visitSetIndexExpr(Expr.SetIndex expr) {
+            Value object = expr.object.accept(this);
+            Value index = expr.index.accept(this);
+            Value value = expr.value.accept(this);
+            Token bracket = expr.bracket;
+            return interpreter -> {
+                Object target = Interpreter.indexed(object.eval(interpreter), bracket);
+                Object position = index.eval(interpreter);
+                Object result = value.eval(interpreter);
+                Interpreter.store(target, position, result, bracket);
+                return result;
+            };
+        }
+
+        @Override
+        public Value visitSuperExpr(Expr.Super expr) {
+            return interpreter -> expr.accept(interpreter);
+        }
+
+        @Override
+        public Value visitThisExpr(Expr.This expr) {
+            return interpreter -> interpreter.receiver;
+        }
+
+        @Override
+        public Value visitUnaryExpr(Expr.Unary expr) {
+            if (expr.number) {
+                Num number = number(expr);
+                return interpreter -> number.eval(interpreter);
+            }
+            Value right = expr.right.accept(this);
+            Token operator = expr.operator;
+            if (operator.type == TokenType.BANG) {
+                return interpreter -> !Interpreter.isTruthy(right.eval(interpreter));
+            }
+            return interpreter -> Interpreter.unary(operator, right.eval(interpreter));
+        }
+
+        @Override
+        public Value visitVariableExpr(Expr.Variable expr) {
+            Token name = expr.name;
+            if (expr.global) {
+                Global global = new Global(name);
+                return interpreter -> global.cell(interpreter).value;
+            }
+            int slot = expr.slot;
+            switch (expr.access) {
+                case Resolver.FRAME:
+                    return interpreter -> interpreter.stack[interpreter.base + slot];
+                case Resolver.BOX:
+                    return interpreter -> ((LoxFunction.Box)interpreter.stack[interpreter.base + slot]).value;
+                case Resolver.UPVALUE:
+                    return interpreter -> interpreter.upvalues[slot].value;
+            }
+            return interpreter -> interpreter.environment().getAt(slot, name);
+        }
+    }
+
+    // Global site with its own cached cell, like the cell slot on the tree nodes.
+    private static final class Global {
+        private final Token name;
+        private Globals.Cell cell;
+
+        Global(Token name) {
+            this.name = name;
+        }
+
+        Globals.Cell cell(Interpreter interpreter) {
+            Globals.Cell cached = cell;
+            // Compiled code may be shared between interpreters.
+            if (cached == null || cached.owner != interpreter.globals) {
+                cached = interpreter.globals.cell(name);
+                cell = cached;
+            }
+            return cached;
+        }
+    }
+}
@@ -6,12 +6,18 @@ class Token {
     final String lexeme;  // Pieced together lexeme
     final Object literal; // An object!!..?
     final int line;       // The line it is on
+    final int offset;     // Where the lexeme starts in the source, -1 if it has none
 
     Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line, -1);
+    }
+
+    Token(TokenType type, String lexeme, Object literal, int line, int offset) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.offset = offset;
     }
 
     public String toString() {
@@ -0,0 +1,294 @@
+package loxlang;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.List;
+
+// Debug and trace hooks for the tree-walking Interpreter, switched on and off
+// at runtime from any thread.
+//
+// The interpreter calls statement() and expression() for every node, but these
+// go through call sites whose target is a no-op while no hooks are installed.
+// The JIT treats the target as a constant and compiles the call away, so with
+// no hooks there is nothing left to check per node. Installing or removing
+// hooks swaps the targets, which throws away the compiled code that depended
+// on the old ones, the same way a SwitchPoint does.
+class Trace {
+    // Callbacks get the node and its line, -1 for nodes that carry no token.
+    // They may throw to stop the program, a RuntimeError is reported as usual.
+    interface Hooks {
+        default void onStatement(Stmt stmt, int line) {
+        }
+
+        default void onExpression(Expr expr, int line) {
+        }
+
+        default void onRuntimeError(RuntimeError error, int line) {
+        }
+    }
+
+    private static final MethodType STATEMENT_TYPE = MethodType.methodType(void.class, Stmt.class);
+    private static final MethodType EXPRESSION_TYPE = MethodType.methodType(void.class, Expr.class);
+
+    private static final MutableCallSite statementSite = new MutableCallSite(MethodHandles.empty(STATEMENT_TYPE));
+    private static final MutableCallSite expressionSite = new MutableCallSite(MethodHandles.empty(EXPRESSION_TYPE));
+    private static final MethodHandle STATEMENT = statementSite.dynamicInvoker();
+    private static final MethodHandle EXPRESSION = expressionSite.dynamicInvoker();
+
+    private static final MethodHandle ON_STATEMENT;
+    private static final MethodHandle ON_EXPRESSION;
+
+    private static volatile Hooks hooks;
+    private static final Lines lines = new Lines();
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            ON_STATEMENT = lookup.findStatic(Trace.class, "onStatement", STATEMENT_TYPE);
+            ON_EXPRESSION = lookup.findStatic(Trace.class, "onExpression", EXPRESSION_TYPE);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Installs hooks for every interpreter in the process, replacing any others.
+    static synchronized void install(Hooks installed) {
+        hooks = installed;
+        statementSite.setTarget(ON_STATEMENT);
+        expressionSite.setTarget(ON_EXPRESSION);
+        MutableCallSite.syncAll(new MutableCallSite[] {statementSite, expressionSite});
+    }
+
+    static synchronized void remove() {
+        statementSite.setTarget(MethodHandles.empty(STATEMENT_TYPE));
+        expressionSite.setTarget(MethodHandles.empty(EXPRESSION_TYPE));
+        MutableCallSite.syncAll(new MutableCallSite[] {statementSite, expressionSite});
+        hooks = null;
+    }
+
+    static boolean isInstalled() {
+        return hooks != null;
+    }
+
+    // Called by the interpreter before it executes stmt.
+    static void statement(Stmt stmt) {
+        try {
+            STATEMENT.invokeExact(stmt);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Called by the interpreter before it evaluates expr.
+    static void expression(Expr expr) {
+        try {
+            EXPRESSION.invokeExact(expr);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Not on the hot path, a plain check is fine here.
+    static void runtimeError(RuntimeError error) {
+        Hooks current = hooks;
+        if (current != null) {
+            current.onRuntimeError(error, error.token != null ? error.token.line : -1);
+        }
+    }
+
+    private static void onStatement(Stmt stmt) {
+        // Hooks may have been removed since the target was read.
+        Hooks current = hooks;
+        if (current != null) {
+            current.onStatement(stmt, stmt.accept(lines));
+        }
+    }
+
+    private static void onExpression(Expr expr) {
+        Hooks current = hooks;
+        if (current != null) {
+            current.onExpression(expr, expr.accept(lines));
+        }
+    }
+
+    // Line of the first token in stmt, -1 if it has none.
+    static int line(Stmt stmt) {
+        return stmt.accept(lines);
+    }
+
+    // Hooks that print every statement to err as it runs, for --trace.
+    static Hooks printer(PrintStream err) {
+        return new Hooks() {
+            @Override
+            public void onStatement(Stmt stmt, int line) {
+                err.println("[line " + line + "] " + stmt.getClass().getSimpleName());
+            }
+
+            @Override
+            public void onRuntimeError(RuntimeError error, int line) {
+                err.println("[line " + line + "] runtime error: " + error.getMessage());
+            }
+        };
+    }
+
+    // Line of the first token in a node, -1 if it has none. Only used while
+    // tracing, so walking the subtree is fine.
+    private static final class Lines implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+        private static int first(int a, int b) {
+            return a >= 0 ? a : b;
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            return expr.name.line;
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            return first(expr.left.accept(this), expr.operator.line);
+        }
+
+        @Override
+        public Integer visitCallExpr(Expr.Call expr) {
+            return first(expr.callee.accept(this), expr.paren.line);
+        }
+
+        @Override
+        public Integer visitErrorExpr(Expr.Error expr) {
+            return expr.token.line;
+        }
+
+        @Override
+        public Integer visitGetExpr(Expr.Get expr) {
+            return first(expr.object.accept(this), expr.name.line);
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            return expr.expression.accept(this);
+        }
+
+        @Override
+        public Integer visitIndexExpr(Expr.Index expr) {
+            return first(expr.object.accept(this), expr.bracket.line);
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            return -1;
+        }
+
+        @Override
+        public Integer visitLogicalExpr(Expr.Logical expr) {
+            return first(expr.left.accept(this), expr.operator.line);
+        }
+
+        @Override
+        public Integer visitMapLiteralExpr(Expr.MapLiteral expr) {
+            return expr.brace.line;
+        }
+
+        @Override
+        public Integer visitSetExpr(Expr.Set expr) {
+            return first(expr.object.accept(this), expr.name.line);
+        }
+
+        @Override
+        public Integer visitSetIndexExpr(Expr.SetIndex expr) {
+            return first(expr.object.accept(this), expr.bracket.line);
+        }
+
+        @Override
+        public Integer visitSuperExpr(Expr.Super expr) {
+            return expr.keyword.line;
+        }
+
+        @Override
+        public Integer visitThisExpr(Expr.This expr) {
+            return expr.keyword.line;
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            return expr.operator.line;
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            return expr.name.line;
+        }
+
+        @Override
+        public Integer visitBlockStmt(Stmt.Block stmt) {
+            // Don't force a lazy body to be parsed just for its line.
+            if (stmt.statements instanceof LazyStatements
+                    && !((LazyStatements)stmt.statements).isParsed()) {
+                return -1;
+            }
+            List<Stmt> statements = stmt.statements;
+            return statements.isEmpty() || statements.get(0) == null ? -1 : statements.get(0).accept(this);
+        }
+
+        @Override
+        public Integer visitClassStmt(Stmt.Class stmt) {
+            return stmt.name.line;
+        }
+
+        @Override
+        public Integer visitErrorStmt(Stmt.Error stmt) {
+            return stmt.token.line;
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.Expression stmt) {
+            return stmt.expression.accept(this);
+        }
+
+        @Override
+        public Integer visitFunctionStmt(Stmt.Function stmt) {
+            return stmt.name.line;
+        }
+
+        @Override
+        public Integer visitIfStmt(Stmt.If stmt) {
+            return stmt.condition.accept(this);
+        }
+
+        @Override
+        public Integer visitImportStmt(Stmt.Import stmt) {
+            return stmt.keyword.line;
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.Print stmt) {
+            return stmt.expression.accept(this);
+        }
+
+        @Override
+        public Integer visitReturnStmt(Stmt.Return stmt) {
+            return stmt.keyword.line;
+        }
+
+        @Override
+        public Integer visitSpawnStmt(Stmt.Spawn stmt) {
+            return stmt.keyword.line;
+        }
+
+        @Override
+        public Integer visitVarStmt(Stmt.Var stmt) {
+            return stmt.name.line;
+        }
+
+        @Override
+        public Integer visitWhileStmt(Stmt.While stmt) {
+            return stmt.condition.accept(this);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package loxlang;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+// Flow sensitive pass that works out which expressions are definitely numbers or
+// definitely strings, and marks the operators whose operand types are proven so
+// the interpreter can skip its runtime checks.
+//
+// Statements are followed in execution order, so a variable's type is that of
+// the last value stored in it. A runtime error ends the program, so an
+// operation that would fail never feeds a wrong type into later code. Anything
+// not proven is UNKNOWN and keeps the checked path. Globals defined outside the
+// program (earlier REPL lines, snapshots) are UNKNOWN.
+//
+// Where paths join, after an if or and/or, a variable keeps its type only if
+// it has it on every path. Loop bodies are inferred until the types at the
+// loop head stop changing, so the flags left on the nodes hold for every
+// iteration.
+//
+// A function body can run whenever it is called, so it is inferred on its own
+// with every outer variable UNKNOWN, and a call may have assigned anything.
+class TypeInference implements Expr.Visitor<TypeInference.Type>, Stmt.Visitor<Void> {
+    enum Type { NUMBER, STRING, UNKNOWN }
+
+    // Variable types, globals at the bottom and one map per enclosing block.
+    private Stack<Map<String, Type>> scopes = new Stack<>();
+
+    TypeInference() {
+        scopes.push(new HashMap<>());
+    }
+
+    // May be called again for statements that run right after the previous
+    // ones; global types carry over.
+    void infer(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            infer(statement);
+        }
+    }
+
+    private void infer(Stmt stmt) {
+        if (stmt != null) {
+            stmt.accept(this);
+        }
+    }
+
+    private Type infer(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Type lookUp(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Type type = scopes.get(i).get(name.lexeme);
+            if (type != null) {
+                return type;
+            }
+        }
+        return Type.UNKNOWN;
+    }
+
+    private void store(Token name, Type type) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            if (scopes.get(i).containsKey(name.lexeme)) {
+                scopes.get(i).put(name.lexeme, type);
+                return;
+            }
+        }
+        // Assigning a global defined outside the program.
+        scopes.get(0).put(name.lexeme, type);
+    }
+
+    private Stack<Map<String, Type>> copy() {
+        Stack<Map<String, Type>> copy = new Stack<>();
+        for (Map<String, Type> scope : scopes) {
+            copy.push(new HashMap<>(scope));
+        }
+        return copy;
+    }
+
+    // Joins the types of another path into into, returns whether into changed.
+    // Both paths are at the same block depth.
+    private static boolean join(Stack<Map<String, Type>> into, Stack<Map<String, Type>> other) {
+        boolean changed = false;
+        for (int i = 0; i < into.size(); i++) {
+            Map<String, Type> scope = into.get(i);
+            Map<String, Type> path = other.get(i);
+            for (Map.Entry<String, Type> entry : scope.entrySet()) {
+                if (entry.getValue() != Type.UNKNOWN && entry.getValue() != path.get(entry.getKey())) {
+                    entry.setValue(Type.UNKNOWN);
+                    changed = true;
+                }
+            }
+            for (String name : path.keySet()) {
+                if (!scope.containsKey(name)) {
+                    scope.put(name, Type.UNKNOWN);
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    // Code we can't see could have assigned anything.
+    private void forgetAll() {
+        for (Map<String, Type> scope : scopes) {
+            scope.replaceAll((name, type) -> Type.UNKNOWN);
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        // Not parsed yet, we don't know what it assigns.
+        if (stmt.statements instanceof LazyStatements
+                && !((LazyStatements)stmt.statements).isParsed()) {
+            forgetAll();
+            return null;
+        }
+
+        scopes.push(new HashMap<>());
+        infer(stmt.statements);
+        scopes.pop();
+        return null;
+    }
+
+    @Override
+    public Void visitErrorStmt(Stmt.Error stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        infer(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        scopes.peek().put(stmt.name.lexeme, Type.UNKNOWN);
+        inferFunction(stmt);
+        return null;
+    }
+
+    private void inferFunction(Stmt.Function stmt) {
+        Stack<Map<String, Type>> enclosing = scopes;
+        scopes = new Stack<>();
+        scopes.push(new HashMap<>());
+        Map<String, Type> params = new HashMap<>();
+        for (Token param : stmt.params) {
+            params.put(param.lexeme, Type.UNKNOWN);
+        }
+        scopes.push(params);
+        infer(stmt.body);
+        scopes = enclosing;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        if (stmt.superclass != null) {
+            infer(stmt.superclass);
+        }
+        scopes.peek().put(stmt.name.lexeme, Type.UNKNOWN);
+        for (Stmt.Function method : stmt.methods) {
+            inferFunction(method);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        infer(stmt.condition);
+        Stack<Map<String, Type>> otherwise = copy();
+        infer(stmt.thenBranch);
+        Stack<Map<String, Type>> then = scopes;
+        scopes = otherwise;
+        infer(stmt.elseBranch);
+        join(scopes, then);
+        return null;
+    }
+
+    // The module may have assigned any global.
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        forgetAll();
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        infer(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) {
+            infer(stmt.value);
+        }
+        return null;
+    }
+
+    // Like a function body, the task sees copies of whatever its spawner had.
+    @Override
+    public Void visitSpawnStmt(Stmt.Spawn stmt) {
+        Stack<Map<String, Type>> enclosing = scopes;
+        scopes = new Stack<>();
+        scopes.push(new HashMap<>());
+        infer(stmt.body);
+        scopes = enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        Type type = Type.UNKNOWN;
+        if (stmt.initializer != null) {
+            type = infer(stmt.initializer);
+        }
+        scopes.peek().put(stmt.name.lexeme, type);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        for (;;) {
+            Stack<Map<String, Type>> head = copy();
+            infer(stmt.condition);
+            Stack<Map<String, Type>> exit = copy();
+            infer(stmt.body);
+            if (stmt.increment != null) {
+                infer(stmt.increment);
+            }
+            // Another iteration starts with what this one left behind.
+            if (!join(head, scopes)) {
+                scopes = exit;
+                return null;
+            }
+            scopes = head;
+        }
+    }
+
+    @Override
+    public Type visitAssignExpr(Expr.Assign expr) {
+        Type type = infer(expr.value);
+        store(expr.name, type);
+        return type;
+    }
+
+    @Override
+    public Type visitBinaryExpr(Expr.Binary expr) {
+        Type left = infer(expr.left);
+        Type right = infer(expr.right);
+        expr.numbers = left == Type.NUMBER && right == Type.NUMBER;
+        expr.strings = false;
+
+        switch (expr.operator.type) {
+            // These either produce a number or throw.
+            case MINUS:
+            case SLASH:
+            case STAR:
+                return Type.NUMBER;
+            case PLUS:
+                if (expr.numbers) {
+                    return Type.NUMBER;
+                }
+                expr.strings = left == Type.STRING && right == Type.STRING;
+                // With one string operand the result is a string or an error.
+                if (left == Type.STRING || right == Type.STRING) {
+                    return Type.STRING;
+                }
+                return Type.UNKNOWN;
+        }
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitCallExpr(Expr.Call expr) {
+        infer(expr.callee);
+        for (Expr argument : expr.arguments) {
+            infer(argument);
+        }
+        forgetAll();
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitErrorExpr(Expr.Error expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitGetExpr(Expr.Get expr) {
+        infer(expr.object);
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitGroupingExpr(Expr.Grouping expr) {
+        return infer(expr.expression);
+    }
+
+    @Override
+    public Type visitIndexExpr(Expr.Index expr) {
+        infer(expr.object);
+        infer(expr.index);
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value instanceof Double) {
+            return Type.NUMBER;
+        }
+        if (expr.value instanceof String) {
+            return Type.STRING;
+        }
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitLogicalExpr(Expr.Logical expr) {
+        Type left = infer(expr.left);
+        Stack<Map<String, Type>> skipped = copy();
+        Type right = infer(expr.right);
+        join(scopes, skipped);
+        // The result is one of the operands.
+        return left == right ? left : Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitMapLiteralExpr(Expr.MapLiteral expr) {
+        for (int i = 0; i < expr.keys.size(); i++) {
+            infer(expr.keys.get(i));
+            infer(expr.values.get(i));
+        }
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitSetExpr(Expr.Set expr) {
+        infer(expr.object);
+        return infer(expr.value);
+    }
+
+    @Override
+    public Type visitSetIndexExpr(Expr.SetIndex expr) {
+        infer(expr.object);
+        infer(expr.index);
+        Type value = infer(expr.value);
+        expr.number = value == Type.NUMBER;
+        return value;
+    }
+
+    @Override
+    public Type visitSuperExpr(Expr.Super expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitThisExpr(Expr.This expr) {
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitUnaryExpr(Expr.Unary expr) {
+        Type right = infer(expr.right);
+        if (expr.operator.type == TokenType.MINUS) {
+            expr.number = right == Type.NUMBER;
+            return Type.NUMBER;
+        }
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitVariableExpr(Expr.Variable expr) {
+        return lookUp(expr.name);
+    }
+}
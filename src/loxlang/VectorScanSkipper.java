@@ -0,0 +1,66 @@
+package loxlang;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+// ScanSkipper comparing a whole vector of chars at a time. Chars are loaded as
+// shorts, the tail shorter than one vector is done one char at a time.
+final class VectorScanSkipper extends ScanSkipper {
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int LENGTH = SPECIES.length();
+
+    @Override
+    int skipWhitespace(char[] source, int from, int to) {
+        int i = from;
+        for (; i + LENGTH <= to; i += LENGTH) {
+            ShortVector chars = ShortVector.fromCharArray(SPECIES, source, i);
+            VectorMask<Short> whitespace = chars.eq((short) ' ')
+                    .or(chars.eq((short) '\r'))
+                    .or(chars.eq((short) '\t'))
+                    .or(chars.eq((short) '\n'));
+            if (!whitespace.allTrue()) {
+                return i + whitespace.not().firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            char c = source[i];
+            if (c != ' ' && c != '\r' && c != '\t' && c != '\n') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    @Override
+    int indexOf(char[] source, char c, int from, int to) {
+        int i = from;
+        for (; i + LENGTH <= to; i += LENGTH) {
+            VectorMask<Short> found = ShortVector.fromCharArray(SPECIES, source, i).eq((short) c);
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (source[i] == c) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    @Override
+    int countNewlines(char[] source, int from, int to) {
+        int count = 0;
+        int i = from;
+        for (; i + LENGTH <= to; i += LENGTH) {
+            count += ShortVector.fromCharArray(SPECIES, source, i).eq((short) '\n').trueCount();
+        }
+        for (; i < to; i++) {
+            if (source[i] == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
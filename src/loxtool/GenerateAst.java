@@ -12,21 +12,52 @@ public class GenerateAst {
             System.exit(64);
         }
         String outputDir = args[0];
-        defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign   : Token name, Expr value",
-                "Binary   : Expr left, Token operator, Expr right",
+        List<String> exprTypes = Arrays.asList(
+                "Assign   : Token name, Expr value | boolean global, Globals.Cell cell, int access, int slot",
+                "Binary   : Expr left, Token operator, Expr right | boolean numbers, boolean strings",
+                "Call     : Expr callee, Token paren, List<Expr> arguments",
+                "Error    : Token token",
+                "Get      : Expr object, Token name | PropertyCache cache",
                 "Grouping : Expr expression",
+                "Index    : Expr object, Token bracket, Expr index",
                 "Literal  : Object value",
-                "Unary    : Token operator, Expr right",
-                "Variable : Token name"
-        ));
+                "Logical  : Expr left, Token operator, Expr right",
+                "MapLiteral : Token brace, List<Expr> keys, List<Expr> values",
+                "Set      : Expr object, Token name, Expr value | PropertyCache cache",
+                "SetIndex : Expr object, Token bracket, Expr index, Expr value | boolean number",
+                "Super    : Token keyword, Token method | int access, int slot",
+                "This     : Token keyword",
+                "Unary    : Token operator, Expr right | boolean number",
+                "Variable : Token name | boolean global, Globals.Cell cell, int access, int slot"
+        );
 
-        defineAst(outputDir, "Stmt", Arrays.asList(
-                "Block      : List<Stmt> statements",
+        List<String> stmtTypes = Arrays.asList(
+                "Block      : List<Stmt> statements | int executions, int deopts, Tier.Code compiled, boolean framed, boolean reusable",
+                "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods"
+                        + " | int access, int slot, int superAccess, int superSlot",
+                "Error      : Token token, Stmt partial",
                 "Expression : Expr expression",
+                "Function   : Token name, List<Token> params, Stmt.Block body"
+                        + " | int access, int slot, int frameSize, boolean[] boxedParams, int[] captures",
+                "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
+                "Import     : Token keyword, Token path",
                 "Print      : Expr expression",
-                "Var        : Token name, Expr initializer"
-        ));
+                "Return     : Token keyword, Expr value",
+                "Spawn      : Token keyword, Stmt body | int frameSize, int[] captures",
+                "Var        : Token name, Expr initializer | int access, int slot",
+                "While      : Expr condition, Stmt body, Expr increment"
+        );
+
+        defineAst(outputDir, "Expr", exprTypes);
+        defineAst(outputDir, "Stmt", stmtTypes);
+        defineFlatAst(outputDir, exprTypes, stmtTypes);
+        // Statements the record form leaves out, as SwitchInterpreter can't run
+        // them: spawned tasks and imported modules run class form trees.
+        List<String> recordless = Arrays.asList("Import", "Spawn");
+        defineRecordAst(outputDir, "Expr", exprTypes, List.of());
+        defineRecordAst(outputDir, "Stmt", stmtTypes, recordless);
+        defineRecordConverter(outputDir, exprTypes, stmtTypes, recordless);
+        defineNodeCounter(outputDir, exprTypes, stmtTypes);
     }
 
     private static void defineAst(
@@ -37,16 +68,25 @@ public class GenerateAst {
         writer.println("package loxlang;");
         writer.println();
         writer.println("import java.util.List;");
+        writer.println("import java.util.Objects;");
         writer.println();
         writer.println("abstract class " + baseName + " {");
 
         defineVisitor(writer, baseName, types);
+        defineTokenEquality(writer);
 
         // AST classes
         for (String type : types) {
             String className = type.split(":")[0].trim();
             String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            // Fields after a '|' are not constructor parameters, they are
+            // mutable slots filled in by later passes (resolver, interpreter caches).
+            String slots = null;
+            if (fields.contains("|")) {
+                slots = fields.split("\\|")[1].trim();
+                fields = fields.split("\\|")[0].trim();
+            }
+            defineType(writer, baseName, className, fields, slots);
         }
 
         // Base accept() method
@@ -69,7 +109,7 @@ public class GenerateAst {
     }
 
     private static void defineType(
-            PrintWriter writer, String baseName, String className, String fieldList) {
+            PrintWriter writer, String baseName, String className, String fieldList, String slotList) {
         writer.println(" static class " + className + " extends " + baseName + " {");
 
         // Constructor
@@ -97,6 +137,615 @@ public class GenerateAst {
             writer.println("    final " + field + ";");
         }
 
+        // Mutable slots
+        if (slotList != null) {
+            for (String slot : slotList.split(", ")) {
+                writer.println("    " + slot + ";");
+            }
+        }
+
+        defineEquality(writer, className, fields);
+
+        writer.println("  }");
+    }
+
+    // Structural equality over the constructor fields. Slots are left out, later
+    // passes derive them from the fields and the surrounding code.
+    private static void defineEquality(PrintWriter writer, String className, String[] fields) {
+        StringBuilder equal = new StringBuilder();
+        StringBuilder hash = new StringBuilder();
+        for (String field : fields) {
+            String type = field.split(" ")[0];
+            String name = field.split(" ")[1];
+            if (equal.length() > 0) {
+                equal.append(" && ");
+                hash.append(", ");
+            }
+            if (type.equals("Token")) {
+                equal.append("sameToken(" + name + ", other." + name + ")");
+                hash.append("tokenHash(" + name + ")");
+            } else if (type.equals("List<Token>")) {
+                equal.append("sameTokens(" + name + ", other." + name + ")");
+                hash.append("tokensHash(" + name + ")");
+            } else {
+                equal.append("Objects.equals(" + name + ", other." + name + ")");
+                hash.append(name);
+            }
+        }
+
+        writer.println();
+        writer.println("    @Override");
+        writer.println("    public boolean equals(Object object) {");
+        writer.println("      if (this == object) return true;");
+        writer.println("      if (!(object instanceof " + className + ")) return false;");
+        writer.println("      " + className + " other = (" + className + ")object;");
+        writer.println("      return " + equal + ";");
+        writer.println("    }");
+        writer.println();
+        writer.println("    @Override");
+        writer.println("    public int hashCode() {");
+        writer.println("      return Objects.hash(\"" + className + "\", " + hash + ");");
+        writer.println("    }");
+    }
+
+    // Where a token is doesn't matter when comparing trees, only what it is.
+    private static void defineTokenEquality(PrintWriter writer) {
+        writer.println();
+        writer.println("  static boolean sameToken(Token a, Token b) {");
+        writer.println("    if (a == b) return true;");
+        writer.println("    if (a == null || b == null) return false;");
+        writer.println("    return a.type == b.type && a.lexeme.equals(b.lexeme);");
+        writer.println("  }");
+        writer.println();
+        writer.println("  static int tokenHash(Token token) {");
+        writer.println("    return token == null ? 0 : Objects.hash(token.type, token.lexeme);");
+        writer.println("  }");
+        writer.println();
+        writer.println("  static boolean sameTokens(List<Token> a, List<Token> b) {");
+        writer.println("    if (a == b) return true;");
+        writer.println("    if (a == null || b == null || a.size() != b.size()) return false;");
+        writer.println("    for (int i = 0; i < a.size(); i++) {");
+        writer.println("      if (!sameToken(a.get(i), b.get(i))) return false;");
+        writer.println("    }");
+        writer.println("    return true;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  static int tokensHash(List<Token> tokens) {");
+        writer.println("    if (tokens == null) return 0;");
+        writer.println("    int hash = 1;");
+        writer.println("    for (Token token : tokens) {");
+        writer.println("      hash = 31 * hash + tokenHash(token);");
+        writer.println("    }");
+        writer.println("    return hash;");
+        writer.println("  }");
+    }
+
+    // Flat encoding of the same node types: nodes are records in an int[] with
+    // child indices, tokens are offsets into the source.
+    private static void defineFlatAst(
+            String outputDir, List<String> exprTypes, List<String> stmtTypes) throws IOException {
+        String path = outputDir + "/FlatAst.java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        writer.println("package loxlang;");
+        writer.println();
+        writer.println("import java.util.ArrayList;");
+        writer.println("import java.util.Arrays;");
+        writer.println("import java.util.HashMap;");
+        writer.println("import java.util.IdentityHashMap;");
+        writer.println("import java.util.List;");
+        writer.println("import java.util.Map;");
+        writer.println();
+        writer.println("// Compact form of a parsed program, generated alongside Expr and Stmt.");
+        writer.println("// A node is a record in nodes[]: its kind followed by one int per field.");
+        writer.println("// Child nodes are indices into nodes[], tokens are indices into tokens[]");
+        writer.println("// (type, source offset, length, line), lists are indices into lists[]");
+        writer.println("// (size, then elements) and any other value is an index into constants[].");
+        writer.println("// -1 stands for null. Nodes are turned back into Expr and Stmt on demand.");
+        writer.println("final class FlatAst {");
+
+        // Kinds
+        int kind = 0;
+        for (String type : exprTypes) {
+            writer.println("  static final int " + kindName(type, "Expr") + " = " + kind++ + ";");
+        }
+        for (String type : stmtTypes) {
+            writer.println("  static final int " + kindName(type, "Stmt") + " = " + kind++ + ";");
+        }
+
+        writer.println();
+        writer.println("  private static final TokenType[] TOKEN_TYPES = TokenType.values();");
+        writer.println();
+        writer.println("  final String source;");
+        writer.println("  private int[] nodes = new int[64];");
+        writer.println("  private int nodeCount = 0;");
+        writer.println("  private int[] tokens = new int[64];");
+        writer.println("  private int tokenCount = 0;");
+        writer.println("  private int[] lists = new int[16];");
+        writer.println("  private int listCount = 0;");
+        writer.println("  private Object[] constants = new Object[16];");
+        writer.println("  private int constantCount = 0;");
+        writer.println("  private int[] roots = new int[16];");
+        writer.println("  private int rootCount = 0;");
+        writer.println();
+        writer.println("  // Only needed while encoding, dropped by trim()");
+        writer.println("  private Map<Token, Integer> tokenIndex = new IdentityHashMap<>();");
+        writer.println("  private Map<Object, Integer> constantIndex = new HashMap<>();");
+        writer.println("  private final Encoder encoder = new Encoder();");
+        writer.println();
+        writer.println("  FlatAst(String source) {");
+        writer.println("    this.source = source;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  // Encodes a top-level statement and appends it to the program.");
+        writer.println("  void add(Stmt stmt) {");
+        writer.println("    if (rootCount == roots.length) roots = Arrays.copyOf(roots, rootCount * 2);");
+        writer.println("    roots[rootCount++] = node(stmt);");
+        writer.println("  }");
+        writer.println();
+        writer.println("  int rootCount() {");
+        writer.println("    return rootCount;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  int root(int index) {");
+        writer.println("    return roots[index];");
         writer.println("  }");
+        writer.println();
+        writer.println("  int kind(int node) {");
+        writer.println("    return nodes[node];");
+        writer.println("  }");
+        writer.println();
+        writer.println("  // Shrinks the arrays to their final size once the program is complete.");
+        writer.println("  void trim() {");
+        writer.println("    nodes = Arrays.copyOf(nodes, nodeCount);");
+        writer.println("    tokens = Arrays.copyOf(tokens, tokenCount * 4);");
+        writer.println("    lists = Arrays.copyOf(lists, listCount);");
+        writer.println("    constants = Arrays.copyOf(constants, constantCount);");
+        writer.println("    roots = Arrays.copyOf(roots, rootCount);");
+        writer.println("    tokenIndex = new IdentityHashMap<>();");
+        writer.println("    constantIndex = new HashMap<>();");
+        writer.println("  }");
+        writer.println();
+        writer.println("  // Approximate heap used by the encoding, not counting the source.");
+        writer.println("  long byteSize() {");
+        writer.println("    long bytes = 16L * 5 + 4L * (nodes.length + tokens.length + lists.length + roots.length);");
+        writer.println("    bytes += 4L * constants.length;");
+        writer.println("    for (int i = 0; i < constantCount; i++) {");
+        writer.println("      if (constants[i] instanceof String) {");
+        writer.println("        bytes += 40 + ((String)constants[i]).length();");
+        writer.println("      } else if (constants[i] != null) {");
+        writer.println("        bytes += 16;");
+        writer.println("      }");
+        writer.println("    }");
+        writer.println("    return bytes;");
+        writer.println("  }");
+        writer.println();
+
+        // Decoding
+        defineFlatDecoder(writer, "Expr", exprTypes);
+        defineFlatDecoder(writer, "Stmt", stmtTypes);
+
+        writer.println("  Object constantAt(int index) {");
+        writer.println("    return index < 0 ? null : constants[index];");
+        writer.println("  }");
+        writer.println();
+        writer.println("  Token token(int index) {");
+        writer.println("    if (index < 0) return null;");
+        writer.println("    int base = index * 4;");
+        writer.println("    TokenType type = TOKEN_TYPES[tokens[base]];");
+        writer.println("    int offset = tokens[base + 1];");
+        writer.println("    int line = tokens[base + 3];");
+        writer.println("    // Synthetic tokens have no source text, their lexeme is a constant.");
+        writer.println("    String lexeme = offset < 0");
+        writer.println("        ? (String)constants[tokens[base + 2]]");
+        writer.println("        : source.substring(offset, offset + tokens[base + 2]);");
+        writer.println("    Object literal = null;");
+        writer.println("    if (type == TokenType.NUMBER) {");
+        writer.println("      literal = Double.parseDouble(lexeme);");
+        writer.println("    } else if (type == TokenType.STRING) {");
+        writer.println("      literal = lexeme.substring(1, lexeme.length() - 1);");
+        writer.println("    }");
+        writer.println("    return new Token(type, lexeme, literal, line, offset);");
+        writer.println("  }");
+        writer.println();
+        writer.println("  @SuppressWarnings(\"unchecked\")");
+        writer.println("  private <T extends Expr> List<T> exprList(int list) {");
+        writer.println("    if (list < 0) return null;");
+        writer.println("    List<T> result = new ArrayList<>(lists[list]);");
+        writer.println("    for (int i = 1; i <= lists[list]; i++) result.add((T)expr(lists[list + i]));");
+        writer.println("    return result;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  @SuppressWarnings(\"unchecked\")");
+        writer.println("  private <T extends Stmt> List<T> stmtList(int list) {");
+        writer.println("    if (list < 0) return null;");
+        writer.println("    List<T> result = new ArrayList<>(lists[list]);");
+        writer.println("    for (int i = 1; i <= lists[list]; i++) result.add((T)stmt(lists[list + i]));");
+        writer.println("    return result;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  private List<Token> tokenList(int list) {");
+        writer.println("    if (list < 0) return null;");
+        writer.println("    List<Token> result = new ArrayList<>(lists[list]);");
+        writer.println("    for (int i = 1; i <= lists[list]; i++) result.add(token(lists[list + i]));");
+        writer.println("    return result;");
+        writer.println("  }");
+        writer.println();
+
+        // Encoding
+        writer.println("  private int node(Expr expr) {");
+        writer.println("    return expr == null ? -1 : expr.accept(encoder);");
+        writer.println("  }");
+        writer.println();
+        writer.println("  private int node(Stmt stmt) {");
+        writer.println("    return stmt == null ? -1 : stmt.accept(encoder);");
+        writer.println("  }");
+        writer.println();
+        writer.println("  private int record(int... fields) {");
+        writer.println("    if (nodeCount + fields.length > nodes.length) {");
+        writer.println("      nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, nodeCount + fields.length));");
+        writer.println("    }");
+        writer.println("    int node = nodeCount;");
+        writer.println("    System.arraycopy(fields, 0, nodes, nodeCount, fields.length);");
+        writer.println("    nodeCount += fields.length;");
+        writer.println("    return node;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  private int list(int[] elements) {");
+        writer.println("    if (listCount + elements.length + 1 > lists.length) {");
+        writer.println("      lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listCount + elements.length + 1));");
+        writer.println("    }");
+        writer.println("    int list = listCount;");
+        writer.println("    lists[listCount++] = elements.length;");
+        writer.println("    System.arraycopy(elements, 0, lists, listCount, elements.length);");
+        writer.println("    listCount += elements.length;");
+        writer.println("    return list;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  private int list(List<?> elements) {");
+        writer.println("    if (elements == null) return -1;");
+        writer.println("    int[] indices = new int[elements.size()];");
+        writer.println("    for (int i = 0; i < indices.length; i++) {");
+        writer.println("      Object element = elements.get(i);");
+        writer.println("      if (element instanceof Expr) {");
+        writer.println("        indices[i] = node((Expr)element);");
+        writer.println("      } else if (element instanceof Stmt) {");
+        writer.println("        indices[i] = node((Stmt)element);");
+        writer.println("      } else if (element instanceof Token) {");
+        writer.println("        indices[i] = token((Token)element);");
+        writer.println("      } else {");
+        writer.println("        indices[i] = -1;");
+        writer.println("      }");
+        writer.println("    }");
+        writer.println("    return list(indices);");
+        writer.println("  }");
+        writer.println();
+        writer.println("  private int token(Token token) {");
+        writer.println("    if (token == null) return -1;");
+        writer.println("    Integer existing = tokenIndex.get(token);");
+        writer.println("    if (existing != null) return existing;");
+        writer.println();
+        writer.println("    if (tokenCount * 4 + 4 > tokens.length) tokens = Arrays.copyOf(tokens, tokens.length * 2);");
+        writer.println("    int base = tokenCount * 4;");
+        writer.println("    tokens[base] = token.type.ordinal();");
+        writer.println("    tokens[base + 1] = token.offset;");
+        writer.println("    tokens[base + 2] = token.offset < 0 ? constant(token.lexeme) : token.lexeme.length();");
+        writer.println("    tokens[base + 3] = token.line;");
+        writer.println("    tokenIndex.put(token, tokenCount);");
+        writer.println("    return tokenCount++;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  private int constant(Object value) {");
+        writer.println("    if (value == null) return -1;");
+        writer.println("    Integer existing = constantIndex.get(value);");
+        writer.println("    if (existing != null) return existing;");
+        writer.println();
+        writer.println("    if (constantCount == constants.length) constants = Arrays.copyOf(constants, constantCount * 2);");
+        writer.println("    constants[constantCount] = value;");
+        writer.println("    constantIndex.put(value, constantCount);");
+        writer.println("    return constantCount++;");
+        writer.println("  }");
+        writer.println();
+
+        writer.println("  private final class Encoder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {");
+        defineFlatEncoder(writer, "Expr", exprTypes);
+        defineFlatEncoder(writer, "Stmt", stmtTypes);
+        writer.println("  }");
+
+        writer.println("}");
+        writer.close();
+    }
+
+    private static String kindName(String type, String baseName) {
+        return type.split(":")[0].trim().toUpperCase() + "_" + baseName.toUpperCase();
+    }
+
+    // Constructor parameters of a node type, without the mutable slots.
+    private static String[] constructorFields(String type) {
+        String fields = type.split(":")[1].split("\\|")[0].trim();
+        return fields.split(", ");
+    }
+
+    private static void defineFlatDecoder(PrintWriter writer, String baseName, List<String> types) {
+        writer.println("  " + baseName + " " + baseName.toLowerCase() + "(int node) {");
+        writer.println("    if (node < 0) return null;");
+        writer.println("    switch (nodes[node]) {");
+        for (String type : types) {
+            String className = type.split(":")[0].trim();
+            String[] fields = constructorFields(type);
+            StringBuilder args = new StringBuilder();
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) args.append(", ");
+                String fieldType = fields[i].split(" ")[0];
+                args.append(decodeField(fieldType, "nodes[node + " + (i + 1) + "]"));
+            }
+            writer.println("      case " + kindName(type, baseName) + ":");
+            writer.println("        return new " + baseName + "." + className + "(" + args + ");");
+        }
+        writer.println("    }");
+        writer.println("    throw new IllegalArgumentException(\"Not a " + baseName + " node: \" + node);");
+        writer.println("  }");
+        writer.println();
+    }
+
+    private static String decodeField(String fieldType, String value) {
+        if (fieldType.equals("Expr") || fieldType.equals("Stmt")) {
+            return fieldType.toLowerCase() + "(" + value + ")";
+        }
+        if (fieldType.startsWith("Expr.") || fieldType.startsWith("Stmt.")) {
+            return "(" + fieldType + ")" + fieldType.substring(0, 4).toLowerCase() + "(" + value + ")";
+        }
+        if (fieldType.equals("Token")) {
+            return "token(" + value + ")";
+        }
+        if (fieldType.equals("List<Token>")) {
+            return "tokenList(" + value + ")";
+        }
+        if (fieldType.startsWith("List<Expr")) {
+            return "exprList(" + value + ")";
+        }
+        if (fieldType.startsWith("List<Stmt")) {
+            return "stmtList(" + value + ")";
+        }
+        if (fieldType.equals("int")) {
+            return value;
+        }
+        if (fieldType.equals("boolean")) {
+            return value + " != 0";
+        }
+        if (fieldType.equals("Object")) {
+            return "constantAt(" + value + ")";
+        }
+        return "(" + fieldType + ")constantAt(" + value + ")";
+    }
+
+    private static String encodeField(String fieldType, String value) {
+        if (fieldType.startsWith("Expr") || fieldType.startsWith("Stmt")) {
+            return "node(" + value + ")";
+        }
+        if (fieldType.equals("Token")) {
+            return "token(" + value + ")";
+        }
+        if (fieldType.startsWith("List<")) {
+            return "list(" + value + ")";
+        }
+        if (fieldType.equals("int")) {
+            return value;
+        }
+        if (fieldType.equals("boolean")) {
+            return "(" + value + " ? 1 : 0)";
+        }
+        return "constant(" + value + ")";
+    }
+
+    private static void defineFlatEncoder(PrintWriter writer, String baseName, List<String> types) {
+        for (String type : types) {
+            String className = type.split(":")[0].trim();
+            String param = baseName.toLowerCase();
+            String[] fields = constructorFields(type);
+
+            writer.println("    @Override");
+            writer.println("    public Integer visit" + className + baseName + "(" + baseName + "." + className + " " + param + ") {");
+            StringBuilder args = new StringBuilder(kindName(type, baseName));
+            // Children first, so a record is written in one piece.
+            for (String field : fields) {
+                String fieldType = field.split(" ")[0];
+                String name = field.split(" ")[1];
+                writer.println("      int " + name + " = " + encodeField(fieldType, param + "." + name) + ";");
+                args.append(", ").append(name);
+            }
+            writer.println("      return record(" + args + ");");
+            writer.println("    }");
+        }
+    }
+
+    // Sealed interface and record form of a node hierarchy, for interpreters
+    // that dispatch with a pattern matching switch instead of a visitor.
+    // Records only carry the constructor fields, not the mutable slots.
+    private static void defineRecordAst(String outputDir, String baseName,
+            List<String> types, List<String> recordless) throws IOException {
+        String recordName = baseName + "Record";
+        String path = outputDir + "/" + recordName + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        writer.println("package loxlang;");
+        writer.println();
+        writer.println("import java.util.List;");
+        writer.println();
+        writer.println("sealed interface " + recordName + " {");
+
+        for (String type : types) {
+            String className = type.split(":")[0].trim();
+            if (recordless.contains(className)) continue;
+            StringBuilder components = new StringBuilder();
+            for (String field : constructorFields(type)) {
+                if (components.length() > 0) components.append(", ");
+                String fieldType = field.split(" ")[0];
+                components.append(recordType(fieldType)).append(" ").append(field.split(" ")[1]);
+            }
+            writer.println("  record " + className + "(" + components + ") implements " + recordName + " {}");
+        }
+
+        writer.println("}");
+        writer.close();
+    }
+
+    // Expr -> ExprRecord, List<Stmt> -> List<StmtRecord>, Stmt.Function -> StmtRecord.Function
+    private static String recordType(String fieldType) {
+        return fieldType.replaceAll("\\b(Expr|Stmt)\\b", "$1Record");
+    }
+
+    private static void defineRecordConverter(String outputDir, List<String> exprTypes,
+            List<String> stmtTypes, List<String> recordless) throws IOException {
+        String path = outputDir + "/RecordAst.java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        writer.println("package loxlang;");
+        writer.println();
+        writer.println("import java.util.ArrayList;");
+        writer.println("import java.util.List;");
+        writer.println();
+        writer.println("// Converts the class form of a syntax tree into its record form.");
+        writer.println("final class RecordAst implements Expr.Visitor<ExprRecord>, Stmt.Visitor<StmtRecord> {");
+        writer.println("  private static final RecordAst converter = new RecordAst();");
+        writer.println();
+        writer.println("  static ExprRecord of(Expr expr) {");
+        writer.println("    return expr == null ? null : expr.accept(converter);");
+        writer.println("  }");
+        writer.println();
+        writer.println("  static StmtRecord of(Stmt stmt) {");
+        writer.println("    return stmt == null ? null : stmt.accept(converter);");
+        writer.println("  }");
+        writer.println();
+        writer.println("  @SuppressWarnings(\"unchecked\")");
+        writer.println("  static <T> List<T> of(List<?> nodes) {");
+        writer.println("    if (nodes == null) return null;");
+        writer.println("    List<T> result = new ArrayList<>(nodes.size());");
+        writer.println("    for (Object node : nodes) {");
+        writer.println("      if (node instanceof Expr) {");
+        writer.println("        result.add((T)of((Expr)node));");
+        writer.println("      } else if (node instanceof Stmt) {");
+        writer.println("        result.add((T)of((Stmt)node));");
+        writer.println("      } else {");
+        writer.println("        result.add((T)node);");
+        writer.println("      }");
+        writer.println("    }");
+        writer.println("    return result;");
+        writer.println("  }");
+
+        defineRecordConversions(writer, "Expr", exprTypes, List.of());
+        defineRecordConversions(writer, "Stmt", stmtTypes, recordless);
+
+        writer.println("}");
+        writer.close();
+    }
+
+    private static void defineRecordConversions(
+            PrintWriter writer, String baseName, List<String> types, List<String> recordless) {
+        for (String type : types) {
+            String className = type.split(":")[0].trim();
+            String param = baseName.toLowerCase();
+            if (recordless.contains(className)) {
+                writer.println();
+                writer.println("  @Override");
+                writer.println("  public " + baseName + "Record visit" + className + baseName
+                        + "(" + baseName + "." + className + " " + param + ") {");
+                writer.println("    throw new IllegalArgumentException(\"" + className
+                        + " statements have no record form.\");");
+                writer.println("  }");
+                continue;
+            }
+            StringBuilder args = new StringBuilder();
+            for (String field : constructorFields(type)) {
+                if (args.length() > 0) args.append(", ");
+                String fieldType = field.split(" ")[0];
+                String value = param + "." + field.split(" ")[1];
+                if (fieldType.startsWith("List<")) {
+                    args.append("of(").append(value).append(")");
+                } else if (fieldType.startsWith("Expr.") || fieldType.startsWith("Stmt.")) {
+                    args.append("(").append(recordType(fieldType)).append(")of(").append(value).append(")");
+                } else if (fieldType.equals("Expr") || fieldType.equals("Stmt")) {
+                    args.append("of(").append(value).append(")");
+                } else {
+                    args.append(value);
+                }
+            }
+
+            writer.println();
+            writer.println("  @Override");
+            writer.println("  public " + baseName + "Record visit" + className + baseName
+                    + "(" + baseName + "." + className + " " + param + ") {");
+            writer.println("    return new " + baseName + "Record." + className + "(" + args + ");");
+            writer.println("  }");
+        }
+    }
+
+    private static void defineNodeCounter(
+            String outputDir, List<String> exprTypes, List<String> stmtTypes) throws IOException {
+        String path = outputDir + "/NodeCounter.java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        writer.println("package loxlang;");
+        writer.println();
+        writer.println("import java.util.List;");
+        writer.println();
+        writer.println("// Counts the Expr and Stmt nodes of a syntax tree.");
+        writer.println("final class NodeCounter implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {");
+        writer.println("  private static final NodeCounter counter = new NodeCounter();");
+        writer.println();
+        writer.println("  static int count(Expr expr) {");
+        writer.println("    return expr == null ? 0 : expr.accept(counter);");
+        writer.println("  }");
+        writer.println();
+        writer.println("  static int count(Stmt stmt) {");
+        writer.println("    return stmt == null ? 0 : stmt.accept(counter);");
+        writer.println("  }");
+        writer.println();
+        writer.println("  static int count(List<?> nodes) {");
+        writer.println("    // Unparsed lazy block bodies have no nodes yet, don't force them.");
+        writer.println("    if (nodes instanceof LazyStatements && !((LazyStatements)nodes).isParsed()) {");
+        writer.println("      return 0;");
+        writer.println("    }");
+        writer.println("    int count = 0;");
+        writer.println("    for (Object node : nodes) {");
+        writer.println("      if (node instanceof Expr) {");
+        writer.println("        count += count((Expr)node);");
+        writer.println("      } else if (node instanceof Stmt) {");
+        writer.println("        count += count((Stmt)node);");
+        writer.println("      }");
+        writer.println("    }");
+        writer.println("    return count;");
+        writer.println("  }");
+
+        defineNodeCounts(writer, "Expr", exprTypes);
+        defineNodeCounts(writer, "Stmt", stmtTypes);
+
+        writer.println("}");
+        writer.close();
+    }
+
+    private static void defineNodeCounts(PrintWriter writer, String baseName, List<String> types) {
+        for (String type : types) {
+            String className = type.split(":")[0].trim();
+            String param = baseName.toLowerCase();
+            StringBuilder sum = new StringBuilder("1");
+            for (String field : constructorFields(type)) {
+                String fieldType = field.split(" ")[0];
+                String value = param + "." + field.split(" ")[1];
+                if (fieldType.startsWith("Expr") || fieldType.startsWith("Stmt")
+                        || fieldType.startsWith("List<Expr") || fieldType.startsWith("List<Stmt")) {
+                    String cast = fieldType.startsWith("Expr.") || fieldType.startsWith("Stmt.")
+                            ? "(" + fieldType.substring(0, 4) + ")" : "";
+                    sum.append(" + count(").append(cast).append(value).append(")");
+                }
+            }
+
+            writer.println();
+            writer.println("  @Override");
+            writer.println("  public Integer visit" + className + baseName
+                    + "(" + baseName + "." + className + " " + param + ") {");
+            writer.println("    return " + sum + ";");
+            writer.println("  }");
+        }
     }
 }